@@ -0,0 +1,215 @@
+package books;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+
+/**
+ * Moves the books of old read years out of the table into the {@link BookArchive}, so that the queries of the
+ * API and the backups stop reading them on every request.
+ *
+ * Books read more than {@code ARCHIVE_HOT_YEARS} years before the current one are written to one segment per
+ * library and read year and the segments are added to the library's index. The books are deleted from the
+ * table by a later run, once the index that lists their segment is older than twice
+ * {@code ARCHIVE_INDEX_TTL_SECONDS}: until then a warm reader can still use the index it read before, without
+ * the new segments, and would lose the books. The template runs the function a second time an hour after the
+ * monthly run for that. Each delete is conditioned on the version that was archived: a book changed in the
+ * meantime stays in the table, where it wins over its archived copy, and the next run archives it again. A run
+ * that failed halfway is completed by the next one: books it archived already are only deleted.
+ */
+@Slf4j
+public class ArchiveBooksHandler implements RequestHandler<ScheduledEvent, Void> {
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbTable<Book> bookTable;
+    private final BookArchive archive;
+    private final BookJsonWriter bookJsonWriter;
+    private final String tableName;
+    private final int hotYears;
+    private final long deleteDelayMillis;
+
+    public ArchiveBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build(), BookArchive.fromEnvironment());
+    }
+
+    public ArchiveBooksHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.hotYears = Integer.parseInt(Optional.ofNullable(System.getenv("ARCHIVE_HOT_YEARS")).orElse("5"));
+        this.dynamoDbClient = ddbClient;
+        this.bookTable = DynamoDbEnhancedClient.builder()
+                .dynamoDbClient(ddbClient)
+                .build()
+                .table(tableName, TableSchema.fromBean(Book.class));
+        this.archive = archive;
+        // Twice the readers' TTL, for the clocks of S3 and the containers to differ
+        this.deleteDelayMillis = 2 * archive.indexTtlMillis();
+        this.bookJsonWriter = new BookJsonWriter(new ObjectMapper().getFactory());
+    }
+
+    @Override
+    public Void handleRequest(ScheduledEvent event, Context context) {
+        log.info("ArchiveBooks function started - Request ID: {}", context.getAwsRequestId());
+
+        RequestMetrics metrics = RequestMetrics.start("ArchiveBooks", context);
+        try {
+            if (!archive.isEnabled()) {
+                log.warn("No ARCHIVE_BUCKET_NAME, nothing is archived");
+                return null;
+            }
+            int cutoff = Year.now().getValue() - hotYears;
+
+            // Books read before the cutoff, by library and read year; counters and books without a read year
+            // never match the filter
+            BookScanEvent scanEvent = BookScanEvent.start("ArchiveBooks");
+            Map<String, TreeMap<Integer, List<Book>>> libraries = metrics.time("Scan", () -> {
+                Map<String, TreeMap<Integer, List<Book>>> found = new HashMap<>();
+                bookTable.scan(ScanEnhancedRequest.builder()
+                                .filterExpression(Expression.builder()
+                                        .expression("readYear < :cutoff")
+                                        .putExpressionValue(":cutoff", AttributeValue.fromN(String.valueOf(cutoff)))
+                                        .build())
+                                .build())
+                        .items()
+                        .forEach(book -> found.computeIfAbsent(book.getUserId(), userId -> new TreeMap<>())
+                                .computeIfAbsent(book.getReadYear(), year -> new ArrayList<>())
+                                .add(book));
+                return found;
+            });
+            long found = libraries.values().stream()
+                    .flatMap(years -> years.values().stream())
+                    .mapToLong(List::size)
+                    .sum();
+            scanEvent.end(found);
+            metrics.count("ItemCount", found);
+            log.info("Found {} books read before {} in {} libraries", found, cutoff, libraries.size());
+
+            long archived = 0;
+            long deleted = 0;
+            for (Map.Entry<String, TreeMap<Integer, List<Book>>> library : libraries.entrySet()) {
+                List<Book> toDelete = new ArrayList<>();
+                archived += metrics.time("S3", () -> archiveLibrary(library.getKey(), library.getValue(), toDelete));
+                deleted += metrics.time("Delete", () -> delete(toDelete));
+            }
+            metrics.count("ArchivedItemCount", archived);
+            log.info("Archived {} books and deleted {} from the table", archived, deleted);
+
+        } catch (Exception e) {
+            log.error("Error archiving books", e);
+            metrics.count("Errors", 1);
+            throw new RuntimeException("Failed to archive books", e);
+        } finally {
+            metrics.finish();
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the library's books that are not archived yet, one segment per read year, then the index. Collects
+     * the books to delete from the table, those an earlier run archived in their current version long enough
+     * ago for no reader to use an index without them, and returns how many books were written.
+     */
+    long archiveLibrary(String userId, TreeMap<Integer, List<Book>> years, List<Book> toDelete) throws Exception {
+        BookArchive.Index index = archive.readIndex(userId);
+
+        // The archived version of each book, to tell books an earlier run archived from books changed since
+        // and when the segment holding it was listed
+        Map<Integer, String> archived = new HashMap<>();
+        Map<Integer, Long> archivedAt = new HashMap<>();
+        for (BookArchive.SegmentInfo info : index.segments) {
+            BookArchive.Segment segment = archive.segment(info.key);
+            for (int i = 0; i < segment.ids.length; i++) {
+                archived.put(segment.ids[i], segment.books.get(i));
+                archivedAt.put(segment.ids[i], info.writtenAt);
+            }
+        }
+        long deletableBefore = System.currentTimeMillis() - deleteDelayMillis;
+
+        long written = 0;
+        for (Map.Entry<Integer, List<Book>> year : years.entrySet()) {
+            List<Book> books = year.getValue();
+            books.sort(Comparator.comparing(Book::getId));
+
+            List<String> rendered = new ArrayList<>(books.size());
+            int[] ids = new int[books.size()];
+            int replaced = 0;
+            for (Book book : books) {
+                String json = book.getJson() != null ? book.getJson() : bookJsonWriter.write(book);
+                String previous = archived.get(book.getId());
+                if (json.equals(previous)) {
+                    if (archivedAt.get(book.getId()) < deletableBefore) {
+                        toDelete.add(book);
+                    }
+                    continue;
+                }
+                if (previous != null) {
+                    replaced++;
+                }
+                ids[rendered.size()] = book.getId();
+                rendered.add(json);
+            }
+            if (!rendered.isEmpty()) {
+                archive.addSegment(userId, index, year.getKey(),
+                        Arrays.copyOf(ids, rendered.size()), rendered, replaced);
+                written += rendered.size();
+            }
+        }
+        if (written > 0) {
+            archive.writeIndex(userId, index);
+        }
+        return written;
+    }
+
+    /**
+     * Deletes the archived books from the table, each only if it is still the version that was archived.
+     */
+    long delete(List<Book> books) {
+        long deleted = 0;
+        for (Book book : books) {
+            DeleteItemRequest.Builder request = DeleteItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Libraries.itemKey(book.getUserId(), book.getId()))
+                    .expressionAttributeNames(Map.of("#version", "version"));
+            if (book.getVersion() != null) {
+                request.conditionExpression("#version = :version")
+                        .expressionAttributeValues(Map.of(":version", AttributeValue.fromN(String.valueOf(book.getVersion()))));
+            } else {
+                request.conditionExpression("attribute_not_exists(#version)");
+            }
+            try {
+                dynamoDbClient.deleteItem(request.build());
+                deleted++;
+            } catch (ConditionalCheckFailedException e) {
+                log.info("Book {} of user {} changed while it was archived, it stays in the table", book.getId(), book.getUserId());
+            }
+        }
+        return deleted;
+    }
+}
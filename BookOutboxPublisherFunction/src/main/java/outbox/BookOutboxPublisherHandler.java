@@ -0,0 +1,122 @@
+package outbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+
+/**
+ * Publishes the book notifications written to the outbox table by CreateBook to the SNS topic.
+ *
+ * New outbox items arrive through the table's stream and are sent with PublishBatch, up to ten per call.
+ * On the first failure the remaining records are reported as batch item failures, so Lambda retries the
+ * stream from that record: every event is published at least once, and subscribers may see duplicates.
+ */
+@Slf4j
+public class BookOutboxPublisherHandler implements RequestHandler<DynamodbEvent, StreamsEventResponse> {
+
+    private static final int MAX_BATCH_ENTRIES = 10;
+
+    private final SnsClient snsClient;
+    private final String topicArn;
+
+    public BookOutboxPublisherHandler() {
+        this(SnsClient.builder()
+                .overrideConfiguration(o -> o.addExecutionInterceptor(new TracingInterceptor()))
+                .build());
+    }
+
+    public BookOutboxPublisherHandler(SnsClient snsClient) {
+        this.snsClient = snsClient;
+        this.topicArn = System.getenv("BOOK_NOTIFICATIONS_TOPIC_ARN");
+    }
+
+    @Override
+    public StreamsEventResponse handleRequest(DynamodbEvent event, Context context) {
+        log.info("BookOutboxPublisher function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        RequestMetrics metrics = RequestMetrics.start("BookOutboxPublisher", context);
+        List<StreamsEventResponse.BatchItemFailure> failures = new ArrayList<>();
+        try {
+            // TTL deletions and updates also reach the stream; only new events are published
+            List<DynamodbEvent.DynamodbStreamRecord> inserts = new ArrayList<>();
+            for (DynamodbEvent.DynamodbStreamRecord record : event.getRecords()) {
+                if ("INSERT".equals(record.getEventName())) {
+                    inserts.add(record);
+                }
+            }
+            metrics.count("Records", inserts.size());
+
+            for (int from = 0; from < inserts.size(); from += MAX_BATCH_ENTRIES) {
+                List<DynamodbEvent.DynamodbStreamRecord> batch =
+                        inserts.subList(from, Math.min(from + MAX_BATCH_ENTRIES, inserts.size()));
+                int failed = publish(batch, metrics);
+                if (failed >= 0) {
+                    for (DynamodbEvent.DynamodbStreamRecord record : inserts.subList(from + failed, inserts.size())) {
+                        failures.add(new StreamsEventResponse.BatchItemFailure(record.getDynamodb().getSequenceNumber()));
+                    }
+                    break;
+                }
+            }
+            metrics.count("Errors", failures.isEmpty() ? 0 : 1);
+        } finally {
+            metrics.finish();
+        }
+        return new StreamsEventResponse(failures);
+    }
+
+    /**
+     * Publishes one batch and returns the index of its first record that was not published, or -1.
+     */
+    private int publish(List<DynamodbEvent.DynamodbStreamRecord> batch, RequestMetrics metrics) {
+        List<PublishBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, AttributeValue> image = batch.get(i).getDynamodb().getNewImage();
+            PublishBatchRequestEntry.Builder entry = PublishBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .subject(image.get("subject").getS())
+                    .message(image.get("message").getS());
+            // Lets subscriptions filter on the library the book was added to
+            if (image.get("userId") != null) {
+                entry.messageAttributes(Map.of("userId", MessageAttributeValue.builder()
+                        .dataType("String")
+                        .stringValue(image.get("userId").getS())
+                        .build()));
+            }
+            entries.add(entry.build());
+        }
+
+        try {
+            PublishBatchResponse response = metrics.time("Sns", () -> snsClient.publishBatch(PublishBatchRequest.builder()
+                    .topicArn(topicArn)
+                    .publishBatchRequestEntries(entries)
+                    .build()));
+            metrics.count("Published", response.successful().size());
+            if (!response.failed().isEmpty()) {
+                int first = response.failed().stream()
+                        .mapToInt(entry -> Integer.parseInt(entry.id()))
+                        .min()
+                        .getAsInt();
+                log.error("Failed to publish {} outbox events, first: {}", response.failed().size(), response.failed().get(0).message());
+                return first;
+            }
+            return -1;
+        } catch (Exception e) {
+            log.error("Failed to publish outbox events", e);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package outbox;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Subsegment;
+import jdk.jfr.Recording;
+
+/**
+ * Metrics of one invocation, written as a single CloudWatch Embedded Metric Format (EMF) line,
+ * and the X-Ray subsegments that show the same phases in the trace.
+ *
+ * A handler starts one instance per request, times its phases ({@code DynamoDb}, {@code Mapping},
+ * {@code Serialization}, {@code Sns}, {@code Ses}, {@code S3}) and adds counters; {@link #finish()} prints
+ * the EMF JSON to stdout, where CloudWatch Logs extracts it into metrics of the {@value #NAMESPACE}
+ * namespace with the function name as dimension.
+ *
+ * The invocation and each timed phase are also X-Ray subsegments; counters and properties are annotations
+ * of the invocation subsegment, so traces can be searched by them. Sampled invocations are also recorded
+ * with JFR, see {@link Profiler}.
+ */
+public final class RequestMetrics {
+
+    static final String NAMESPACE = "AwsBooks";
+
+    private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+
+    // EMF lines go to stdout in Lambda; tests and local harnesses can capture or discard them
+    private static volatile Consumer<String> sink = System.out::println;
+
+    private final String function;
+    private final String requestId;
+    private final Subsegment subsegment;
+    private final Recording recording;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, String> units = new LinkedHashMap<>();
+    private final Map<String, Double> values = new LinkedHashMap<>();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private RequestMetrics(String function, String requestId) {
+        this.function = function;
+        this.requestId = requestId;
+        this.subsegment = AWSXRay.beginSubsegment(function);
+        this.recording = Profiler.start();
+    }
+
+    /**
+     * Starts the metrics of an invocation and binds them to the current thread.
+     */
+    public static RequestMetrics start(String function, Context context) {
+        RequestMetrics metrics = new RequestMetrics(function, context != null ? context.getAwsRequestId() : null);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Metrics of the invocation running on this thread, or {@code null} outside of one.
+     */
+    public static RequestMetrics current() {
+        return CURRENT.get();
+    }
+
+    public static void setSink(Consumer<String> lineSink) {
+        sink = lineSink;
+    }
+
+    /**
+     * Runs one phase of the request in its own subsegment and adds its wall time to the {@code <phase>Time} metric.
+     */
+    public <T> T time(String phase, Phase<T> work) throws Exception {
+        Subsegment phaseSegment = AWSXRay.beginSubsegment(phase);
+        long start = System.nanoTime();
+        try {
+            return work.run();
+        } catch (Exception e) {
+            phaseSegment.addException(e);
+            throw e;
+        } finally {
+            addTime(phase, System.nanoTime() - start);
+            AWSXRay.endSubsegment();
+        }
+    }
+
+    public void addTime(String phase, long nanos) {
+        add(phase + "Time", "Milliseconds", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public void count(String name, double value) {
+        add(name, "Count", value);
+        subsegment.putAnnotation(name, values.get(name));
+    }
+
+    public void bytes(String name, long value) {
+        add(name, "Bytes", value);
+        subsegment.putAnnotation(name, values.get(name));
+    }
+
+    /**
+     * Adds a searchable value to the log line that is not a metric, e.g. the status code.
+     */
+    public void property(String name, Object value) {
+        properties.put(name, String.valueOf(value));
+        subsegment.putAnnotation(name, String.valueOf(value));
+    }
+
+    /**
+     * Records status and response size of an API response, emits the metrics and returns the response.
+     */
+    public APIGatewayProxyResponseEvent finish(APIGatewayProxyResponseEvent response) {
+        int statusCode = response.getStatusCode() != null ? response.getStatusCode() : 0;
+        property("StatusCode", statusCode);
+        count("Errors", statusCode >= 500 ? 1 : 0);
+        bytes("ResponseSize", response.getBody() != null ? utf8Length(response.getBody()) : 0);
+        finish();
+        return response;
+    }
+
+    /**
+     * Adds the total latency, closes the invocation subsegment, writes the EMF line and unbinds the metrics
+     * from the thread.
+     */
+    public void finish() {
+        addTime("Total", System.nanoTime() - startNanos);
+        AWSXRay.endSubsegment();
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        sink.accept(toEmf(System.currentTimeMillis()));
+        Profiler.stop(recording, function, requestId);
+    }
+
+    String toEmf(long timestamp) {
+        StringBuilder line = new StringBuilder(256);
+        line.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"").append(NAMESPACE)
+                .append("\",\"Dimensions\":[[\"Function\"]],\"Metrics\":[");
+        boolean first = true;
+        for (Map.Entry<String, String> metric : units.entrySet()) {
+            line.append(first ? "" : ",")
+                    .append("{\"Name\":\"").append(metric.getKey())
+                    .append("\",\"Unit\":\"").append(metric.getValue()).append("\"}");
+            first = false;
+        }
+        line.append("]}]},\"Function\":");
+        quote(line, function);
+        if (requestId != null) {
+            line.append(",\"RequestId\":");
+            quote(line, requestId);
+        }
+        properties.forEach((name, value) -> {
+            line.append(",\"").append(name).append("\":");
+            quote(line, value);
+        });
+        values.forEach((name, value) -> line.append(",\"").append(name).append("\":").append(value));
+        return line.append('}').toString();
+    }
+
+    // Size of the body as API Gateway sends it, without encoding a copy of it: titles and authors are not ASCII
+    static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void add(String name, String unit, double value) {
+        units.putIfAbsent(name, unit);
+        values.merge(name, value, Double::sum);
+    }
+
+    private static void quote(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    @FunctionalInterface
+    public interface Phase<T> {
+        T run() throws Exception;
+    }
+}
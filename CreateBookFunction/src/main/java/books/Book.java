@@ -4,13 +4,16 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.annotations.DynamoDbVersionAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @DynamoDbBean
 public class Book {
+    private String userId;
     private Integer id;
     private String title;
     private String author;
@@ -20,9 +23,26 @@ public class Book {
     private Integer publicationYear;
     private String format;
     private String language;
+    private String normalizedTitle;
+    private String normalizedAuthor;
+    private Long version;
+    // The book as the API returns it, see BookJsonWriter
+    private String json;
 
+    // Cognito sub of the library's owner; ids are per library
     @DynamoDbPartitionKey
+    public String getUserId() {
+        return userId;
+    }
+
+    @DynamoDbSortKey
     public Integer getId() {
         return id;
     }
-}
\ No newline at end of file
+
+    // Incremented on every write; updates are conditioned on the version the client last read
+    @DynamoDbVersionAttribute
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -14,4 +14,5 @@ public class BookResponse {
     private String format;
     private LocalDate finishDate;
     private int readingTimeInDays;
+    private Long version;
 }
\ No newline at end of file
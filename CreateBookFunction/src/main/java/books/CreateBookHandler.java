@@ -1,62 +1,107 @@
 package books;
 
+import java.text.Normalizer;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactUpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.sns.SnsClient;
-import software.amazon.awssdk.services.sns.model.PublishRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
+/**
+ * Adds a book to the caller's library with the library's next id. With {@code strict=true} a book that is likely
+ * a duplicate of one in the library is rejected with 409 instead.
+ *
+ * A create reads the counter and writes one transaction of three small items: the counter, the book and its
+ * notification. The rest is left to IndexNewBooksHandler, which receives the notification: it adds the book to
+ * its {@link BookSignature} buckets, stores the books it is likely a duplicate of on it, and adds it to the
+ * library's reading statistics. Only {@code strict=true}, which has to answer before writing, runs the
+ * {@link DuplicateCheck} itself; a book created a moment before, whose notification is still on its way, is not
+ * in the buckets yet. The check is left out when {@code SIGNATURE_TABLE_NAME} is not set.
+ */
 @Slf4j
 public class CreateBookHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<Book> bookTable;
+    private final DynamoDbTable<LibraryCounter> counterTable;
     private final ObjectMapper objectMapper;
+    private final DynamoDbTable<OutboxEvent> outboxTable;
+    private final DuplicateCheck duplicateCheck;
     private final String tableName;
-    private final SnsClient snsClient;
-    private final String topicArn;
+
+    // Published events only need to outlive the stream's 24 hour retention
+    private static final long OUTBOX_TTL_SECONDS = 2 * 24 * 60 * 60;
+    // SNS rejects subjects of 100 characters or more, and any that are not printable ASCII
+    private static final int MAX_SUBJECT_LENGTH = 99;
+    private static final Pattern NON_SUBJECT = Pattern.compile("[^\\x20-\\x7E]");
+    // Concurrent creates in one library race for the same id; the losers start over with the next one
+    private static final int MAX_ATTEMPTS = 3;
 
     public CreateBookHandler() {
-        this.tableName = System.getenv("TABLE_NAME");
-        this.topicArn = System.getenv("BOOK_NOTIFICATIONS_TOPIC_ARN");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public CreateBookHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, System.getenv("TABLE_NAME"), System.getenv("OUTBOX_TABLE_NAME"), System.getenv("SIGNATURE_TABLE_NAME"));
+    }
+
+    CreateBookHandler(DynamoDbClient ddbClient, String tableName, String outboxTableName, String signatureTableName) {
+        this.tableName = tableName;
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
         this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
+        this.counterTable = enhancedClient.table(tableName, TableSchema.fromBean(LibraryCounter.class));
+        this.outboxTable = enhancedClient.table(outboxTableName, TableSchema.fromBean(OutboxEvent.class));
+        this.duplicateCheck = signatureTableName != null && !signatureTableName.isEmpty()
+                ? new DuplicateCheck(enhancedClient, bookTable, enhancedClient.table(signatureTableName, TableSchema.fromBean(SignatureBucket.class)))
+                : null;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
         this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        this.snsClient = SnsClient.builder().build();
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("CreateBook function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
         
         // Handle OPTIONS request for CORS preflight
         if ("OPTIONS".equals(input.getHttpMethod())) {
@@ -66,92 +111,156 @@ public class CreateBookHandler implements RequestHandler<APIGatewayProxyRequestE
                     .withBody("");
         }
 
+        RequestMetrics metrics = RequestMetrics.start("CreateBook", context);
         try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
             // Parse request body
             BookRequest bookRequest = objectMapper.readValue(input.getBody(), BookRequest.class);
+            boolean strict = input.getQueryStringParameters() != null
+                    && "true".equalsIgnoreCase(input.getQueryStringParameters().get("strict"));
             
-            // Create Book object
-            Book book = new Book();
-            
-            // Auto-generate ID (next available ID)
-            Integer nextId = getNextId();
-            book.setId(nextId);
-            
-            // Set basic fields from request
-            book.setTitle(bookRequest.getTitle());
-            book.setAuthor(bookRequest.getAuthor());
-            book.setPublicationYear(bookRequest.getPublicationYear());
-            book.setLanguage(bookRequest.getLanguage());
-            book.setFormat(bookRequest.getFormat());
-            
-            // Auto-set finish date to today
-            LocalDate currentDate = LocalDate.now();
-            book.setFinishDate(currentDate.format(DateTimeFormatter.ISO_LOCAL_DATE));
-            book.setReadYear(currentDate.getYear());
-            
-            // Calculate reading time based on last book's finish date
-            int readingTimeInDays = calculateReadingTime(currentDate);
-            book.setReadingTimeInDays(readingTimeInDays);
-            
-            log.info("Creating book: {} by {} with ID: {}", book.getTitle(), book.getAuthor(), book.getId());
-            
-            // Save to DynamoDB
-            bookTable.putItem(book);
-            
-            log.info("Book created successfully with ID: {}", book.getId());
-            
-            // Convert to BookResponse
-            BookResponse response = new BookResponse();
-            response.setId(book.getId());
-            response.setTitle(book.getTitle());
-            response.setAuthor(book.getAuthor());
-            response.setPublicationYear(book.getPublicationYear());
-            response.setLanguage(book.getLanguage());
-            response.setFormat(book.getFormat());
-            response.setFinishDate(LocalDate.parse(book.getFinishDate()));
-            response.setReadYear(book.getReadYear());
-            response.setReadingTimeInDays(book.getReadingTimeInDays());
-            
-            // Send notification to SNS topic
-            sendBookNotification(response);
-            
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            
-            return new APIGatewayProxyResponseEvent()
-                    .withStatusCode(201)
-                    .withHeaders(headers)
-                    .withBody(jsonResponse);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return metrics.finish(createBook(userId, bookRequest, strict, headers, metrics));
+                } catch (TransactionCanceledException e) {
+                    boolean counterChanged = e.cancellationReasons().stream()
+                            .anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()));
+                    if (!counterChanged || attempt == MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.info("Library counter changed by a concurrent request, retrying (attempt {})", attempt);
+                }
+            }
                     
         } catch (Exception e) {
             log.error("Error creating book", e);
             
             String errorResponse = "{\"error\": \"Failed to create book\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(400)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
     
-    private Integer getNextId() {
-        List<Book> allBooks = bookTable.scan().items().stream().collect(Collectors.toList());
-        return allBooks.stream()
-                .mapToInt(Book::getId)
-                .max()
-                .orElse(0) + 1;
-    }
-    
-    private int calculateReadingTime(LocalDate currentDate) {
-        List<Book> allBooks = bookTable.scan().items().stream().collect(Collectors.toList());
+    /**
+     * Writes the book with the library's next id and returns it, or its likely duplicates in strict mode. Fails
+     * with a TransactionCanceledException when another request took the id first.
+     */
+    private APIGatewayProxyResponseEvent createBook(String userId, BookRequest bookRequest, boolean strict,
+                                                    Map<String, String> headers, RequestMetrics metrics) throws Exception {
+        // Create Book object
+        Book book = new Book();
+        book.setUserId(userId);
+        
+        // Next id of the user's library, and when the book before this one was finished
+        LibraryCounter counter = metrics.time("Query", () -> counterTable.getItem(r -> r
+                .key(Libraries.key(userId, Libraries.COUNTER_ID))
+                .consistentRead(true)));
+        int lastId = counter != null && counter.getLastId() != null ? counter.getLastId() : 0;
+        String lastFinishDate = counter != null ? counter.getLastFinishDate() : null;
+        if (lastFinishDate == null && lastId > 0) {
+            // Counters written before it was recorded, and after an import or an update of a finish date
+            Book lastBook = metrics.time("Query", () -> bookTable.getItem(r -> r.key(Libraries.key(userId, lastId)).consistentRead(true)));
+            lastFinishDate = lastBook != null ? lastBook.getFinishDate() : null;
+        }
+        book.setId(lastId + 1);
+        
+        // Set basic fields from request
+        book.setTitle(bookRequest.getTitle());
+        book.setAuthor(bookRequest.getAuthor());
+        book.setPublicationYear(bookRequest.getPublicationYear());
+        book.setLanguage(bookRequest.getLanguage());
+        book.setFormat(bookRequest.getFormat());
+        
+        // Precompute search keys so search paths never normalize stored values
+        book.setNormalizedTitle(SearchKeys.normalize(bookRequest.getTitle()));
+        book.setNormalizedAuthor(SearchKeys.normalize(bookRequest.getAuthor()));
+        
+        // Only a strict create looks for duplicates before writing; IndexNewBooksHandler flags them otherwise
+        List<Map<String, Object>> duplicates = strict && duplicateCheck != null
+                ? metrics.time("Query", () -> duplicateCheck.find(userId, book.getId(),
+                        BookSignature.of(book.getNormalizedTitle(), book.getNormalizedAuthor())))
+                : List.of();
+        metrics.count("DuplicateCount", duplicates.size());
+        if (!duplicates.isEmpty()) {
+            log.info("Rejected {} by {} as a likely duplicate of book {}", book.getTitle(), book.getAuthor(),
+                    duplicates.get(0).get("id"));
+            Map<String, Object> conflict = new LinkedHashMap<>();
+            conflict.put("error", "Likely duplicate");
+            conflict.put("duplicates", duplicates);
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(409)
+                    .withHeaders(headers)
+                    .withBody(objectMapper.writeValueAsString(conflict));
+        }
+        
+        // Auto-set finish date to today
+        LocalDate currentDate = LocalDate.now();
+        book.setFinishDate(currentDate.format(DateTimeFormatter.ISO_LOCAL_DATE));
+        book.setReadYear(currentDate.getYear());
+        
+        // Calculate reading time based on last book's finish date
+        book.setReadingTimeInDays(calculateReadingTime(lastFinishDate, currentDate));
+        
+        // Convert to BookResponse
+        BookResponse response = new BookResponse();
+        response.setId(book.getId());
+        response.setTitle(book.getTitle());
+        response.setAuthor(book.getAuthor());
+        response.setPublicationYear(book.getPublicationYear());
+        response.setLanguage(book.getLanguage());
+        response.setFormat(book.getFormat());
+        response.setFinishDate(LocalDate.parse(book.getFinishDate()));
+        response.setReadYear(book.getReadYear());
+        response.setReadingTimeInDays(book.getReadingTimeInDays());
+        // Version the @DynamoDbVersionAttribute extension writes for a new book
+        response.setVersion(1L);
         
-        Optional<Book> lastBook = allBooks.stream()
-                .max((b1, b2) -> Integer.compare(b1.getId(), b2.getId()));
+        SerializationEvent serializationEvent = SerializationEvent.start("CreateBook");
+        String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(response));
+        serializationEvent.end(jsonResponse.length());
+        // Stored with the book, so reads return it without mapping
+        book.setJson(jsonResponse);
         
-        if (lastBook.isPresent() && lastBook.get().getFinishDate() != null) {
+        log.info("Creating book: {} by {} with ID: {}", book.getTitle(), book.getAuthor(), book.getId());
+        
+        // Move the counter on and save the book and its notification in one transaction; the counter condition
+        // fails if another request took the id. The outbox publisher sends the notification to SNS.
+        LibraryCounter next = new LibraryCounter(userId, Libraries.COUNTER_ID, book.getId(), book.getFinishDate(), null);
+        Expression.Builder idUnchanged = Expression.builder()
+                .expression(lastId == 0 ? "attribute_not_exists(lastId)" : "lastId = :lastId");
+        if (lastId > 0) {
+            idUnchanged.putExpressionValue(":lastId", AttributeValue.fromN(String.valueOf(lastId)));
+        }
+        enhancedClient.transactWriteItems(TransactWriteItemsEnhancedRequest.builder()
+                .addUpdateItem(counterTable, TransactUpdateItemEnhancedRequest.builder(LibraryCounter.class)
+                        .item(next)
+                        .conditionExpression(idUnchanged.build())
+                        .build())
+                .addPutItem(bookTable, book)
+                .addPutItem(outboxTable, bookCreatedEvent(book, jsonResponse))
+                .build());
+        
+        log.info("Book created successfully with ID: {}", book.getId());
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(201)
+                .withHeaders(headers)
+                .withBody(jsonResponse);
+    }
+    
+    private int calculateReadingTime(String lastFinishDate, LocalDate currentDate) {
+        if (lastFinishDate != null) {
             try {
-                LocalDate lastFinishDate = LocalDate.parse(lastBook.get().getFinishDate());
-                long daysBetween = ChronoUnit.DAYS.between(lastFinishDate, currentDate);
+                long daysBetween = ChronoUnit.DAYS.between(LocalDate.parse(lastFinishDate), currentDate);
                 return (int) daysBetween;
             } catch (Exception e) {
                 log.warn("Error parsing last book finish date, defaulting to 0: {}", e.getMessage());
@@ -162,20 +271,24 @@ public class CreateBookHandler implements RequestHandler<APIGatewayProxyRequestE
         return 0; // Default for first book
     }
     
-    private void sendBookNotification(BookResponse book) {
-        try {
-            String message = objectMapper.writeValueAsString(book);
-            
-            PublishRequest publishRequest = PublishRequest.builder()
-                    .topicArn(topicArn)
-                    .message(message)
-                    .subject("New Book Created: " + book.getTitle())
-                    .build();
-            
-            snsClient.publish(publishRequest);
-            log.info("Notification sent to SNS topic for book: {}", book.getTitle());
-        } catch (Exception e) {
-            log.error("Failed to send SNS notification for book: {}", book.getTitle(), e);
-        }
+    // The SNS message is the created book as returned to the client, as subscribers expect it
+    private OutboxEvent bookCreatedEvent(Book book, String message) {
+        Instant now = Instant.now();
+        OutboxEvent event = new OutboxEvent();
+        event.setEventId(UUID.randomUUID().toString());
+        event.setUserId(book.getUserId());
+        event.setBookId(book.getId());
+        event.setSubject(subject("New Book Created: " + book.getTitle()));
+        event.setMessage(message);
+        event.setCreatedAt(now.toString());
+        event.setExpiresAt(now.getEpochSecond() + OUTBOX_TTL_SECONDS);
+        return event;
+    }
+    
+    // Accents are dropped, other characters SNS does not take become '?', and long titles are cut
+    static String subject(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD).replaceAll("\\p{M}+", "");
+        String ascii = NON_SUBJECT.matcher(decomposed).replaceAll("?");
+        return ascii.length() > MAX_SUBJECT_LENGTH ? ascii.substring(0, MAX_SUBJECT_LENGTH - 3) + "..." : ascii;
     }
-}
\ No newline at end of file
+}
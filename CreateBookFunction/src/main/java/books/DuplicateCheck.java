@@ -0,0 +1,89 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+
+/**
+ * Finds the books of a library that a book is likely a duplicate of, through its {@link BookSignature}: the
+ * buckets of the signature are read from the signature table, and the books already in them are compared with
+ * it, in two batch reads. Only books with a lower id are reported, so a pair is flagged once, on the later book.
+ */
+final class DuplicateCheck {
+
+    // Books sharing the most buckets with the book that are compared with it; more are only read for series
+    private static final int MAX_CANDIDATES = 20;
+
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final DynamoDbTable<Book> bookTable;
+    private final DynamoDbTable<SignatureBucket> signatureTable;
+
+    DuplicateCheck(DynamoDbEnhancedClient enhancedClient, DynamoDbTable<Book> bookTable,
+                   DynamoDbTable<SignatureBucket> signatureTable) {
+        this.enhancedClient = enhancedClient;
+        this.bookTable = bookTable;
+        this.signatureTable = signatureTable;
+    }
+
+    /**
+     * The books whose title and author are at least {@link BookSignature#THRESHOLD} alike with the signature, most
+     * alike first. Books archived since they were added to the buckets are not found, and not reported.
+     */
+    List<Map<String, Object>> find(String userId, int bookId, BookSignature signature) {
+        if (signature.isEmpty()) {
+            return List.of();
+        }
+        ReadBatch.Builder<SignatureBucket> buckets = ReadBatch.builder(SignatureBucket.class).mappedTableResource(signatureTable);
+        signature.buckets().forEach(key -> buckets.addGetItem(Key.builder().partitionValue(userId).sortValue(key).build()));
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (BatchGetResultPage page : enhancedClient.batchGetItem(r -> r.addReadBatch(buckets.build()))) {
+            for (SignatureBucket bucket : page.resultsForTable(signatureTable)) {
+                if (bucket.getIds() != null) {
+                    bucket.getIds().stream()
+                            .filter(id -> id < bookId)
+                            .forEach(id -> shared.merge(id, 1, Integer::sum));
+                }
+            }
+        }
+        if (shared.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> candidates = shared.keySet().stream()
+                .sorted(Comparator.comparing((Integer id) -> -shared.get(id)).thenComparing(id -> -id))
+                .limit(MAX_CANDIDATES)
+                .collect(Collectors.toList());
+
+        ReadBatch.Builder<Book> books = ReadBatch.builder(Book.class).mappedTableResource(bookTable);
+        candidates.forEach(id -> books.addGetItem(Libraries.key(userId, id)));
+        List<Map<String, Object>> duplicates = new ArrayList<>();
+        for (BatchGetResultPage page : enhancedClient.batchGetItem(r -> r.addReadBatch(books.build()))) {
+            for (Book candidate : page.resultsForTable(bookTable)) {
+                // Titles and authors may have changed since the book was added to the buckets
+                double similarity = signature.similarity(BookSignature.of(
+                        candidate.getNormalizedTitle() != null ? candidate.getNormalizedTitle() : SearchKeys.normalize(candidate.getTitle()),
+                        candidate.getNormalizedAuthor() != null ? candidate.getNormalizedAuthor() : SearchKeys.normalize(candidate.getAuthor())));
+                if (similarity >= BookSignature.THRESHOLD) {
+                    Map<String, Object> duplicate = new LinkedHashMap<>();
+                    duplicate.put("id", candidate.getId());
+                    duplicate.put("title", candidate.getTitle());
+                    duplicate.put("author", candidate.getAuthor());
+                    duplicate.put("similarity", Math.round(similarity * 1000) / 1000.0);
+                    duplicates.add(duplicate);
+                }
+            }
+        }
+        duplicates.sort(Comparator.comparing((Map<String, Object> duplicate) -> -(double) duplicate.get("similarity"))
+                .thenComparing(duplicate -> (int) duplicate.get("id")));
+        return duplicates;
+    }
+}
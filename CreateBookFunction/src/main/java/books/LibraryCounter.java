@@ -0,0 +1,38 @@
+package books;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * The id counter of a library, stored in the books table as item {@link Libraries#COUNTER_ID} of the owner's
+ * partition. It is moved on in the same transaction that writes the book with the new id, and keeps that book's
+ * finish date, from which the next book's reading time is counted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class LibraryCounter {
+    private String userId;
+    private Integer id;
+    private Integer lastId;
+    // Dropped by an import, and by an update of a finish date, after which the last book is read instead
+    private String lastFinishDate;
+    // Always null, so that the first create drops the reading statistics counters held before they had an item
+    // of their own; statsVersion is not mapped, and left as it is
+    private String stats;
+
+    @DynamoDbPartitionKey
+    public String getUserId() {
+        return userId;
+    }
+
+    @DynamoDbSortKey
+    public Integer getId() {
+        return id;
+    }
+}
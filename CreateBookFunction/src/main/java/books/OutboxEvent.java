@@ -0,0 +1,31 @@
+package books;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+
+/**
+ * Book notification waiting in the outbox table. It is written in the same transaction as the book and
+ * published to SNS from the table's stream by the BookOutboxPublisher function; {@code expiresAt} (epoch
+ * seconds) lets DynamoDB TTL remove it afterwards.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class OutboxEvent {
+    private String eventId;
+    private String userId;
+    private Integer bookId;
+    private String subject;
+    private String message;
+    private String createdAt;
+    private Long expiresAt;
+
+    @DynamoDbPartitionKey
+    public String getEventId() {
+        return eventId;
+    }
+}
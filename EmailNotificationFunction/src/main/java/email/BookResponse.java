@@ -1,9 +1,13 @@
 package email;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import lombok.Data;
 import java.time.LocalDate;
 
+// The created book as CreateBookHandler returns it; fields it adds later must not stop the emails
 @Data
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class BookResponse {
     private Integer id;
     private String title;
@@ -14,4 +18,5 @@ public class BookResponse {
     private String format;
     private LocalDate finishDate;
     private int readingTimeInDays;
-}
\ No newline at end of file
+    private Long version;
+}
@@ -5,6 +5,7 @@ import java.util.List;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
@@ -24,7 +25,9 @@ public class EmailNotificationHandler implements RequestHandler<SNSEvent, Void>
     private final String toEmail;
 
     public EmailNotificationHandler() {
-        this.sesClient = SesClient.builder().build();
+        this.sesClient = SesClient.builder()
+                .overrideConfiguration(o -> o.addExecutionInterceptor(new TracingInterceptor()))
+                .build();
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
         this.fromEmail = System.getenv("FROM_EMAIL");
@@ -35,23 +38,27 @@ public class EmailNotificationHandler implements RequestHandler<SNSEvent, Void>
     public Void handleRequest(SNSEvent event, Context context) {
         log.info("EmailNotification function started - Request ID: {}", context.getAwsRequestId());
 
+        RequestMetrics metrics = RequestMetrics.start("EmailNotification", context);
+        metrics.count("Records", event.getRecords().size());
         for (SNSEvent.SNSRecord record : event.getRecords()) {
             try {
                 String message = record.getSNS().getMessage();
                 log.info("Processing SNS message: {}", message);
 
                 BookResponse book = objectMapper.readValue(message, BookResponse.class);
-                sendBookCreatedEmail(book);
+                sendBookCreatedEmail(book, metrics);
 
             } catch (Exception e) {
                 log.error("Error processing SNS message", e);
+                metrics.count("Errors", 1);
             }
         }
 
+        metrics.finish();
         return null;
     }
 
-    private void sendBookCreatedEmail(BookResponse book) {
+    private void sendBookCreatedEmail(BookResponse book, RequestMetrics metrics) {
         try {
             String subject = "New Book Added: " + book.getTitle();
             String htmlBody = buildEmailBody(book);
@@ -73,11 +80,13 @@ public class EmailNotificationHandler implements RequestHandler<SNSEvent, Void>
                             .build())
                     .build();
 
-            sesClient.sendEmail(emailRequest);
+            metrics.time("Ses", () -> sesClient.sendEmail(emailRequest));
+            metrics.count("EmailsSent", 1);
             log.info("Email sent successfully for book: {}", book.getTitle());
 
         } catch (Exception e) {
             log.error("Failed to send email for book: {}", book.getTitle(), e);
+            metrics.count("Errors", 1);
         }
     }
 
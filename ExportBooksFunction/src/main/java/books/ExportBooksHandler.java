@@ -0,0 +1,267 @@
+package books;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+/**
+ * NDJSON export of the library in resumable chunks.
+ *
+ * Each request queries the caller's library page by page from its cursor and writes one book per line straight
+ * into the response body, as its pre-rendered {@value BookJsonWriter#ATTRIBUTE} attribute has it, so at most one
+ * query page and the chunk are in memory. Archived books are merged in by id from the {@link BookArchive}, which
+ * only reads the segments overlapping the ids after the cursor; a book still in the table wins over its archived
+ * copy. A chunk ends after {@code limit} books, when the body approaches the Lambda response size limit, or
+ * shortly before the function times out; the {@value #CURSOR_HEADER} header then holds the cursor for the next
+ * request, and is absent on the last chunk. {@code fromId}/{@code toId} restrict the export to an id range, which
+ * becomes part of the key condition and limits the segments read, so ranges can be pulled concurrently.
+ */
+@Slf4j
+public class ExportBooksHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    static final String CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 10000;
+    // Lambda responses are capped at 6 MB; leave room for non-ASCII characters and the headers
+    private static final int MAX_BODY_CHARS = 4 * 1024 * 1024;
+    private static final int QUERY_PAGE_SIZE = 500;
+    private static final long TIME_RESERVE_MILLIS = 2000;
+    // Browsers only let the frontend read the cursor when it is exposed
+    private static final Map<String, String> NDJSON_HEADERS = with(
+            with(ApiGateway.JSON_HEADERS, "Content-Type", "application/x-ndjson"),
+            "Access-Control-Expose-Headers", CURSOR_HEADER);
+
+    private final DynamoDbClient dynamoDbClient;
+    private final TableSchema<Book> bookSchema = TableSchema.fromBean(Book.class);
+    private final BookJsonWriter bookJsonWriter;
+    private final BookArchive archive;
+    private final String tableName;
+
+    public ExportBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public ExportBooksHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public ExportBooksHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.dynamoDbClient = ddbClient;
+        this.bookJsonWriter = new BookJsonWriter(new ObjectMapper().getFactory());
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("ExportBooks function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = NDJSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("ExportBooks", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(ApiGateway.JSON_HEADERS)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
+            Map<String, String> params = input.getQueryStringParameters() != null
+                    ? input.getQueryStringParameters()
+                    : Map.of();
+            int limit = Math.max(1, Math.min(MAX_LIMIT, intParam(params, "limit", DEFAULT_LIMIT)));
+            // Ids start after the library's counter item
+            int fromId = Math.max(Libraries.COUNTER_ID + 1, intParam(params, "fromId", Libraries.COUNTER_ID + 1));
+            int toId = params.containsKey("toId") ? intParam(params, "toId", 0) : Integer.MAX_VALUE;
+            if (toId < fromId) {
+                throw new IllegalArgumentException("toId must not be less than fromId");
+            }
+            QueryRequest.Builder query = queryRequest(userId, fromId, toId);
+            String cursor = params.get("cursor");
+            int lastId = fromId - 1;
+            if (cursor != null && !cursor.isEmpty()) {
+                int after = decodeCursor(cursor);
+                if (after > lastId) {
+                    lastId = after;
+                    query.exclusiveStartKey(Libraries.itemKey(userId, lastId));
+                }
+            }
+            int startId = lastId + 1;
+            SortedMap<Integer, String> archived = startId <= toId
+                    ? metrics.time("Archive", () -> archive.books(userId, startId, toId))
+                    : new TreeMap<>();
+            Iterator<Map.Entry<Integer, String>> archivedBooks = archived.entrySet().iterator();
+            Map.Entry<Integer, String> nextArchived = archivedBooks.hasNext() ? archivedBooks.next() : null;
+
+            StringBuilder body = new StringBuilder();
+            int exported = 0;
+            int exportedArchived = 0;
+            boolean more = false;
+            BookScanEvent scanEvent = BookScanEvent.start("ExportBooks");
+            QueryResponse page = metrics.time("Query", () -> dynamoDbClient.query(query.build()));
+            Iterator<Map<String, AttributeValue>> items = page.items().iterator();
+            Map<String, AttributeValue> item = items.hasNext() ? items.next() : null;
+            // Both the table and the archive hand out their books in id order, so the chunk is merged as it goes
+            while (item != null || nextArchived != null || page.hasLastEvaluatedKey()) {
+                if (item == null && page.hasLastEvaluatedKey()) {
+                    // Hand back what we have rather than run into the function timeout
+                    if (context != null && context.getRemainingTimeInMillis() < TIME_RESERVE_MILLIS) {
+                        more = true;
+                        break;
+                    }
+                    query.exclusiveStartKey(page.lastEvaluatedKey());
+                    page = metrics.time("Query", () -> dynamoDbClient.query(query.build()));
+                    items = page.items().iterator();
+                    item = items.hasNext() ? items.next() : null;
+                    continue;
+                }
+                if (exported >= limit || body.length() >= MAX_BODY_CHARS) {
+                    more = true;
+                    break;
+                }
+                int itemId = item != null ? Integer.parseInt(item.get("id").n()) : Integer.MAX_VALUE;
+                if (nextArchived != null && nextArchived.getKey() <= itemId) {
+                    // A book changed since it was archived is still in the table, and exported as the table has it
+                    if (nextArchived.getKey() < itemId) {
+                        body.append(nextArchived.getValue()).append('\n');
+                        lastId = nextArchived.getKey();
+                        exported++;
+                        exportedArchived++;
+                    }
+                    nextArchived = archivedBooks.hasNext() ? archivedBooks.next() : null;
+                } else {
+                    Map<String, AttributeValue> book = item;
+                    body.append(metrics.time("Serialization", () -> render(book))).append('\n');
+                    lastId = itemId;
+                    exported++;
+                    item = items.hasNext() ? items.next() : null;
+                }
+            }
+            scanEvent.end(exported);
+            metrics.count("ItemCount", exported);
+            metrics.count("ArchivedItemCount", exportedArchived);
+            String nextCursor = more ? encodeCursor(lastId) : null;
+
+            if (nextCursor != null) {
+                headers = with(headers, CURSOR_HEADER, nextCursor);
+            }
+            log.info("Exported {} books, next cursor: {}", exported, nextCursor);
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(body.toString()));
+
+        } catch (IllegalArgumentException e) {
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(400)
+                    .withHeaders(ApiGateway.JSON_HEADERS)
+                    .withBody("{\"error\": \"" + e.getMessage() + "\"}"));
+        } catch (Exception e) {
+            log.error("Error exporting books from DynamoDB", e);
+
+            String errorResponse = "{\"error\": \"Failed to export books\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(ApiGateway.JSON_HEADERS)
+                    .withBody(errorResponse));
+        }
+    }
+
+    private QueryRequest.Builder queryRequest(String userId, int fromId, int toId) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":userId", AttributeValue.fromS(userId));
+        values.put(":fromId", AttributeValue.fromN(String.valueOf(fromId)));
+        String condition = "userId = :userId AND id >= :fromId";
+        if (toId < Integer.MAX_VALUE) {
+            values.put(":toId", AttributeValue.fromN(String.valueOf(toId)));
+            condition = "userId = :userId AND id BETWEEN :fromId AND :toId";
+        }
+        return QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression(condition)
+                .expressionAttributeValues(values)
+                .limit(QUERY_PAGE_SIZE);
+    }
+
+    private static Map<String, String> with(Map<String, String> headers, String name, String value) {
+        Map<String, String> result = new HashMap<>(headers);
+        result.put(name, value);
+        return Map.copyOf(result);
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    // Opaque to clients; the id of the last exported book, where the scan resumes
+    static String encodeCursor(int id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int decodeCursor(String cursor) {
+        try {
+            return Integer.parseInt(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    // The stored rendering, or the book rendered the same way when it was written before that attribute existed
+    private String render(Map<String, AttributeValue> item) throws IOException {
+        AttributeValue json = item.get(BookJsonWriter.ATTRIBUTE);
+        return json != null ? json.s() : bookJsonWriter.write(bookSchema.mapToItem(item));
+    }
+}
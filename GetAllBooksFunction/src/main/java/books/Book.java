@@ -5,12 +5,14 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @DynamoDbBean
 public class Book {
+    private String userId;
     private Integer id;
     private String title;
     private String author;
@@ -20,8 +22,15 @@ public class Book {
     private Integer publicationYear;
     private String format;
     private String language;
+    private Long version;
 
+    // Cognito sub of the library's owner; ids are per library
     @DynamoDbPartitionKey
+    public String getUserId() {
+        return userId;
+    }
+
+    @DynamoDbSortKey
     public Integer getId() {
         return id;
     }
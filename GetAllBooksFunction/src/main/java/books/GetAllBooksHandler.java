@@ -1,15 +1,18 @@
 package books;
 
-import java.time.LocalDate;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.stream.Collectors;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
@@ -17,18 +20,41 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 
+/**
+ * Returns the caller's library. Books store their JSON pre-rendered, so the query reads only that attribute
+ * and the response is the rendered books joined into an array. Libraries with books written before the
+ * attribute existed are read whole and rendered by {@link BookJsonWriter}. Books of archived read years are
+ * merged in from the {@link BookArchive}.
+ */
 @Slf4j
 public class GetAllBooksHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
+    private final DynamoDbClient dynamoDbClient;
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<Book> bookTable;
     private final ObjectMapper objectMapper;
+    private final BookJsonWriter bookJsonWriter;
+    private final BookArchive archive;
     private final String tableName;
 
     public GetAllBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetAllBooksHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetAllBooksHandler(DynamoDbClient ddbClient, BookArchive archive) {
         this.tableName = System.getenv("TABLE_NAME");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
+        this.dynamoDbClient = ddbClient;
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
@@ -36,17 +62,22 @@ public class GetAllBooksHandler implements RequestHandler<APIGatewayProxyRequest
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
         this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.bookJsonWriter = new BookJsonWriter(objectMapper.getFactory());
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("GetAllBooks function started - Request ID: {}", context.getAwsRequestId());
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
         
         // Handle OPTIONS request for CORS preflight
         if ("OPTIONS".equals(input.getHttpMethod())) {
@@ -56,48 +87,107 @@ public class GetAllBooksHandler implements RequestHandler<APIGatewayProxyRequest
                     .withBody("");
         }
 
+        RequestMetrics metrics = RequestMetrics.start("GetAllBooks", context);
         try {
-            log.info("Scanning DynamoDB table: {}", tableName);
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
             
-            List<BookResponse> books = bookTable.scan()
-                    .items()
-                    .stream()
-                    .map(this::convertToBookResponse)
-                    .sorted((b1, b2) -> Integer.compare(b1.getId(), b2.getId()))
-                    .collect(Collectors.toList());
+            log.info("Querying the library of user {} in table: {}", userId, tableName);
             
-            log.info("Found {} books in database", books.size());
+            SortedMap<Integer, String> archived = metrics.time("Archive", () -> archive.books(userId));
+            metrics.count("ArchivedItemCount", archived.size());
             
-            String jsonResponse = objectMapper.writeValueAsString(books);
+            BookScanEvent scanEvent = BookScanEvent.start("GetAllBooks");
+            Map<Integer, String> rendered = metrics.time("Query", () -> renderedBooks(userId));
+            String jsonResponse;
+            if (rendered != null) {
+                scanEvent.end(rendered.size());
+                metrics.count("ItemCount", rendered.size());
+                log.info("Found {} books in database and {} in the archive", rendered.size(), archived.size());
+                
+                SerializationEvent serializationEvent = SerializationEvent.start("GetAllBooks");
+                jsonResponse = metrics.time("Serialization", () -> join(archived, rendered));
+                serializationEvent.end(jsonResponse.length());
+            } else {
+                // Some books were written before books were stored rendered; read and render them all
+                List<Book> items = metrics.time("Query", () -> bookTable.query(Libraries.books(userId))
+                        .items()
+                        .stream()
+                        .collect(Collectors.toList()));
+                scanEvent.end(items.size());
+                metrics.count("ItemCount", items.size());
+                log.info("Found {} books in database and {} in the archive", items.size(), archived.size());
+                
+                // The query returns the books in id order already
+                SerializationEvent serializationEvent = SerializationEvent.start("GetAllBooks");
+                jsonResponse = metrics.time("Serialization", () -> {
+                    if (archived.isEmpty()) {
+                        return bookJsonWriter.write(items);
+                    }
+                    Map<Integer, String> hot = new LinkedHashMap<>();
+                    for (Book book : items) {
+                        hot.put(book.getId(), bookJsonWriter.write(book));
+                    }
+                    return join(archived, hot);
+                });
+                serializationEvent.end(jsonResponse.length());
+            }
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(jsonResponse);
+                    .withBody(jsonResponse));
                     
         } catch (Exception e) {
             log.error("Error retrieving books from DynamoDB", e);
             
             String errorResponse = "{\"error\": \"Failed to retrieve books\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
     
-    private BookResponse convertToBookResponse(Book book) {
-        BookResponse response = new BookResponse();
-        response.setId(book.getId());
-        response.setTitle(book.getTitle());
-        response.setAuthor(book.getAuthor());
-        response.setPublicationYear(book.getPublicationYear());
-        response.setLanguage(book.getLanguage());
-        response.setFormat(book.getFormat());
-        response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
-        response.setReadYear(book.getReadYear());
-        response.setReadingTimeInDays(book.getReadingTimeInDays());
-        return response;
+    /**
+     * The pre-rendered JSON of every book of the library by id, in id order, reading nothing but the id and
+     * that attribute, or {@code null} as soon as a book turns out to have none.
+     */
+    private Map<Integer, String> renderedBooks(String userId) {
+        Map<Integer, String> rendered = new LinkedHashMap<>();
+        for (Map<String, AttributeValue> item : dynamoDbClient.queryPaginator(QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression("userId = :userId AND id > :counterId")
+                .expressionAttributeValues(Map.of(
+                        ":userId", AttributeValue.fromS(userId),
+                        ":counterId", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                .projectionExpression("id, #json")
+                .expressionAttributeNames(Map.of("#json", BookJsonWriter.ATTRIBUTE))
+                .build()).items()) {
+            AttributeValue json = item.get(BookJsonWriter.ATTRIBUTE);
+            if (json == null) {
+                return null;
+            }
+            rendered.put(Integer.parseInt(item.get("id").n()), json.s());
+        }
+        return rendered;
+    }
+
+    /**
+     * The books of the table and the archive as a JSON array in id order. A book still in the table wins over
+     * its archived copy.
+     */
+    static String join(SortedMap<Integer, String> archived, Map<Integer, String> hot) {
+        if (archived.isEmpty()) {
+            return "[" + String.join(",", hot.values()) + "]";
+        }
+        archived.putAll(hot);
+        return "[" + String.join(",", archived.values()) + "]";
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class RequestMetricsTest {
+
+    private final List<String> lines = new ArrayList<>();
+
+    @BeforeAll
+    static void withoutXRay() {
+        // There is no X-Ray segment outside Lambda; make the subsegments no-ops
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @AfterEach
+    void restoreSink() {
+        RequestMetrics.setSink(System.out::println);
+    }
+
+    @Test
+    void writesOneEmfLinePerInvocation() throws Exception {
+        RequestMetrics.setSink(lines::add);
+        String body = "[{\"title\":\"Cien a\u00f1os de soledad\",\"author\":\"Gabriel Garc\u00eda M\u00e1rquez\"}]";
+
+        RequestMetrics metrics = RequestMetrics.start("GetAllBooks", null);
+        metrics.count("ItemCount", 1);
+        metrics.time("Serialization", () -> body);
+        metrics.finish(new APIGatewayProxyResponseEvent().withStatusCode(200).withBody(body));
+
+        assertEquals(1, lines.size());
+        JsonNode emf = new ObjectMapper().readTree(lines.get(0));
+        JsonNode directive = emf.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals(RequestMetrics.NAMESPACE, directive.get("Namespace").asText());
+        assertEquals("Function", directive.get("Dimensions").get(0).get(0).asText());
+        Map<String, String> units = new HashMap<>();
+        directive.get("Metrics").forEach(metric -> units.put(metric.get("Name").asText(), metric.get("Unit").asText()));
+        assertEquals("Count", units.get("ItemCount"));
+        assertEquals("Milliseconds", units.get("SerializationTime"));
+        assertEquals("Milliseconds", units.get("TotalTime"));
+        assertEquals("Bytes", units.get("ResponseSize"));
+
+        assertEquals("GetAllBooks", emf.get("Function").asText());
+        assertEquals("200", emf.get("StatusCode").asText());
+        assertEquals(1, emf.get("ItemCount").asDouble());
+        assertEquals(0, emf.get("Errors").asDouble());
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, emf.get("ResponseSize").asLong());
+        assertNull(RequestMetrics.current());
+    }
+
+    @Test
+    void countsServerErrors() throws Exception {
+        RequestMetrics.setSink(lines::add);
+
+        RequestMetrics.start("GetAllBooks", null)
+                .finish(new APIGatewayProxyResponseEvent().withStatusCode(500).withBody("{\"error\": \"\"}"));
+
+        JsonNode emf = new ObjectMapper().readTree(lines.get(0));
+        assertEquals(1, emf.get("Errors").asDouble());
+        assertEquals("500", emf.get("StatusCode").asText());
+    }
+
+    @Test
+    void measuresUtf8Length() {
+        for (String value : new String[] {"", "Dune", "Garc\u00eda M\u00e1rquez", "\u4e09\u4f53", "\uD83D\uDCDA books"}) {
+            assertEquals(value.getBytes(StandardCharsets.UTF_8).length, RequestMetrics.utf8Length(value), value);
+        }
+    }
+}
@@ -1,33 +1,57 @@
 package books;
 
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Map;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 
+/**
+ * Returns one book. Books store their response pre-rendered in the {@code json} attribute, so only that
+ * attribute is read and returned as is; books written before it existed are mapped and serialized. A book not in
+ * the table is looked up in the {@link BookArchive}, reading only the segments whose id range holds it. The books
+ * that IndexNewBooksHandler found a book likely to be a duplicate of when it was created are added to it as
+ * {@code duplicates}.
+ */
 @Slf4j
 public class GetBookByIdHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
+    private final DynamoDbClient dynamoDbClient;
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<Book> bookTable;
     private final ObjectMapper objectMapper;
+    private final BookArchive archive;
     private final String tableName;
 
     public GetBookByIdHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetBookByIdHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetBookByIdHandler(DynamoDbClient ddbClient, BookArchive archive) {
         this.tableName = System.getenv("TABLE_NAME");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
+        this.dynamoDbClient = ddbClient;
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
@@ -35,52 +59,107 @@ public class GetBookByIdHandler implements RequestHandler<APIGatewayProxyRequest
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
         this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("GetBookById function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
 
+        RequestMetrics metrics = RequestMetrics.start("GetBookById", context);
         try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
             String bookId = input.getPathParameters().get("id");
             log.info("Getting book with ID: {}", bookId);
             
-            Key key = Key.builder().partitionValue(Integer.parseInt(bookId)).build();
-            Book book = bookTable.getItem(key);
+            int id = Integer.parseInt(bookId);
+            // Id 0 is the library's counter, not a book
+            if (id <= Libraries.COUNTER_ID) {
+                return metrics.finish(notFound(bookId, headers));
+            }
+            Map<String, AttributeValue> item = metrics.time("Query", () -> dynamoDbClient.getItem(GetItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Libraries.itemKey(userId, id))
+                    .projectionExpression("id, #json, duplicates")
+                    .expressionAttributeNames(Map.of("#json", "json"))
+                    .build()).item());
+            if (item != null && item.get("json") != null) {
+                String jsonResponse = item.get("json").s();
+                if (item.get("duplicates") != null) {
+                    // A JSON array, spliced in as the last field of the rendered object
+                    jsonResponse = jsonResponse.substring(0, jsonResponse.lastIndexOf('}'))
+                            + ",\"duplicates\":" + item.get("duplicates").s() + "}";
+                }
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(200)
+                        .withHeaders(headers)
+                        .withBody(jsonResponse));
+            }
             
-            if (book == null) {
-                log.info("Book not found with ID: {}", bookId);
-                return new APIGatewayProxyResponseEvent()
-                        .withStatusCode(404)
+            if (item == null || item.isEmpty()) {
+                String archived = metrics.time("Archive", () -> archive.book(userId, id));
+                if (archived == null) {
+                    return metrics.finish(notFound(bookId, headers));
+                }
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(200)
                         .withHeaders(headers)
-                        .withBody("{\"error\": \"Book not found\"}");
+                        .withBody(archived));
+            }
+
+            // Written before books were stored rendered
+            Book book = metrics.time("Query", () -> bookTable.getItem(Libraries.key(userId, id)));
+            if (book == null) {
+                return metrics.finish(notFound(bookId, headers));
             }
             
             log.info("Book found: {}", book.getTitle());
-            BookResponse response = convertToBookResponse(book);
-            String jsonResponse = objectMapper.writeValueAsString(response);
+            BookResponse response = metrics.time("Mapping", () -> convertToBookResponse(book));
+            SerializationEvent serializationEvent = SerializationEvent.start("GetBookById");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(response));
+            serializationEvent.end(jsonResponse.length());
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(jsonResponse);
+                    .withBody(jsonResponse));
                     
         } catch (Exception e) {
             log.error("Error retrieving book", e);
             
             String errorResponse = "{\"error\": \"Failed to retrieve book\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
     
+    private static APIGatewayProxyResponseEvent notFound(String bookId, Map<String, String> headers) {
+        log.info("Book not found with ID: {}", bookId);
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(404)
+                .withHeaders(headers)
+                .withBody("{\"error\": \"Book not found\"}");
+    }
+
     private BookResponse convertToBookResponse(Book book) {
         BookResponse response = new BookResponse();
         response.setId(book.getId());
@@ -92,6 +171,7 @@ public class GetBookByIdHandler implements RequestHandler<APIGatewayProxyRequest
         response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
         response.setReadYear(book.getReadYear());
         response.setReadingTimeInDays(book.getReadingTimeInDays());
+        response.setVersion(book.getVersion());
         return response;
     }
 }
\ No newline at end of file
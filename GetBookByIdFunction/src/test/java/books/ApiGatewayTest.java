@@ -0,0 +1,191 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+
+class ApiGatewayTest {
+
+    private static final String SUB = "0f4c2a9e-7b1d-4e2a-9c3b-5d6e7f8a9b0c";
+    private static final String BOOK = "{\"id\":42,\"title\":\"Cien a\u00f1os de soledad\","
+            + "\"publicationYear\":1967,\"readYear\":2021,\"author\":\"Gabriel Garc\u00eda M\u00e1rquez\","
+            + "\"language\":\"es\",\"format\":\"paperback\",\"finishDate\":\"2021-03-14\","
+            + "\"readingTimeInDays\":23,\"version\":1}";
+
+    private final List<GetItemRequest> requests = new ArrayList<>();
+
+    @BeforeAll
+    static void withoutXRay() {
+        // There is no X-Ray segment outside Lambda; make the subsegments no-ops
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @Test
+    void convertsTheHttpApiEventToTheRestApiEvent() {
+        APIGatewayProxyRequestEvent rest = restEvent("POST", "/books/{id}", "/books/42", Map.of("id", "42"),
+                Map.of("limit", "10", "cursor", "NDI"), SUB, "{\"title\":\"Cien a\u00f1os de soledad\"}");
+        APIGatewayV2HTTPEvent http = httpEvent("POST", "/books/{id}", "/books/42", Map.of("id", "42"),
+                Map.of("limit", "10", "cursor", "NDI"), SUB, "{\"title\":\"Cien a\u00f1os de soledad\"}");
+        http.setBody(Base64.getEncoder().encodeToString(http.getBody().getBytes(StandardCharsets.UTF_8)));
+        http.setIsBase64Encoded(true);
+
+        APIGatewayProxyRequestEvent converted = ApiGateway.fromHttpApi(http);
+
+        assertEquals(rest.getHttpMethod(), converted.getHttpMethod());
+        assertEquals(rest.getResource(), converted.getResource());
+        assertEquals(rest.getPath(), converted.getPath());
+        assertEquals(rest.getPathParameters(), converted.getPathParameters());
+        assertEquals(rest.getQueryStringParameters(), converted.getQueryStringParameters());
+        assertEquals(rest.getBody(), converted.getBody());
+        assertFalse(converted.getIsBase64Encoded());
+        assertEquals(rest.getRequestContext().getAuthorizer(), converted.getRequestContext().getAuthorizer());
+        assertEquals(SUB, Libraries.userId(converted));
+    }
+
+    @Test
+    void answersBothPayloadsAlike() {
+        GetBookByIdHandler handler = new GetBookByIdHandler(client(), new BookArchive(null, null, 0));
+
+        APIGatewayProxyResponseEvent rest = handler.handleRequest(
+                restEvent("GET", "/books/{id}", "/books/42", Map.of("id", "42"), null, SUB, null), null);
+        APIGatewayV2HTTPResponse http = handler.handleHttpRequest(
+                httpEvent("GET", "/books/{id}", "/books/42", Map.of("id", "42"), null, SUB, null), null);
+
+        assertEquals(200, rest.getStatusCode());
+        assertEquals(BOOK, rest.getBody());
+        assertEquals(rest.getStatusCode(), http.getStatusCode());
+        assertEquals(rest.getHeaders(), http.getHeaders());
+        assertEquals(rest.getBody(), http.getBody());
+        assertFalse(http.getIsBase64Encoded());
+        // Both read the caller's library, keyed by the sub claim
+        assertEquals(2, requests.size());
+        assertEquals(Libraries.itemKey(SUB, 42), requests.get(0).key());
+        assertEquals(requests.get(0).key(), requests.get(1).key());
+    }
+
+    @Test
+    void rejectsBothPayloadsWithoutClaims() {
+        GetBookByIdHandler handler = new GetBookByIdHandler(client(), new BookArchive(null, null, 0));
+
+        APIGatewayProxyResponseEvent rest = handler.handleRequest(
+                restEvent("GET", "/books/{id}", "/books/42", Map.of("id", "42"), null, null, null), null);
+        APIGatewayV2HTTPResponse http = handler.handleHttpRequest(
+                httpEvent("GET", "/books/{id}", "/books/42", Map.of("id", "42"), null, null, null), null);
+
+        assertEquals(401, rest.getStatusCode());
+        assertEquals(rest.getStatusCode(), http.getStatusCode());
+        assertEquals(rest.getHeaders(), http.getHeaders());
+        assertEquals(rest.getBody(), http.getBody());
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    void leavesTheResourceOfTheDefaultRouteEmpty() {
+        APIGatewayV2HTTPEvent http = httpEvent("GET", null, "/books/42", null, null, SUB, null);
+        http.setRouteKey("$default");
+
+        APIGatewayProxyRequestEvent converted = ApiGateway.fromHttpApi(http);
+
+        assertNull(converted.getResource());
+        assertEquals("/books/42", converted.getPath());
+    }
+
+    // What the REST API's Cognito authorizer sends
+    private static APIGatewayProxyRequestEvent restEvent(String method, String resource, String path,
+                                                         Map<String, String> pathParameters,
+                                                         Map<String, String> queryStringParameters,
+                                                         String sub, String body) {
+        APIGatewayProxyRequestEvent.ProxyRequestContext context = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        context.setRequestId("rest-request");
+        context.setStage("Prod");
+        if (sub != null) {
+            context.setAuthorizer(Map.of("claims", Map.of("sub", sub, "token_use", "id")));
+        }
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withResource(resource)
+                .withPath(path)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withPathParameters(pathParameters)
+                .withQueryStringParameters(queryStringParameters)
+                .withBody(body)
+                .withIsBase64Encoded(false)
+                .withRequestContext(context);
+    }
+
+    // What the HTTP API's JWT authorizer sends for the same request
+    private static APIGatewayV2HTTPEvent httpEvent(String method, String resource, String path,
+                                                   Map<String, String> pathParameters,
+                                                   Map<String, String> queryStringParameters,
+                                                   String sub, String body) {
+        APIGatewayV2HTTPEvent.RequestContext context = new APIGatewayV2HTTPEvent.RequestContext();
+        context.setRequestId("http-request");
+        context.setStage("$default");
+        context.setHttp(APIGatewayV2HTTPEvent.RequestContext.Http.builder()
+                .withMethod(method)
+                .withPath(path)
+                .build());
+        if (sub != null) {
+            APIGatewayV2HTTPEvent.RequestContext.Authorizer authorizer = new APIGatewayV2HTTPEvent.RequestContext.Authorizer();
+            authorizer.setJwt(APIGatewayV2HTTPEvent.RequestContext.Authorizer.JWT.builder()
+                    .withClaims(Map.of("sub", sub, "token_use", "id"))
+                    .withScopes(List.of())
+                    .build());
+            context.setAuthorizer(authorizer);
+        }
+        return APIGatewayV2HTTPEvent.builder()
+                .withVersion("2.0")
+                .withRouteKey(resource != null ? method + " " + resource : "$default")
+                .withRawPath(path)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withPathParameters(pathParameters)
+                .withQueryStringParameters(queryStringParameters)
+                .withBody(body)
+                .withIsBase64Encoded(false)
+                .withRequestContext(context)
+                .build();
+    }
+
+    // Answers every GetItem with the stored rendering of the book
+    private DynamoDbClient client() {
+        return new DynamoDbClient() {
+            @Override
+            public GetItemResponse getItem(GetItemRequest request) {
+                requests.add(request);
+                return GetItemResponse.builder()
+                        .item(Map.of(
+                                "id", AttributeValue.fromN("42"),
+                                "json", AttributeValue.fromS(BOOK)))
+                        .build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
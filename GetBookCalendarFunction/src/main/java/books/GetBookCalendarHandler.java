@@ -0,0 +1,118 @@
+package books;
+
+import java.time.Year;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * The reading calendar of one year of the caller's library: the books finished on each day, for a heatmap, and
+ * the longest streak of days with a finished book and the longest break between two books. Each read year of
+ * the {@link ReadingStats} holds its finish days as a bitset, which every created book updates, so the streaks
+ * are found by walking the runs of its bits instead of the books.
+ *
+ * {@code year} defaults to the current year.
+ */
+@Slf4j
+public class GetBookCalendarHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private final LibraryStats libraryStats;
+    private final ObjectMapper objectMapper;
+
+    public GetBookCalendarHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetBookCalendarHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetBookCalendarHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.libraryStats = new LibraryStats(ddbClient, archive, System.getenv("TABLE_NAME"));
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("GetBookCalendar function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("GetBookCalendar", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+
+            Map<String, String> params = input.getQueryStringParameters() != null
+                    ? input.getQueryStringParameters()
+                    : Map.of();
+            int year = params.get("year") != null && !params.get("year").trim().isEmpty()
+                    ? Integer.parseInt(params.get("year").trim())
+                    : Year.now().getValue();
+
+            ReadingStats stats = libraryStats.get(userId, "GetBookCalendar", metrics);
+
+            SerializationEvent serializationEvent = SerializationEvent.start("GetBookCalendar");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(stats.toCalendarResponse(year)));
+            serializationEvent.end(jsonResponse.length());
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (NumberFormatException e) {
+            log.error("Invalid calendar parameter", e);
+
+            String errorResponse = "{\"error\": \"Invalid parameter\", \"message\": \"year must be a valid integer\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(400)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        } catch (Exception e) {
+            log.error("Error building the reading calendar", e);
+
+            String errorResponse = "{\"error\": \"Failed to build the reading calendar\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package books;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reading statistics of a library, stored as the {@value #ATTRIBUTE} attribute of its statistics item and brought
+ * up to date with the books created since, see {@link LibraryStats}, so that {@code GET /books/stats} reads a
+ * few items instead of the library.
+ *
+ * Every figure is a count, a sum, a minimum or a maximum, so the statistics of two sets of books merge into
+ * those of their union. Reading times are kept as a histogram with fixed buckets, one per day up to two weeks
+ * and then coarser; the median and the percentiles are read off the histogram and are exact up to 14 days.
+ * Languages and formats are few and counted exactly; authors are many and only the most read are tracked, see
+ * {@link TopCounts}. Both are kept for the whole library and for each read year, for {@code GET /books/top}.
+ * The days of each year on which books were finished are kept as a bitset, for {@code GET /books/calendar}.
+ */
+public final class ReadingStats {
+
+    public static final String ATTRIBUTE = "stats";
+    /** Counter item attribute moved on by every invalidation, and kept with the statistics computed at it. */
+    public static final String VERSION_ATTRIBUTE = "statsVersion";
+    /** Statistics item attribute: the counter's {@code lastId} when they were saved, the last book they count. */
+    public static final String COUNTED_TO_ATTRIBUTE = "countedTo";
+    // Moved on when a figure is added, so that statistics stored without it are computed again
+    static final int SCHEMA = 3;
+
+    // Upper bound of each reading time bucket, in days; the last bucket holds everything longer
+    private static final int[] BUCKET_BOUNDS = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 21, 30, 45, 60, 90, 120, 180, 270, 365};
+    private static final double[] PERCENTILES = {0.25, 0.5, 0.75, 0.9};
+    // Authors tracked for the whole library and for each read year
+    private static final int TOP_AUTHORS = 100;
+    private static final int TOP_AUTHORS_OF_YEAR = 30;
+    // Most counted first, ties by name
+    private static final Comparator<Map.Entry<String, Long>> BY_COUNT =
+            Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    public int schema;
+    public long count;
+    public ReadingTimes readingTimes = new ReadingTimes();
+    public TreeMap<Integer, YearStats> years = new TreeMap<>();
+    public TreeMap<String, Long> languages = new TreeMap<>();
+    public TreeMap<String, Long> formats = new TreeMap<>();
+    public TopCounts authors = new TopCounts(TOP_AUTHORS);
+    public Read longest;
+    public Read shortest;
+
+    public static ReadingStats of(List<Book> books) {
+        ReadingStats stats = new ReadingStats();
+        stats.schema = SCHEMA;
+        books.forEach(stats::add);
+        return stats;
+    }
+
+    /**
+     * The stored statistics, or {@code null} when an earlier version of this class stored them without some
+     * of the figures.
+     */
+    public static ReadingStats fromJson(String json) throws IOException {
+        ReadingStats stats = OBJECT_MAPPER.readValue(json, ReadingStats.class);
+        return stats.schema == SCHEMA ? stats : null;
+    }
+
+    public String toJson() throws IOException {
+        return OBJECT_MAPPER.writeValueAsString(this);
+    }
+
+    public ReadingStats add(Book book) {
+        count++;
+        Integer days = book.getReadingTimeInDays();
+        if (days != null) {
+            readingTimes.add(days);
+            Read read = new Read(book);
+            if (longest == null || days > longest.readingTimeInDays) {
+                longest = read;
+            }
+            // A first book has no earlier one to measure from, and gets 0 days
+            if (days > 0 && (shortest == null || days < shortest.readingTimeInDays)) {
+                shortest = read;
+            }
+        }
+        if (book.getReadYear() != null) {
+            YearStats year = years.computeIfAbsent(book.getReadYear(), y -> new YearStats());
+            year.count++;
+            if (days != null) {
+                year.readingTimes.add(days);
+            }
+            // finishDate is an ISO date, yyyy-MM-dd
+            if (book.getFinishDate() != null && book.getFinishDate().length() >= 7) {
+                year.months[Integer.parseInt(book.getFinishDate().substring(5, 7)) - 1]++;
+            }
+            if (book.getFinishDate() != null && book.getFinishDate().length() >= 10) {
+                year.finished(LocalDate.parse(book.getFinishDate().substring(0, 10)).getDayOfYear() - 1);
+            }
+            if (book.getLanguage() != null) {
+                year.languages.merge(book.getLanguage(), 1L, Long::sum);
+            }
+            if (book.getFormat() != null) {
+                year.formats.merge(book.getFormat(), 1L, Long::sum);
+            }
+            if (book.getAuthor() != null) {
+                year.authors.add(book.getAuthor());
+            }
+        }
+        if (book.getLanguage() != null) {
+            languages.merge(book.getLanguage(), 1L, Long::sum);
+        }
+        if (book.getFormat() != null) {
+            formats.merge(book.getFormat(), 1L, Long::sum);
+        }
+        if (book.getAuthor() != null) {
+            authors.add(book.getAuthor());
+        }
+        return this;
+    }
+
+    public ReadingStats merge(ReadingStats other) {
+        count += other.count;
+        readingTimes.merge(other.readingTimes);
+        other.years.forEach((readYear, year) -> years.computeIfAbsent(readYear, y -> new YearStats()).merge(year));
+        other.languages.forEach((language, books) -> languages.merge(language, books, Long::sum));
+        other.formats.forEach((format, books) -> formats.merge(format, books, Long::sum));
+        authors.merge(other.authors);
+        if (other.longest != null && (longest == null || other.longest.readingTimeInDays > longest.readingTimeInDays)) {
+            longest = other.longest;
+        }
+        if (other.shortest != null && (shortest == null || other.shortest.readingTimeInDays < shortest.readingTimeInDays)) {
+            shortest = other.shortest;
+        }
+        return this;
+    }
+
+    /**
+     * The statistics as {@code GET /books/stats} returns them.
+     */
+    public Map<String, Object> toResponse() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("count", count);
+        response.put("readingTimeInDays", readingTimes.toResponse());
+        Map<Integer, Object> byYear = new LinkedHashMap<>();
+        years.forEach((readYear, year) -> {
+            Map<String, Object> yearResponse = new LinkedHashMap<>();
+            yearResponse.put("count", year.count);
+            yearResponse.put("readingTimeInDays", year.readingTimes.toResponse());
+            yearResponse.put("booksPerMonth", year.months);
+            byYear.put(readYear, yearResponse);
+        });
+        response.put("years", byYear);
+        response.put("languages", languages);
+        response.put("formats", formats);
+        response.put("longestRead", longest);
+        response.put("shortestRead", shortest);
+        return response;
+    }
+
+    /**
+     * The most read authors, languages and formats as {@code GET /books/top} returns them, for the whole library
+     * and for each read year, or only {@code readYear} when given.
+     */
+    public Map<String, Object> toTopResponse(int n, Integer readYear) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("authors", authors.top(n));
+        response.put("languages", top(languages, n));
+        response.put("formats", top(formats, n));
+        Map<Integer, Object> byYear = new LinkedHashMap<>();
+        years.forEach((year, stats) -> {
+            if (readYear == null || readYear.equals(year)) {
+                Map<String, Object> yearResponse = new LinkedHashMap<>();
+                yearResponse.put("authors", stats.authors.top(n));
+                yearResponse.put("languages", top(stats.languages, n));
+                yearResponse.put("formats", top(stats.formats, n));
+                byYear.put(year, yearResponse);
+            }
+        });
+        response.put("years", byYear);
+        return response;
+    }
+
+    /**
+     * The books finished on each day of the year as {@code GET /books/calendar} returns them, with the longest
+     * streak of consecutive days on which books were finished and the longest break between two books. Streaks
+     * and breaks that run over New Year are followed into the year before and the year after, so they are
+     * measured whole.
+     */
+    public Map<String, Object> toCalendarResponse(int readYear) {
+        YearStats year = years.getOrDefault(readYear, new YearStats());
+        BitSet finished = BitSet.valueOf(year.days);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("year", readYear);
+        response.put("count", year.count);
+        response.put("finishDays", finished.cardinality());
+        Map<String, Long> byDay = new LinkedHashMap<>();
+        finished.stream().forEach(day -> byDay.put(date(readYear, day), year.booksOn(day)));
+        response.put("days", byDay);
+
+        // The finish days of the year before, the year and the year after, one bit per day
+        int first = Year.of(readYear - 1).length();
+        int last = first + Year.of(readYear).length();
+        BitSet days = new BitSet();
+        addDays(days, readYear - 1, 0);
+        addDays(days, readYear, first);
+        addDays(days, readYear + 1, last);
+
+        // Runs of set bits are streaks, the runs of clear bits between them are breaks; only those reaching into
+        // the year count
+        int[] streak = {0, -1};
+        int[] pause = {0, -1};
+        for (int start = days.nextSetBit(0); start >= 0; ) {
+            int end = days.nextClearBit(start);
+            if (end > first && start < last && end - start > streak[0]) {
+                streak = new int[] {end - start, start};
+            }
+            int next = days.nextSetBit(end);
+            if (next > first && end < last && next - end > pause[0]) {
+                pause = new int[] {next - end, end};
+            }
+            start = next;
+        }
+        response.put("longestStreak", run(readYear, first, streak));
+        response.put("longestBreak", run(readYear, first, pause));
+        return response;
+    }
+
+    private void addDays(BitSet days, int readYear, int offset) {
+        YearStats year = years.get(readYear);
+        if (year != null) {
+            BitSet.valueOf(year.days).stream().forEach(day -> days.set(offset + day));
+        }
+    }
+
+    // The run starts at the bit counted from January 1st of the year before
+    private static Map<String, Object> run(int readYear, int offset, int[] run) {
+        if (run[0] == 0) {
+            return null;
+        }
+        LocalDate from = LocalDate.ofYearDay(readYear, 1).plusDays(run[1] - offset);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("days", run[0]);
+        response.put("from", from.toString());
+        response.put("to", from.plusDays(run[0] - 1).toString());
+        return response;
+    }
+
+    private static String date(int readYear, int day) {
+        return LocalDate.ofYearDay(readYear, day + 1).toString();
+    }
+
+    private static List<Map<String, Object>> top(Map<String, Long> counts, int n) {
+        List<Map<String, Object>> top = new ArrayList<>();
+        counts.entrySet().stream()
+                .sorted(BY_COUNT)
+                .limit(n)
+                .forEach(entry -> top.add(topEntry(entry.getKey(), entry.getValue(), 0)));
+        return top;
+    }
+
+    private static Map<String, Object> topEntry(String name, long count, long error) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("name", name);
+        entry.put("count", count);
+        if (error > 0) {
+            entry.put("error", error);
+        }
+        return entry;
+    }
+
+    /**
+     * Histogram of reading times, with their sum, minimum and maximum.
+     */
+    public static final class ReadingTimes {
+        public long count;
+        public long totalDays;
+        public Integer min;
+        public Integer max;
+        // Books by bucket index; buckets without books are left out
+        public TreeMap<Integer, Long> buckets = new TreeMap<>();
+
+        void add(int days) {
+            count++;
+            totalDays += days;
+            min = min == null ? days : Math.min(min, days);
+            max = max == null ? days : Math.max(max, days);
+            buckets.merge(bucket(days), 1L, Long::sum);
+        }
+
+        void merge(ReadingTimes other) {
+            count += other.count;
+            totalDays += other.totalDays;
+            if (other.min != null) {
+                min = min == null ? other.min : Math.min(min, other.min);
+                max = max == null ? other.max : Math.max(max, other.max);
+            }
+            other.buckets.forEach((bucket, books) -> buckets.merge(bucket, books, Long::sum));
+        }
+
+        Map<String, Object> toResponse() {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("count", count);
+            response.put("average", count > 0 ? Math.round(totalDays * 10.0 / count) / 10.0 : null);
+            response.put("min", min);
+            response.put("max", max);
+            for (double percentile : PERCENTILES) {
+                response.put(percentile == 0.5 ? "median" : "p" + Math.round(percentile * 100), percentile(percentile));
+            }
+            return response;
+        }
+
+        /**
+         * The reading time at the percentile, interpolated linearly within its bucket, whose bounds are narrowed
+         * to the shortest and longest reading times.
+         */
+        Integer percentile(double percentile) {
+            if (count == 0) {
+                return null;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+                if (seen + bucket.getValue() >= rank) {
+                    int index = bucket.getKey();
+                    int lower = Math.max(index > 0 ? BUCKET_BOUNDS[index - 1] + 1 : Integer.MIN_VALUE, min);
+                    int upper = Math.min(index < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[index] : Integer.MAX_VALUE, max);
+                    return (int) Math.round(lower + (upper - lower) * (double) (rank - seen) / bucket.getValue());
+                }
+                seen += bucket.getValue();
+            }
+            return max;
+        }
+
+        private static int bucket(int days) {
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                if (days <= BUCKET_BOUNDS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_BOUNDS.length;
+        }
+    }
+
+    public static final class YearStats {
+        public long count;
+        public ReadingTimes readingTimes = new ReadingTimes();
+        // By month of the finish date, January first
+        public long[] months = new long[12];
+        public TreeMap<String, Long> languages = new TreeMap<>();
+        public TreeMap<String, Long> formats = new TreeMap<>();
+        public TopCounts authors = new TopCounts(TOP_AUTHORS_OF_YEAR);
+        // Bit per day of the year, January 1st first, set where a book was finished
+        public long[] days = new long[6];
+        // Books finished on the days that saw more than one
+        public TreeMap<Integer, Long> busyDays = new TreeMap<>();
+
+        void finished(int day) {
+            if ((days[day >> 6] & 1L << day) != 0) {
+                busyDays.merge(day, 2L, (books, second) -> books + 1);
+            }
+            days[day >> 6] |= 1L << day;
+        }
+
+        long booksOn(int day) {
+            return (days[day >> 6] & 1L << day) != 0 ? busyDays.getOrDefault(day, 1L) : 0;
+        }
+
+        void merge(YearStats other) {
+            count += other.count;
+            readingTimes.merge(other.readingTimes);
+            for (int month = 0; month < months.length; month++) {
+                months[month] += other.months[month];
+            }
+            other.languages.forEach((language, books) -> languages.merge(language, books, Long::sum));
+            other.formats.forEach((format, books) -> formats.merge(format, books, Long::sum));
+            authors.merge(other.authors);
+            BitSet.valueOf(other.days).stream().forEach(day -> {
+                long books = booksOn(day) + other.booksOn(day);
+                if (books > 1) {
+                    busyDays.put(day, books);
+                }
+            });
+            for (int word = 0; word < days.length; word++) {
+                days[word] |= other.days[word];
+            }
+        }
+    }
+
+    /**
+     * Counts of the most frequent names, after the Space-Saving algorithm: up to {@code capacity} names are
+     * counted exactly, and a new name beyond that takes the place of the least counted one, inheriting its count
+     * as the possible overcount in {@code errors}. A name read more often than one book in {@code capacity} is
+     * never dropped, and no count is ever too low. Two summaries merge by adding their counts, a name missing
+     * from a full summary counting as that summary's smallest count.
+     */
+    public static final class TopCounts {
+        public int capacity;
+        public TreeMap<String, Long> counts = new TreeMap<>();
+        // Only names whose count may be too high
+        public TreeMap<String, Long> errors = new TreeMap<>();
+
+        public TopCounts() {
+        }
+
+        TopCounts(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(String name) {
+            Long count = counts.get(name);
+            if (count != null) {
+                counts.put(name, count + 1);
+            } else if (counts.size() < capacity) {
+                counts.put(name, 1L);
+            } else {
+                Map.Entry<String, Long> least = leastCounted();
+                String evicted = least.getKey();
+                long floor = least.getValue();
+                counts.remove(evicted);
+                errors.remove(evicted);
+                counts.put(name, floor + 1);
+                errors.put(name, floor);
+            }
+        }
+
+        void merge(TopCounts other) {
+            long missing = floor();
+            long otherMissing = other.floor();
+            Map<String, Long> mergedCounts = new TreeMap<>();
+            Map<String, Long> mergedErrors = new TreeMap<>();
+            for (String name : counts.keySet()) {
+                boolean counted = other.counts.containsKey(name);
+                mergedCounts.put(name, counts.get(name) + (counted ? other.counts.get(name) : otherMissing));
+                mergedErrors.put(name, errors.getOrDefault(name, 0L)
+                        + (counted ? other.errors.getOrDefault(name, 0L) : otherMissing));
+            }
+            for (String name : other.counts.keySet()) {
+                if (!counts.containsKey(name)) {
+                    mergedCounts.put(name, other.counts.get(name) + missing);
+                    mergedErrors.put(name, other.errors.getOrDefault(name, 0L) + missing);
+                }
+            }
+            counts.clear();
+            errors.clear();
+            mergedCounts.entrySet().stream()
+                    .sorted(BY_COUNT)
+                    .limit(capacity)
+                    .forEach(entry -> {
+                        counts.put(entry.getKey(), entry.getValue());
+                        if (mergedErrors.get(entry.getKey()) > 0) {
+                            errors.put(entry.getKey(), mergedErrors.get(entry.getKey()));
+                        }
+                    });
+        }
+
+        List<Map<String, Object>> top(int n) {
+            List<Map<String, Object>> top = new ArrayList<>();
+            counts.entrySet().stream()
+                    .sorted(BY_COUNT)
+                    .limit(n)
+                    .forEach(entry -> top.add(topEntry(entry.getKey(), entry.getValue(), errors.getOrDefault(entry.getKey(), 0L))));
+            return top;
+        }
+
+        // The count a name missing from the summary may have had: 0 until it is full
+        private long floor() {
+            return counts.size() < capacity ? 0 : leastCounted().getValue();
+        }
+
+        private Map.Entry<String, Long> leastCounted() {
+            return counts.entrySet().stream()
+                    .min(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                    .orElseThrow();
+        }
+    }
+
+    /**
+     * The book behind the longest or the shortest reading time.
+     */
+    public static final class Read {
+        public Integer id;
+        public String title;
+        public String author;
+        public Integer readYear;
+        public int readingTimeInDays;
+
+        public Read() {
+        }
+
+        Read(Book book) {
+            this.id = book.getId();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.readYear = book.getReadYear();
+            this.readingTimeInDays = book.getReadingTimeInDays();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ReadingStatsTest {
+
+    @Test
+    void followsAStreakOverNewYear() {
+        ReadingStats stats = stats(
+                "2023-06-01", "2023-06-02",
+                "2023-12-29", "2023-12-30", "2023-12-31", "2024-01-01", "2024-01-02",
+                "2024-06-01", "2024-06-02", "2024-06-03");
+
+        Map<String, Object> calendar2023 = stats.toCalendarResponse(2023);
+        Map<String, Object> calendar2024 = stats.toCalendarResponse(2024);
+
+        assertEquals(run(5, "2023-12-29", "2024-01-02"), calendar2023.get("longestStreak"));
+        assertEquals(run(5, "2023-12-29", "2024-01-02"), calendar2024.get("longestStreak"));
+        // Each year still lists only its own days
+        assertEquals(List.of("2023-06-01", "2023-06-02", "2023-12-29", "2023-12-30", "2023-12-31"),
+                List.copyOf(((Map<?, ?>) calendar2023.get("days")).keySet()));
+        assertEquals(5, calendar2023.get("finishDays"));
+        assertEquals(run(150, "2024-01-03", "2024-05-31"), calendar2024.get("longestBreak"));
+    }
+
+    @Test
+    void followsABreakOverNewYear() {
+        ReadingStats stats = stats("2023-11-30", "2024-01-31", "2024-02-01");
+
+        assertEquals(run(61, "2023-12-01", "2024-01-30"), stats.toCalendarResponse(2024).get("longestBreak"));
+        assertEquals(run(61, "2023-12-01", "2024-01-30"), stats.toCalendarResponse(2023).get("longestBreak"));
+        assertEquals(run(2, "2024-01-31", "2024-02-01"), stats.toCalendarResponse(2024).get("longestStreak"));
+    }
+
+    @Test
+    void answersAnEmptyYear() {
+        Map<String, Object> calendar = stats("2021-05-01", "2021-05-02").toCalendarResponse(2019);
+
+        assertEquals(2019, calendar.get("year"));
+        assertEquals(0L, calendar.get("count"));
+        assertEquals(0, calendar.get("finishDays"));
+        assertEquals(Map.of(), calendar.get("days"));
+        assertNull(calendar.get("longestStreak"));
+        assertNull(calendar.get("longestBreak"));
+    }
+
+    @Test
+    void countsTheLeapDay() {
+        Map<String, Object> calendar2024 = stats("2024-02-28", "2024-02-29", "2024-02-29", "2024-03-01", "2024-12-31")
+                .toCalendarResponse(2024);
+        assertEquals(run(3, "2024-02-28", "2024-03-01"), calendar2024.get("longestStreak"));
+        assertEquals(run(304, "2024-03-02", "2024-12-30"), calendar2024.get("longestBreak"));
+        Map<?, ?> days = (Map<?, ?>) calendar2024.get("days");
+        assertEquals(2L, days.get("2024-02-29"));
+        assertEquals(1L, days.get("2024-12-31"));
+        assertEquals(5L, calendar2024.get("count"));
+
+        // Without a leap day, February 28th and March 1st follow each other
+        assertEquals(run(2, "2023-02-28", "2023-03-01"),
+                stats("2023-02-28", "2023-03-01").toCalendarResponse(2023).get("longestStreak"));
+    }
+
+    private static ReadingStats stats(String... finishDates) {
+        List<Book> books = new ArrayList<>();
+        for (String finishDate : finishDates) {
+            Book book = new Book();
+            book.setId(books.size() + 1);
+            book.setTitle("Book " + book.getId());
+            book.setAuthor("Author");
+            book.setFinishDate(finishDate);
+            book.setReadYear(Integer.parseInt(finishDate.substring(0, 4)));
+            books.add(book);
+        }
+        return ReadingStats.of(books);
+    }
+
+    private static Map<String, Object> run(int days, String from, String to) {
+        return Map.of("days", days, "from", from, "to", to);
+    }
+}
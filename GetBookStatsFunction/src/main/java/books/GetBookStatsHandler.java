@@ -0,0 +1,97 @@
+package books;
+
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * Reading statistics of the caller's library, from {@link LibraryStats}: read from the statistics item with the
+ * books created since, or computed from the books when missing.
+ */
+@Slf4j
+public class GetBookStatsHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private final LibraryStats libraryStats;
+    private final ObjectMapper objectMapper;
+
+    public GetBookStatsHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetBookStatsHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetBookStatsHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.libraryStats = new LibraryStats(ddbClient, archive, System.getenv("TABLE_NAME"));
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("GetBookStats function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("GetBookStats", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+
+            ReadingStats stats = libraryStats.get(userId, "GetBookStats", metrics);
+
+            SerializationEvent serializationEvent = SerializationEvent.start("GetBookStats");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(stats.toResponse()));
+            serializationEvent.end(jsonResponse.length());
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (Exception e) {
+            log.error("Error computing reading statistics", e);
+
+            String errorResponse = "{\"error\": \"Failed to compute reading statistics\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+}
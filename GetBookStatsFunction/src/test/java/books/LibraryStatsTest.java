@@ -0,0 +1,184 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+class LibraryStatsTest {
+
+    private static final String USER = "reader";
+    private static final String TABLE = "Books";
+
+    private final Map<Integer, Map<String, AttributeValue>> table = new TreeMap<>();
+    private final List<PutItemRequest> puts = new ArrayList<>();
+    private int queries;
+
+    @BeforeAll
+    static void withoutXRay() {
+        // There is no X-Ray segment outside Lambda; make the subsegments no-ops
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @Test
+    void addsTheBooksCreatedSinceTheStatisticsWereSaved() throws Exception {
+        books(1, 4);
+        counter(4, 2);
+        stats(2, 2, books(1, 2));
+
+        ReadingStats stats = get();
+
+        assertEquals(4, stats.count);
+        assertEquals(0, queries);
+        assertSaved(4, 2);
+    }
+
+    @Test
+    void computesStaleStatisticsAgain() throws Exception {
+        books(1, 3);
+        counter(3, 5);
+        stats(4, 3, books(1, 3));
+
+        ReadingStats stats = get();
+
+        assertEquals(3, stats.count);
+        assertEquals(1, queries);
+        assertSaved(3, 5);
+    }
+
+    @Test
+    void computesTheStatisticsAgainWhenABookCreatedSinceIsMissing() throws Exception {
+        // Book 3 was taken by an import that has not written it yet
+        List<Book> saved = books(1, 2);
+        books(4, 4);
+        counter(4, 0);
+        stats(0, 2, saved);
+
+        ReadingStats stats = get();
+
+        assertEquals(3, stats.count);
+        assertEquals(1, queries);
+        // The import moves the counter's statsVersion on once it is done, making these stale
+        assertSaved(4, 0);
+    }
+
+    @Test
+    void leavesMissingStatisticsToTheNextReader() throws Exception {
+        books(1, 2);
+        counter(2, 0);
+
+        assertFalse(new LibraryStats(client(), new BookArchive(null, null, 0), TABLE)
+                .catchUp(USER, RequestMetrics.start("IndexNewBooks", null)));
+
+        assertEquals(0, queries);
+        assertTrue(puts.isEmpty());
+    }
+
+    private ReadingStats get() throws Exception {
+        return new LibraryStats(client(), new BookArchive(null, null, 0), TABLE)
+                .get(USER, "GetBookStats", RequestMetrics.start("GetBookStats", null));
+    }
+
+    private void assertSaved(int countedTo, long statsVersion) {
+        assertEquals(1, puts.size());
+        Map<String, AttributeValue> item = puts.get(0).item();
+        assertEquals(String.valueOf(Libraries.STATS_ID), item.get("id").n());
+        assertEquals(String.valueOf(countedTo), item.get(ReadingStats.COUNTED_TO_ATTRIBUTE).n());
+        assertEquals(String.valueOf(statsVersion), item.get(ReadingStats.VERSION_ATTRIBUTE).n());
+    }
+
+    private List<Book> books(int fromId, int toId) {
+        List<Book> books = new ArrayList<>();
+        for (int id = fromId; id <= toId; id++) {
+            Book book = new Book();
+            book.setUserId(USER);
+            book.setId(id);
+            book.setTitle("Book " + id);
+            book.setAuthor("Author " + id % 2);
+            book.setFinishDate(String.format("2020-01-%02d", id));
+            book.setReadYear(2020);
+            book.setReadingTimeInDays(id == 1 ? 0 : 1);
+            table.put(id, TableSchema.fromBean(Book.class).itemToMap(book, true));
+            books.add(book);
+        }
+        return books;
+    }
+
+    private void counter(int lastId, long statsVersion) {
+        Map<String, AttributeValue> counter = new HashMap<>(Libraries.itemKey(USER, Libraries.COUNTER_ID));
+        counter.put("lastId", AttributeValue.fromN(String.valueOf(lastId)));
+        counter.put(ReadingStats.VERSION_ATTRIBUTE, AttributeValue.fromN(String.valueOf(statsVersion)));
+        table.put(Libraries.COUNTER_ID, counter);
+    }
+
+    private void stats(long statsVersion, int countedTo, List<Book> books) throws Exception {
+        Map<String, AttributeValue> stats = new HashMap<>(Libraries.itemKey(USER, Libraries.STATS_ID));
+        stats.put(ReadingStats.ATTRIBUTE, AttributeValue.fromS(ReadingStats.of(books).toJson()));
+        stats.put(ReadingStats.VERSION_ATTRIBUTE, AttributeValue.fromN(String.valueOf(statsVersion)));
+        stats.put(ReadingStats.COUNTED_TO_ATTRIBUTE, AttributeValue.fromN(String.valueOf(countedTo)));
+        table.put(Libraries.STATS_ID, stats);
+    }
+
+    private DynamoDbClient client() {
+        return new DynamoDbClient() {
+            @Override
+            public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+                Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+                for (Map.Entry<String, KeysAndAttributes> entry : request.requestItems().entrySet()) {
+                    responses.put(entry.getKey(), entry.getValue().keys().stream()
+                            .map(key -> table.get(Integer.parseInt(key.get("id").n())))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList()));
+                }
+                return BatchGetItemResponse.builder().responses(responses).build();
+            }
+
+            @Override
+            public QueryResponse query(QueryRequest request) {
+                queries++;
+                return QueryResponse.builder()
+                        .items(table.entrySet().stream()
+                                .filter(item -> item.getKey() > 0)
+                                .map(Map.Entry::getValue)
+                                .collect(Collectors.toList()))
+                        .build();
+            }
+
+            @Override
+            public PutItemResponse putItem(PutItemRequest request) {
+                puts.add(request);
+                return PutItemResponse.builder().build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,164 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ReadingStatsTest {
+
+    private static final int CAPACITY = 20;
+    private static final int NAMES = 200;
+    private static final int READS = 5000;
+
+    @Test
+    void keepsTheSpaceSavingErrorBound() {
+        // Authors drawn with Zipf-like frequencies, so a few are read often and most rarely
+        Random random = new Random(42);
+        double[] weights = new double[NAMES];
+        double total = 0;
+        for (int i = 0; i < NAMES; i++) {
+            total += 1.0 / (i + 1);
+            weights[i] = total;
+        }
+        List<String> reads = new ArrayList<>();
+        for (int i = 0; i < READS; i++) {
+            double draw = random.nextDouble() * total;
+            int name = 0;
+            while (weights[name] < draw) {
+                name++;
+            }
+            reads.add("author-" + name);
+        }
+
+        ReadingStats.TopCounts all = new ReadingStats.TopCounts(CAPACITY);
+        ReadingStats.TopCounts first = new ReadingStats.TopCounts(CAPACITY);
+        ReadingStats.TopCounts second = new ReadingStats.TopCounts(CAPACITY);
+        for (int i = 0; i < reads.size(); i++) {
+            all.add(reads.get(i));
+            (i < reads.size() / 2 ? first : second).add(reads.get(i));
+        }
+        first.merge(second);
+
+        Map<String, Long> exact = new HashMap<>();
+        reads.forEach(name -> exact.merge(name, 1L, Long::sum));
+        assertWithinBound(exact, all);
+        assertWithinBound(exact, first);
+    }
+
+    @Test
+    void readsBackWhatItStored() throws IOException {
+        ReadingStats stats = ReadingStats.of(List.of(
+                book(1, "2023-03-01", 0, "Ursula K. Le Guin", "en", "paperback"),
+                book(2, "2023-12-31", 12, "Italo Calvino", "it", "hardcover"),
+                book(3, "2024-02-29", 60, "Ursula K. Le Guin", "en", "ebook"),
+                book(4, "2024-12-31", 306, "Italo Calvino", "it", "paperback"),
+                book(5, "2024-12-31", 1, "Jorge Luis Borges", "es", "paperback")));
+
+        String json = stats.toJson();
+        ReadingStats read = ReadingStats.fromJson(json);
+
+        assertNotNull(read);
+        assertEquals(ReadingStats.SCHEMA, read.schema);
+        assertEquals(json, read.toJson());
+        // The responses hold arrays and beans, so they are compared as the handlers render them
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals(objectMapper.writeValueAsString(stats.toResponse()), objectMapper.writeValueAsString(read.toResponse()));
+        assertEquals(objectMapper.writeValueAsString(stats.toTopResponse(10, null)),
+                objectMapper.writeValueAsString(read.toTopResponse(10, null)));
+        assertEquals(objectMapper.writeValueAsString(stats.toCalendarResponse(2024)),
+                objectMapper.writeValueAsString(read.toCalendarResponse(2024)));
+    }
+
+    @Test
+    void dropsStatisticsOfAnEarlierSchema() throws IOException {
+        String json = ReadingStats.of(List.of(book(1, "2024-01-01", 0, "Italo Calvino", "it", "paperback"))).toJson()
+                .replace("\"schema\":" + ReadingStats.SCHEMA, "\"schema\":" + (ReadingStats.SCHEMA - 1));
+
+        assertNull(ReadingStats.fromJson(json));
+    }
+
+    @Test
+    void keepsTheFinishDaysAcrossTheYearBoundaryAndOnLeapDays() throws IOException {
+        List<Book> books = List.of(
+                book(1, "2023-03-01", 0, "Italo Calvino", "it", "paperback"),
+                book(2, "2023-12-31", 305, "Italo Calvino", "it", "paperback"),
+                book(3, "2024-01-01", 1, "Italo Calvino", "it", "paperback"),
+                book(4, "2024-02-29", 59, "Italo Calvino", "it", "paperback"),
+                book(5, "2024-12-31", 306, "Italo Calvino", "it", "paperback"),
+                book(6, "2024-12-31", 2, "Italo Calvino", "it", "paperback"));
+        ReadingStats stats = ReadingStats.fromJson(ReadingStats.of(books).toJson());
+
+        ReadingStats.YearStats year2023 = stats.years.get(2023);
+        // March 1st is day 59 in 2023 and day 60 in 2024
+        assertEquals(1, year2023.booksOn(59));
+        assertEquals(1, year2023.booksOn(364));
+        assertEquals(0, year2023.booksOn(365));
+        assertEquals(2, cardinality(year2023.days));
+
+        ReadingStats.YearStats year2024 = stats.years.get(2024);
+        assertEquals(1, year2024.booksOn(0));
+        assertEquals(1, year2024.booksOn(59));
+        assertEquals(0, year2024.booksOn(60));
+        // December 31st of a leap year is day 365, bit 45 of the last word
+        assertEquals(2, year2024.booksOn(365));
+        assertEquals(1L << 45, year2024.days[5]);
+        assertEquals(3, cardinality(year2024.days));
+
+        // The same days when each half of the library was counted apart
+        ReadingStats merged = ReadingStats.of(books.subList(0, 5)).merge(ReadingStats.of(books.subList(5, 6)));
+        assertEquals(ReadingStats.of(books).toJson(), merged.toJson());
+    }
+
+    // The count of a tracked name is never below its real count, nor more than its error above it, and the error
+    // is at most one read in CAPACITY; a name read more often than that is tracked
+    private static void assertWithinBound(Map<String, Long> exact, ReadingStats.TopCounts top) {
+        long bound = READS / CAPACITY;
+        assertEquals(CAPACITY, top.counts.size());
+        top.counts.forEach((name, count) -> {
+            long error = top.errors.getOrDefault(name, 0L);
+            long real = exact.getOrDefault(name, 0L);
+            assertTrue(count >= real, name);
+            assertTrue(count - error <= real, name);
+            assertTrue(error <= bound, name);
+        });
+        exact.forEach((name, real) -> {
+            if (real > bound) {
+                assertTrue(top.counts.containsKey(name), name);
+            }
+        });
+    }
+
+    private static int cardinality(long[] days) {
+        int bits = 0;
+        for (long word : days) {
+            bits += Long.bitCount(word);
+        }
+        return bits;
+    }
+
+    private static Book book(int id, String finishDate, int readingTimeInDays, String author, String language,
+                             String format) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle("Book " + id);
+        book.setAuthor(author);
+        book.setLanguage(language);
+        book.setFormat(format);
+        book.setFinishDate(finishDate);
+        book.setReadYear(Integer.parseInt(finishDate.substring(0, 4)));
+        book.setReadingTimeInDays(readingTimeInDays);
+        return book;
+    }
+}
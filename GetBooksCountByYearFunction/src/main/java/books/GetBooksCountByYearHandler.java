@@ -7,13 +7,19 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 @Slf4j
 public class GetBooksCountByYearHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
@@ -21,27 +27,43 @@ public class GetBooksCountByYearHandler implements RequestHandler<APIGatewayProx
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<Book> bookTable;
     private final ObjectMapper objectMapper;
+    private final BookArchive archive;
     private final String tableName;
 
     public GetBooksCountByYearHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetBooksCountByYearHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetBooksCountByYearHandler(DynamoDbClient ddbClient, BookArchive archive) {
         this.tableName = System.getenv("TABLE_NAME");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
         this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
         this.objectMapper = new ObjectMapper();
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("GetBooksCountByYear function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
         
         // Handle OPTIONS request for CORS preflight
         if ("OPTIONS".equals(input.getHttpMethod())) {
@@ -51,57 +73,78 @@ public class GetBooksCountByYearHandler implements RequestHandler<APIGatewayProx
                     .withBody("");
         }
 
+        RequestMetrics metrics = RequestMetrics.start("GetBooksCountByYear", context);
         try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
             String yearParam = input.getQueryStringParameters() != null ? 
                 input.getQueryStringParameters().get("year") : null;
                 
             if (yearParam == null || yearParam.trim().isEmpty()) {
-                return new APIGatewayProxyResponseEvent()
+                return metrics.finish(new APIGatewayProxyResponseEvent()
                         .withStatusCode(400)
                         .withHeaders(headers)
-                        .withBody("{\"error\": \"Year parameter is required\"}");
+                        .withBody("{\"error\": \"Year parameter is required\"}"));
             }
             
             int year = Integer.parseInt(yearParam);
             log.info("Counting books read in year: {}", year);
             
-            long count = bookTable.scan()
+            BookScanEvent scanEvent = BookScanEvent.start("GetBooksCountByYear");
+            long count = metrics.time("Query", () -> bookTable.query(QueryEnhancedRequest.builder()
+                            .queryConditional(Libraries.books(userId))
+                            .filterExpression(Expression.builder()
+                                    .expression("readYear = :year")
+                                    .putExpressionValue(":year", AttributeValue.fromN(String.valueOf(year)))
+                                    .build())
+                            .attributesToProject("id")
+                            .build())
                     .items()
                     .stream()
-                    .filter(book -> book.getReadYear() == year)
-                    .count();
+                    .count());
+            scanEvent.end(count);
+            metrics.count("ItemCount", count);
             
-            log.info("Found {} books read in year: {}", count, year);
+            long archived = metrics.time("Archive", () -> archive.index(userId).count(year));
+            log.info("Found {} books read in year {} in database and {} in the archive", count, year, archived);
             
             Map<String, Object> response = new HashMap<>();
             response.put("year", year);
-            response.put("count", count);
+            response.put("count", count + archived);
             
-            String jsonResponse = objectMapper.writeValueAsString(response);
+            SerializationEvent serializationEvent = SerializationEvent.start("GetBooksCountByYear");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(response));
+            serializationEvent.end(jsonResponse.length());
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(jsonResponse);
+                    .withBody(jsonResponse));
                     
         } catch (NumberFormatException e) {
             log.error("Invalid year format", e);
             
             String errorResponse = "{\"error\": \"Invalid year format\", \"message\": \"Year must be a valid integer\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(400)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         } catch (Exception e) {
             log.error("Error counting books by year", e);
             
             String errorResponse = "{\"error\": \"Failed to count books\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
 }
\ No newline at end of file
@@ -1,44 +1,59 @@
 package books;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 
 import lombok.extern.slf4j.Slf4j;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.Select;
 
 @Slf4j
 public class GetBooksCountHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final DynamoDbEnhancedClient enhancedClient;
-    private final DynamoDbTable<Book> bookTable;
+    private final DynamoDbClient dynamoDbClient;
+    private final BookArchive archive;
     private final String tableName;
 
     public GetBooksCountHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetBooksCountHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetBooksCountHandler(DynamoDbClient ddbClient, BookArchive archive) {
         this.tableName = System.getenv("TABLE_NAME");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
-        this.enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(ddbClient)
-                .build();
-        this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
+        this.dynamoDbClient = ddbClient;
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("GetBooksCount function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
         
         // Handle OPTIONS request for CORS preflight
         if ("OPTIONS".equals(input.getHttpMethod())) {
@@ -48,29 +63,57 @@ public class GetBooksCountHandler implements RequestHandler<APIGatewayProxyReque
                     .withBody("");
         }
 
+        RequestMetrics metrics = RequestMetrics.start("GetBooksCount", context);
         try {
-            log.info("Counting books in table: {}", tableName);
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
             
-            long count = bookTable.scan().items().stream().count();
+            log.info("Counting books of user {} in table: {}", userId, tableName);
             
-            log.info("Total books count: {}", count);
+            // Select COUNT returns the number of matching items without the items themselves
+            BookScanEvent scanEvent = BookScanEvent.start("GetBooksCount");
+            long count = metrics.time("Query", () -> {
+                long total = 0;
+                for (QueryResponse page : dynamoDbClient.queryPaginator(QueryRequest.builder()
+                        .tableName(tableName)
+                        .keyConditionExpression("userId = :userId AND id > :counterId")
+                        .expressionAttributeValues(Map.of(
+                                ":userId", AttributeValue.fromS(userId),
+                                ":counterId", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                        .select(Select.COUNT)
+                        .build())) {
+                    total += page.count();
+                }
+                return total;
+            });
+            scanEvent.end(count);
+            metrics.count("ItemCount", count);
             
-            String response = "{\"count\": " + count + "}";
+            // The archive index counts the books of the archived years
+            long archived = metrics.time("Archive", () -> archive.index(userId).count());
+            log.info("Total books count: {} in database and {} in the archive", count, archived);
             
-            return new APIGatewayProxyResponseEvent()
+            String response = "{\"count\": " + (count + archived) + "}";
+            
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(response);
+                    .withBody(response));
                     
         } catch (Exception e) {
             log.error("Error counting books", e);
             
             String errorResponse = "{\"error\": \"Failed to count books\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
 }
\ No newline at end of file
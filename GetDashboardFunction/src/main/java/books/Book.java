@@ -0,0 +1,44 @@
+package books;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.annotations.DynamoDbVersionAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class Book {
+    private String userId;
+    private Integer id;
+    private String title;
+    private String author;
+    private String finishDate;
+    private Integer readingTimeInDays;
+    private Integer readYear;
+    private Integer publicationYear;
+    private String format;
+    private String language;
+    private Long version;
+
+    // Cognito sub of the library's owner; ids are per library
+    @DynamoDbPartitionKey
+    public String getUserId() {
+        return userId;
+    }
+
+    @DynamoDbSortKey
+    public Integer getId() {
+        return id;
+    }
+
+    // Incremented on every write; updates are conditioned on the version the client last read
+    @DynamoDbVersionAttribute
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,270 @@
+package books;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * Everything the dashboard shows, from one query over the caller's library: the number of books, the number
+ * read in each year, the most recently read books and, with {@code year}, the books read in that year.
+ *
+ * The books are aggregated as the query pages arrive, so only the recent books and those of the requested
+ * year are kept in memory. The archived read years are added from the {@link BookArchive}: their counts from its
+ * index, and their books only for a requested archived year, or when the table holds fewer books than asked for.
+ */
+@Slf4j
+public class GetDashboardHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final int DEFAULT_RECENT = 10;
+    private static final int MAX_RECENT = 100;
+
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final DynamoDbTable<Book> bookTable;
+    private final ObjectMapper objectMapper;
+    private final BookArchive archive;
+    private final String tableName;
+
+    public GetDashboardHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetDashboardHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetDashboardHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.enhancedClient = DynamoDbEnhancedClient.builder()
+                .dynamoDbClient(ddbClient)
+                .build();
+        this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.findAndRegisterModules();
+        this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("GetDashboard function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("GetDashboard", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+
+            Map<String, String> params = input.getQueryStringParameters() != null
+                    ? input.getQueryStringParameters()
+                    : Map.of();
+            int recent = params.get("recent") != null
+                    ? Math.max(1, Math.min(MAX_RECENT, Integer.parseInt(params.get("recent").trim())))
+                    : DEFAULT_RECENT;
+            Integer year = params.get("year") != null && !params.get("year").trim().isEmpty()
+                    ? Integer.parseInt(params.get("year").trim())
+                    : null;
+
+            BookScanEvent scanEvent = BookScanEvent.start("GetDashboard");
+            Dashboard dashboard = metrics.time("Query", () -> aggregate(bookTable.query(Libraries.books(userId)).items().iterator(), recent, year));
+            scanEvent.end(dashboard.count);
+            metrics.count("ItemCount", dashboard.count);
+            metrics.time("Archive", () -> {
+                addArchive(dashboard, userId);
+                return null;
+            });
+
+            Map<String, Object> response = metrics.time("Mapping", () -> dashboard.toResponse(this::convertToBookResponse));
+            SerializationEvent serializationEvent = SerializationEvent.start("GetDashboard");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(response));
+            serializationEvent.end(jsonResponse.length());
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (NumberFormatException e) {
+            log.error("Invalid dashboard parameter", e);
+
+            String errorResponse = "{\"error\": \"Invalid parameter\", \"message\": \"year and recent must be valid integers\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(400)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        } catch (Exception e) {
+            log.error("Error building the dashboard", e);
+
+            String errorResponse = "{\"error\": \"Failed to build the dashboard\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+
+    /**
+     * Folds the books, in id order, into the dashboard figures. Ids follow the reading order, so the last
+     * books of the library are the most recently read ones.
+     */
+    static Dashboard aggregate(Iterator<Book> books, int recent, Integer year) {
+        Dashboard dashboard = new Dashboard(recent, year);
+        while (books.hasNext()) {
+            Book book = books.next();
+            dashboard.count++;
+            if (book.getReadYear() != null) {
+                dashboard.countsByYear.merge(book.getReadYear(), 1L, Long::sum);
+                if (book.getReadYear().equals(year)) {
+                    dashboard.booksOfYear.add(book);
+                }
+            }
+            dashboard.recentBooks.addLast(book);
+            if (dashboard.recentBooks.size() > recent) {
+                dashboard.recentBooks.removeFirst();
+            }
+        }
+        return dashboard;
+    }
+
+    /**
+     * Adds the archived read years to the figures. The archive holds the oldest years, so its books come before
+     * those of the table; a book still in the table wins over its archived copy.
+     */
+    private void addArchive(Dashboard dashboard, String userId) throws IOException {
+        BookArchive.Index index = archive.index(userId);
+        if (index.segments.isEmpty()) {
+            return;
+        }
+        dashboard.count += index.count();
+        index.countsByYear().forEach((readYear, count) -> dashboard.countsByYear.merge(readYear, count, Long::sum));
+
+        if (dashboard.year != null && index.count(dashboard.year) > 0) {
+            Set<Integer> hot = dashboard.booksOfYear.stream().map(Book::getId).collect(Collectors.toSet());
+            List<Book> archived = new ArrayList<>();
+            for (String json : archive.books(userId, dashboard.year).values()) {
+                Book book = objectMapper.readValue(json, Book.class);
+                if (!hot.contains(book.getId())) {
+                    archived.add(book);
+                }
+            }
+            dashboard.booksOfYear.addAll(0, archived);
+        }
+
+        if (dashboard.recentBooks.size() < dashboard.recent) {
+            Set<Integer> hot = dashboard.recentBooks.stream().map(Book::getId).collect(Collectors.toSet());
+            List<String> archived = new ArrayList<>(archive.books(userId).values());
+            for (int i = archived.size() - 1; i >= 0 && dashboard.recentBooks.size() < dashboard.recent; i--) {
+                Book book = objectMapper.readValue(archived.get(i), Book.class);
+                if (!hot.contains(book.getId())) {
+                    dashboard.recentBooks.addFirst(book);
+                }
+            }
+        }
+    }
+
+    BookResponse convertToBookResponse(Book book) {
+        BookResponse response = new BookResponse();
+        response.setId(book.getId());
+        response.setTitle(book.getTitle());
+        response.setAuthor(book.getAuthor());
+        response.setPublicationYear(orZero(book.getPublicationYear()));
+        response.setLanguage(book.getLanguage());
+        response.setFormat(book.getFormat());
+        response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
+        response.setReadYear(orZero(book.getReadYear()));
+        response.setReadingTimeInDays(orZero(book.getReadingTimeInDays()));
+        response.setVersion(book.getVersion());
+        return response;
+    }
+
+    // Imported books may lack the optional numbers
+    private static int orZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    static final class Dashboard {
+        private final int recent;
+        private final Integer year;
+        private long count;
+        private final Map<Integer, Long> countsByYear = new TreeMap<>();
+        private final Deque<Book> recentBooks = new ArrayDeque<>();
+        private final List<Book> booksOfYear = new ArrayList<>();
+
+        Dashboard(int recent, Integer year) {
+            this.recent = recent;
+            this.year = year;
+        }
+
+        Map<String, Object> toResponse(java.util.function.Function<Book, BookResponse> converter) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("count", count);
+            response.put("countsByYear", countsByYear);
+            // Newest first
+            List<BookResponse> latest = new ArrayList<>(recentBooks.size());
+            recentBooks.descendingIterator().forEachRemaining(book -> latest.add(converter.apply(book)));
+            response.put("recentBooks", latest);
+            if (year != null) {
+                Map<String, Object> readInYear = new LinkedHashMap<>();
+                readInYear.put("year", year);
+                readInYear.put("count", countsByYear.getOrDefault(year, 0L));
+                List<BookResponse> books = new ArrayList<>(booksOfYear.size());
+                booksOfYear.forEach(book -> books.add(converter.apply(book)));
+                readInYear.put("books", books);
+                response.put("readInYear", readInYear);
+            }
+            return response;
+        }
+    }
+}
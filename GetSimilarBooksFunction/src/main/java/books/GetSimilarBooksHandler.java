@@ -0,0 +1,206 @@
+package books;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+
+/**
+ * The books of the caller's library most like a given book, most similar first, each with its score. The
+ * neighbours are read from the book's {@link BookSimilarity} list, which IndexSimilarBooksHandler keeps up to
+ * date as books are created, and the neighbouring books are fetched in one batch. A book without a list yet is
+ * compared with the whole library once, and the list is stored.
+ */
+@Slf4j
+public class GetSimilarBooksHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final TableSchema<Book> BOOK_SCHEMA = TableSchema.fromBean(Book.class);
+
+    private final DynamoDbClient dynamoDbClient;
+    private final ObjectMapper objectMapper;
+    private final BookJsonWriter bookJsonWriter;
+    private final String tableName;
+
+    public GetSimilarBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetSimilarBooksHandler(DynamoDbClient ddbClient) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.dynamoDbClient = ddbClient;
+        this.objectMapper = new ObjectMapper();
+        this.bookJsonWriter = new BookJsonWriter(objectMapper.getFactory());
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("GetSimilarBooks function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("GetSimilarBooks", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+
+            String bookId = input.getPathParameters().get("id");
+            int id = Integer.parseInt(bookId);
+            // Id 0 is the library's counter, not a book
+            Map<String, AttributeValue> item = id > Libraries.COUNTER_ID
+                    ? metrics.time("Query", () -> dynamoDbClient.getItem(GetItemRequest.builder()
+                            .tableName(tableName)
+                            .key(Libraries.itemKey(userId, id))
+                            .projectionExpression("id, #similar")
+                            .expressionAttributeNames(Map.of("#similar", BookSimilarity.ATTRIBUTE))
+                            .build()).item())
+                    : null;
+            if (item == null || item.isEmpty()) {
+                return metrics.finish(notFound(bookId, headers));
+            }
+
+            List<BookSimilarity.Neighbour> neighbours = item.get(BookSimilarity.ATTRIBUTE) != null
+                    ? metrics.time("Mapping", () -> BookSimilarity.fromJson(item.get(BookSimilarity.ATTRIBUTE).s()))
+                    : compute(userId, id, metrics);
+
+            Map<Integer, String> books = metrics.time("Query", () -> renderedBooks(userId, neighbours));
+            metrics.count("ItemCount", books.size());
+
+            SerializationEvent serializationEvent = SerializationEvent.start("GetSimilarBooks");
+            String jsonResponse = metrics.time("Serialization", () -> write(neighbours, books));
+            serializationEvent.end(jsonResponse.length());
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (NumberFormatException e) {
+            log.error("Invalid book id", e);
+            return metrics.finish(notFound(input.getPathParameters().get("id"), headers));
+        } catch (Exception e) {
+            log.error("Error finding similar books", e);
+
+            String errorResponse = "{\"error\": \"Failed to find similar books\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+
+    private static APIGatewayProxyResponseEvent notFound(String bookId, Map<String, String> headers) {
+        log.info("Book not found with ID: {}", bookId);
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(404)
+                .withHeaders(headers)
+                .withBody("{\"error\": \"Book not found\"}");
+    }
+
+    /**
+     * Compares the book with the whole library, for books created before the neighbours were kept or imported,
+     * and stores the result so that this happens once per book.
+     */
+    private List<BookSimilarity.Neighbour> compute(String userId, int id, RequestMetrics metrics) throws Exception {
+        BookScanEvent scanEvent = BookScanEvent.start("GetSimilarBooks");
+        BookSimilarity library = metrics.time("Query", () -> BookSimilarity.load(dynamoDbClient, tableName, userId));
+        scanEvent.end(library.ids().size());
+        if (!library.contains(id)) {
+            // Archived or deleted since it was read
+            return List.of();
+        }
+        List<BookSimilarity.Neighbour> nearest = metrics.time("Mapping", () -> library.nearest(id));
+        BookSimilarity.save(dynamoDbClient, tableName, userId, id, nearest);
+        log.info("Computed the neighbours of book {} of user {} from {} books", id, userId, library.ids().size());
+        return nearest;
+    }
+
+    /**
+     * The neighbouring books as the API returns them. Books archived or gone since the list was stored are
+     * missing from the result.
+     */
+    private Map<Integer, String> renderedBooks(String userId, List<BookSimilarity.Neighbour> neighbours) throws Exception {
+        Map<Integer, String> books = new HashMap<>();
+        if (neighbours.isEmpty()) {
+            return books;
+        }
+        List<Map<String, AttributeValue>> keys = neighbours.stream()
+                .map(neighbour -> Libraries.itemKey(userId, neighbour.id))
+                .collect(Collectors.toList());
+        List<Map<String, AttributeValue>> items = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                        .keys(keys)
+                        .build()))
+                .build()).responses().getOrDefault(tableName, List.of());
+        for (Map<String, AttributeValue> item : items) {
+            // Written before books were stored rendered
+            String json = item.get(BookJsonWriter.ATTRIBUTE) != null
+                    ? item.get(BookJsonWriter.ATTRIBUTE).s()
+                    : bookJsonWriter.write(BOOK_SCHEMA.mapToItem(item));
+            books.put(Integer.parseInt(item.get("id").n()), json);
+        }
+        return books;
+    }
+
+    private String write(List<BookSimilarity.Neighbour> neighbours, Map<Integer, String> books) throws Exception {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (BookSimilarity.Neighbour neighbour : neighbours) {
+                String book = books.get(neighbour.id);
+                if (book != null) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("score", neighbour.score);
+                    generator.writeFieldName("book");
+                    generator.writeRawValue(book);
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+        }
+        return out.toString();
+    }
+}
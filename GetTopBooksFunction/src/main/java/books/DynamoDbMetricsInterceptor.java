@@ -0,0 +1,118 @@
+package books;
+
+import java.util.List;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+/**
+ * Asks DynamoDB for the consumed capacity of every call and adds it, with the call time and the
+ * scanned item count, to the {@link RequestMetrics} of the invocation running on the current thread.
+ */
+public class DynamoDbMetricsInterceptor implements ExecutionInterceptor {
+
+    // Attribute names are global to the SDK, so qualify it with the class (and thereby the package)
+    private static final ExecutionAttribute<Long> START_NANOS =
+            new ExecutionAttribute<>(DynamoDbMetricsInterceptor.class.getName() + ".startNanos");
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        SdkRequest request = context.request();
+        ReturnConsumedCapacity total = ReturnConsumedCapacity.TOTAL;
+        if (request instanceof ScanRequest) {
+            return ((ScanRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof QueryRequest) {
+            return ((QueryRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof GetItemRequest) {
+            return ((GetItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof BatchGetItemRequest) {
+            return ((BatchGetItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof PutItemRequest) {
+            return ((PutItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof UpdateItemRequest) {
+            return ((UpdateItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof DeleteItemRequest) {
+            return ((DeleteItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof BatchWriteItemRequest) {
+            return ((BatchWriteItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof TransactWriteItemsRequest) {
+            return ((TransactWriteItemsRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        }
+        return request;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        RequestMetrics metrics = RequestMetrics.current();
+        if (metrics == null) {
+            return;
+        }
+        Long start = executionAttributes.getAttribute(START_NANOS);
+        if (start != null) {
+            metrics.addTime("DynamoDb", System.nanoTime() - start);
+        }
+        metrics.count("DynamoDbCalls", 1);
+
+        SdkResponse response = context.response();
+        if (response instanceof ScanResponse) {
+            ScanResponse scan = (ScanResponse) response;
+            metrics.count("ConsumedReadCapacity", units(scan.consumedCapacity()));
+            metrics.count("ScannedCount", scan.scannedCount() != null ? scan.scannedCount() : 0);
+        } else if (response instanceof QueryResponse) {
+            QueryResponse query = (QueryResponse) response;
+            metrics.count("ConsumedReadCapacity", units(query.consumedCapacity()));
+            metrics.count("ScannedCount", query.scannedCount() != null ? query.scannedCount() : 0);
+        } else if (response instanceof GetItemResponse) {
+            metrics.count("ConsumedReadCapacity", units(((GetItemResponse) response).consumedCapacity()));
+        } else if (response instanceof BatchGetItemResponse) {
+            metrics.count("ConsumedReadCapacity", units(((BatchGetItemResponse) response).consumedCapacity()));
+        } else if (response instanceof PutItemResponse) {
+            metrics.count("ConsumedWriteCapacity", units(((PutItemResponse) response).consumedCapacity()));
+        } else if (response instanceof UpdateItemResponse) {
+            metrics.count("ConsumedWriteCapacity", units(((UpdateItemResponse) response).consumedCapacity()));
+        } else if (response instanceof DeleteItemResponse) {
+            metrics.count("ConsumedWriteCapacity", units(((DeleteItemResponse) response).consumedCapacity()));
+        } else if (response instanceof BatchWriteItemResponse) {
+            metrics.count("ConsumedWriteCapacity", units(((BatchWriteItemResponse) response).consumedCapacity()));
+        } else if (response instanceof TransactWriteItemsResponse) {
+            metrics.count("ConsumedWriteCapacity", units(((TransactWriteItemsResponse) response).consumedCapacity()));
+        }
+    }
+
+    private static double units(ConsumedCapacity capacity) {
+        return capacity != null && capacity.capacityUnits() != null ? capacity.capacityUnits() : 0;
+    }
+
+    private static double units(List<ConsumedCapacity> capacities) {
+        return capacities.stream().mapToDouble(DynamoDbMetricsInterceptor::units).sum();
+    }
+}
@@ -0,0 +1,124 @@
+package books;
+
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * The authors, languages and formats the caller reads most, for the whole library and for each read year. They
+ * are part of the {@link ReadingStats} that every created book updates, so no request reads the library unless
+ * the statistics were dropped.
+ *
+ * {@code n} sets the number of entries of each list (default 10, at most 20); with {@code year}, only that
+ * read year is returned. An author count that may be too high, because the library has more authors than are
+ * tracked, comes with its possible overcount as {@code error}.
+ */
+@Slf4j
+public class GetTopBooksHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final int DEFAULT_N = 10;
+    private static final int MAX_N = 20;
+
+    private final LibraryStats libraryStats;
+    private final ObjectMapper objectMapper;
+
+    public GetTopBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public GetTopBooksHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public GetTopBooksHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.libraryStats = new LibraryStats(ddbClient, archive, System.getenv("TABLE_NAME"));
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("GetTopBooks function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("GetTopBooks", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+
+            Map<String, String> params = input.getQueryStringParameters() != null
+                    ? input.getQueryStringParameters()
+                    : Map.of();
+            int n = params.get("n") != null
+                    ? Math.max(1, Math.min(MAX_N, Integer.parseInt(params.get("n").trim())))
+                    : DEFAULT_N;
+            Integer year = params.get("year") != null && !params.get("year").trim().isEmpty()
+                    ? Integer.parseInt(params.get("year").trim())
+                    : null;
+
+            ReadingStats stats = libraryStats.get(userId, "GetTopBooks", metrics);
+
+            SerializationEvent serializationEvent = SerializationEvent.start("GetTopBooks");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(stats.toTopResponse(n, year)));
+            serializationEvent.end(jsonResponse.length());
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (NumberFormatException e) {
+            log.error("Invalid top books parameter", e);
+
+            String errorResponse = "{\"error\": \"Invalid parameter\", \"message\": \"n and year must be valid integers\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(400)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        } catch (Exception e) {
+            log.error("Error computing the most read authors", e);
+
+            String errorResponse = "{\"error\": \"Failed to compute the most read authors\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+/**
+ * The {@link ReadingStats} of a library, stored in its item {@link Libraries#STATS_ID} with the counter's
+ * {@code statsVersion} they were computed at and the {@code lastId} they count books up to. Creating a book
+ * leaves them alone: IndexNewBooksHandler, and failing that the next reader, adds the books created since with
+ * one batch read. Where they are missing, because the library predates them, or stale, because an update or
+ * import moved the counter's {@code statsVersion} on, they are computed from the books of the table and the
+ * archive.
+ */
+@Slf4j
+public class LibraryStats {
+
+    // Books created since the statistics were saved that are added to them; beyond that they are computed again
+    private static final int MAX_CATCH_UP = 100;
+    private static final int BATCH_GET_SIZE = 100;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final DynamoDbTable<Book> bookTable;
+    private final BookArchive archive;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+
+    public LibraryStats(DynamoDbClient ddbClient, BookArchive archive, String tableName) {
+        this.dynamoDbClient = ddbClient;
+        this.enhancedClient = DynamoDbEnhancedClient.builder()
+                .dynamoDbClient(ddbClient)
+                .build();
+        this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
+        this.archive = archive;
+        this.tableName = tableName;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public ReadingStats get(String userId, String function, RequestMetrics metrics) throws Exception {
+        Map<Integer, Map<String, AttributeValue>> items = metrics.time("Query", () -> read(userId));
+        Map<String, AttributeValue> counter = items.get(Libraries.COUNTER_ID);
+        ReadingStats stats = current(userId, counter, items.get(Libraries.STATS_ID), metrics);
+        return stats != null ? stats : compute(userId, function, counter, metrics);
+    }
+
+    /**
+     * Adds the books created since the statistics were saved, if they are neither missing nor stale, and saves
+     * them. Returns whether they were; those that were not are left to the next reader to compute.
+     */
+    public boolean catchUp(String userId, RequestMetrics metrics) throws Exception {
+        Map<Integer, Map<String, AttributeValue>> items = metrics.time("Query", () -> read(userId));
+        return current(userId, items.get(Libraries.COUNTER_ID), items.get(Libraries.STATS_ID), metrics) != null;
+    }
+
+    // The counter and the statistics item, strongly consistent, by id; either may be missing
+    private Map<Integer, Map<String, AttributeValue>> read(String userId) {
+        Map<String, KeysAndAttributes> request = Map.of(tableName, KeysAndAttributes.builder()
+                .keys(Libraries.itemKey(userId, Libraries.COUNTER_ID), Libraries.itemKey(userId, Libraries.STATS_ID))
+                .consistentRead(true)
+                .projectionExpression("id, lastId, #stats, #statsVersion, #countedTo")
+                .expressionAttributeNames(Map.of(
+                        "#stats", ReadingStats.ATTRIBUTE,
+                        "#statsVersion", ReadingStats.VERSION_ATTRIBUTE,
+                        "#countedTo", ReadingStats.COUNTED_TO_ATTRIBUTE))
+                .build());
+        Map<Integer, Map<String, AttributeValue>> items = new HashMap<>();
+        while (!request.isEmpty()) {
+            BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(request)
+                    .build());
+            response.responses().getOrDefault(tableName, List.of())
+                    .forEach(item -> items.put(Integer.parseInt(item.get("id").n()), item));
+            request = response.unprocessedKeys();
+        }
+        return items;
+    }
+
+    /**
+     * The stored statistics with the books created since they were saved, or {@code null} when they are missing,
+     * stale, of an earlier schema or too far behind, or when one of the books created since is not in the table.
+     */
+    private ReadingStats current(String userId, Map<String, AttributeValue> counter, Map<String, AttributeValue> stored,
+            RequestMetrics metrics) throws Exception {
+        if (stored == null || stored.get(ReadingStats.ATTRIBUTE) == null
+                || number(stored, ReadingStats.VERSION_ATTRIBUTE) != number(counter, ReadingStats.VERSION_ATTRIBUTE)) {
+            return null;
+        }
+        ReadingStats stats = metrics.time("Mapping", () -> ReadingStats.fromJson(stored.get(ReadingStats.ATTRIBUTE).s()));
+        int countedTo = (int) number(stored, ReadingStats.COUNTED_TO_ATTRIBUTE);
+        int lastId = (int) number(counter, "lastId");
+        if (stats == null || countedTo == lastId) {
+            return stats;
+        }
+        if (lastId < countedTo || lastId - countedTo > MAX_CATCH_UP) {
+            return null;
+        }
+
+        List<Book> created = metrics.time("Query", () -> books(userId, countedTo + 1, lastId));
+        // An import writes its block of ids after taking them, and drops the statistics once it is done
+        if (created.size() < lastId - countedTo) {
+            log.info("Books {} to {} of user {} are not all in the table, the statistics are computed again",
+                    countedTo + 1, lastId, userId);
+            return null;
+        }
+        metrics.time("Mapping", () -> {
+            created.forEach(stats::add);
+            return null;
+        });
+        save(userId, stats, number(counter, ReadingStats.VERSION_ATTRIBUTE), lastId);
+        log.info("Added books {} to {} to the reading statistics of user {}", countedTo + 1, lastId, userId);
+        return stats;
+    }
+
+    // Strongly consistent, as a create is only notified once its book is written
+    private List<Book> books(String userId, int fromId, int toId) {
+        List<Book> books = new ArrayList<>();
+        for (int start = fromId; start <= toId; start += BATCH_GET_SIZE) {
+            ReadBatch.Builder<Book> batch = ReadBatch.builder(Book.class).mappedTableResource(bookTable);
+            for (int id = start; id <= Math.min(start + BATCH_GET_SIZE - 1, toId); id++) {
+                batch.addGetItem(GetItemEnhancedRequest.builder()
+                        .key(Libraries.key(userId, id))
+                        .consistentRead(true)
+                        .build());
+            }
+            for (BatchGetResultPage page : enhancedClient.batchGetItem(r -> r.addReadBatch(batch.build()))) {
+                books.addAll(page.resultsForTable(bookTable));
+            }
+        }
+        books.sort(Comparator.comparing(Book::getId));
+        return books;
+    }
+
+    /**
+     * Computes the statistics from every book of the library and saves them. The counter and the books are read
+     * strongly consistent, and the statistics are only saved if the books end at the counter's {@code lastId}, so
+     * that a book whose write is not visible yet is never left out of them. They are saved with the counter's
+     * {@code statsVersion} as read before the books: a book updated in between moved it on, and the statistics
+     * saved are then stale from the start.
+     */
+    private ReadingStats compute(String userId, String function, Map<String, AttributeValue> counter,
+            RequestMetrics metrics) throws Exception {
+        BookScanEvent scanEvent = BookScanEvent.start(function);
+        List<Book> books = metrics.time("Query", () -> bookTable.query(QueryEnhancedRequest.builder()
+                        .queryConditional(Libraries.books(userId))
+                        .consistentRead(true)
+                        .build())
+                .items()
+                .stream()
+                .collect(Collectors.toList()));
+        scanEvent.end(books.size());
+        metrics.count("ItemCount", books.size());
+        SortedMap<Integer, String> archived = metrics.time("Archive", () -> archive.books(userId));
+
+        ReadingStats stats = metrics.time("Mapping", () -> {
+            ReadingStats computed = ReadingStats.of(books);
+            Set<Integer> ids = new HashSet<>();
+            books.forEach(book -> ids.add(book.getId()));
+            for (Map.Entry<Integer, String> book : archived.entrySet()) {
+                if (!ids.contains(book.getKey())) {
+                    computed.add(objectMapper.readValue(book.getValue(), Book.class));
+                }
+            }
+            return computed;
+        });
+        log.info("Computed reading statistics of user {} from {} books", userId, stats.count);
+
+        AttributeValue lastId = counter != null ? counter.get("lastId") : null;
+        if (lastId == null) {
+            return stats;
+        }
+        int highestId = Math.max(books.stream().mapToInt(Book::getId).max().orElse(0),
+                archived.isEmpty() ? 0 : archived.lastKey());
+        if (highestId != Integer.parseInt(lastId.n())) {
+            log.info("Books of user {} end at {} but the counter at {}, the statistics are not saved",
+                    userId, highestId, lastId.n());
+            return stats;
+        }
+        save(userId, stats, number(counter, ReadingStats.VERSION_ATTRIBUTE), highestId);
+        return stats;
+    }
+
+    /**
+     * Saves the statistics unless those stored were computed at a later {@code statsVersion}, or at the same one
+     * up to the same or a later book, by a concurrent request.
+     */
+    private void save(String userId, ReadingStats stats, long statsVersion, int countedTo) throws Exception {
+        Map<String, AttributeValue> item = new HashMap<>(Libraries.itemKey(userId, Libraries.STATS_ID));
+        item.put(ReadingStats.ATTRIBUTE, AttributeValue.fromS(stats.toJson()));
+        item.put(ReadingStats.VERSION_ATTRIBUTE, AttributeValue.fromN(String.valueOf(statsVersion)));
+        item.put(ReadingStats.COUNTED_TO_ATTRIBUTE, AttributeValue.fromN(String.valueOf(countedTo)));
+        try {
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(tableName)
+                    .item(item)
+                    .conditionExpression("attribute_not_exists(#statsVersion) OR #statsVersion < :statsVersion"
+                            + " OR (#statsVersion = :statsVersion AND #countedTo < :countedTo)")
+                    .expressionAttributeNames(Map.of(
+                            "#statsVersion", ReadingStats.VERSION_ATTRIBUTE,
+                            "#countedTo", ReadingStats.COUNTED_TO_ATTRIBUTE))
+                    .expressionAttributeValues(Map.of(
+                            ":statsVersion", item.get(ReadingStats.VERSION_ATTRIBUTE),
+                            ":countedTo", item.get(ReadingStats.COUNTED_TO_ATTRIBUTE)))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            log.info("Reading statistics of user {} were saved by a concurrent request, they are not saved", userId);
+        }
+    }
+
+    // A numeric attribute of the item, 0 when it or the item is missing
+    private static long number(Map<String, AttributeValue> item, String attribute) {
+        AttributeValue value = item != null ? item.get(attribute) : null;
+        return value != null ? Long.parseLong(value.n()) : 0;
+    }
+}
@@ -0,0 +1,149 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+/**
+ * One-off backfill of the duplicate check: adds the books written before the signature buckets existed to their
+ * {@link BookSignature} buckets. It is invoked by hand, with {@code {"userId": "..."}} for one library or
+ * {@code {}} for the whole table. Buckets only gain ids, so running it again is harmless.
+ *
+ * Each page of books becomes one update per bucket. Before the Lambda timeout comes near, the handler stops and
+ * returns {@code startKey}, the key to continue from; invoking it again with that key in the input goes on where
+ * it stopped. The result has no {@code startKey} once every book was seen.
+ */
+@Slf4j
+public class BackfillSignaturesHandler implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    // Time left for the page in progress when the handler stops
+    private static final long STOP_BEFORE_MILLIS = 60_000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final String signatureTableName;
+
+    public BackfillSignaturesHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public BackfillSignaturesHandler(DynamoDbClient dynamoDbClient) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.signatureTableName = System.getenv("SIGNATURE_TABLE_NAME");
+        this.dynamoDbClient = dynamoDbClient;
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> input, Context context) {
+        log.info("BackfillSignatures function started - Request ID: {}", context.getAwsRequestId());
+
+        RequestMetrics metrics = RequestMetrics.start("BackfillSignatures", context);
+        String userId = input != null ? (String) input.get("userId") : null;
+        Map<String, AttributeValue> startKey = startKey(input);
+        long books = 0;
+        int buckets = 0;
+        try {
+            do {
+                List<Map<String, AttributeValue>> items;
+                if (userId != null) {
+                    QueryResponse page = dynamoDbClient.query(QueryRequest.builder()
+                            .tableName(tableName)
+                            .keyConditionExpression("userId = :userId AND id > :counterId")
+                            .projectionExpression("userId, id, title, author, normalizedTitle, normalizedAuthor")
+                            .expressionAttributeValues(Map.of(
+                                    ":userId", AttributeValue.fromS(userId),
+                                    ":counterId", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                            .exclusiveStartKey(startKey)
+                            .build());
+                    items = page.items();
+                    startKey = page.hasLastEvaluatedKey() ? page.lastEvaluatedKey() : null;
+                } else {
+                    ScanResponse page = dynamoDbClient.scan(ScanRequest.builder()
+                            .tableName(tableName)
+                            .filterExpression("id > :counterId")
+                            .projectionExpression("userId, id, title, author, normalizedTitle, normalizedAuthor")
+                            .expressionAttributeValues(Map.of(
+                                    ":counterId", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                            .exclusiveStartKey(startKey)
+                            .build());
+                    items = page.items();
+                    startKey = page.hasLastEvaluatedKey() ? page.lastEvaluatedKey() : null;
+                }
+                buckets += addToBuckets(items);
+                books += items.size();
+            } while (startKey != null && context.getRemainingTimeInMillis() > STOP_BEFORE_MILLIS);
+
+            metrics.count("ItemCount", books);
+            metrics.count("UpdatedItemCount", buckets);
+            log.info("Added {} books to {} signature buckets, {}", books, buckets,
+                    startKey != null ? "continue from " + startKey : "done");
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("books", books);
+            result.put("buckets", buckets);
+            if (userId != null) {
+                result.put("userId", userId);
+            }
+            if (startKey != null) {
+                result.put("startKey", Map.of("userId", startKey.get("userId").s(),
+                        "id", Integer.parseInt(startKey.get("id").n())));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Error backfilling signature buckets", e);
+            metrics.count("Errors", 1);
+            throw new RuntimeException("Failed to backfill signature buckets", e);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    private static Map<String, AttributeValue> startKey(Map<String, Object> input) {
+        Object startKey = input != null ? input.get("startKey") : null;
+        if (!(startKey instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> key = (Map<?, ?>) startKey;
+        return Libraries.itemKey((String) key.get("userId"), ((Number) key.get("id")).intValue());
+    }
+
+    // One update per bucket of the page, which may hold books of several libraries
+    private int addToBuckets(List<Map<String, AttributeValue>> items) {
+        Map<String, Map<String, List<Integer>>> buckets = new HashMap<>();
+        for (Map<String, AttributeValue> item : items) {
+            BookSignature signature = BookSignature.of(
+                    item.get("normalizedTitle") != null ? item.get("normalizedTitle").s() : SearchKeys.normalize(item.get("title").s()),
+                    item.get("normalizedAuthor") != null ? item.get("normalizedAuthor").s() : SearchKeys.normalize(item.get("author").s()));
+            int id = Integer.parseInt(item.get("id").n());
+            Map<String, List<Integer>> library = buckets.computeIfAbsent(item.get("userId").s(), u -> new HashMap<>());
+            signature.buckets().forEach(bucket -> library.computeIfAbsent(bucket, b -> new ArrayList<>()).add(id));
+        }
+        int updated = 0;
+        for (Map.Entry<String, Map<String, List<Integer>>> library : buckets.entrySet()) {
+            for (Map.Entry<String, List<Integer>> bucket : library.getValue().entrySet()) {
+                SignatureBuckets.write(dynamoDbClient,
+                        SignatureBuckets.add(signatureTableName, library.getKey(), bucket.getKey(), bucket.getValue()));
+                updated++;
+            }
+        }
+        return updated;
+    }
+}
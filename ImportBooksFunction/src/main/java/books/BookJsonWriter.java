@@ -0,0 +1,81 @@
+package books;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes books as the JSON the book endpoints return, straight from the stored items.
+ *
+ * The output is what Jackson produces for the equivalent {@link BookResponse}, but no BookResponse is built and
+ * nothing is looked up reflectively: the fields are written one by one with the streaming generator, and
+ * {@code finishDate}, stored as an ISO date already, is copied rather than parsed into a LocalDate and formatted
+ * back. Missing numbers are written as 0, as the primitive BookResponse fields would hold.
+ *
+ * The single-book form is also what is stored as the pre-rendered {@value #ATTRIBUTE} attribute of each book.
+ */
+public final class BookJsonWriter {
+
+    /** Item attribute holding the book as rendered by {@link #write(Book)}. */
+    public static final String ATTRIBUTE = "json";
+
+    // A serialized book takes about 200 characters
+    private static final int CHARS_PER_BOOK = 200;
+
+    private final JsonFactory jsonFactory;
+
+    public BookJsonWriter(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public String write(List<Book> books) throws IOException {
+        StringWriter out = new StringWriter(books.size() * CHARS_PER_BOOK + 2);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartArray();
+            for (Book book : books) {
+                write(generator, book);
+            }
+            generator.writeEndArray();
+        }
+        return out.toString();
+    }
+
+    public String write(Book book) throws IOException {
+        StringWriter out = new StringWriter(CHARS_PER_BOOK);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            write(generator, book);
+        }
+        return out.toString();
+    }
+
+    // Same field order as BookResponse
+    public static void write(JsonGenerator generator, Book book) throws IOException {
+        generator.writeStartObject();
+        if (book.getId() != null) {
+            generator.writeNumberField("id", book.getId());
+        } else {
+            generator.writeNullField("id");
+        }
+        generator.writeStringField("title", book.getTitle());
+        generator.writeNumberField("publicationYear", orZero(book.getPublicationYear()));
+        generator.writeNumberField("readYear", orZero(book.getReadYear()));
+        generator.writeStringField("author", book.getAuthor());
+        generator.writeStringField("language", book.getLanguage());
+        generator.writeStringField("format", book.getFormat());
+        generator.writeStringField("finishDate", book.getFinishDate());
+        generator.writeNumberField("readingTimeInDays", orZero(book.getReadingTimeInDays()));
+        if (book.getVersion() != null) {
+            generator.writeNumberField("version", book.getVersion());
+        } else {
+            generator.writeNullField("version");
+        }
+        generator.writeEndObject();
+    }
+
+    private static int orZero(Integer value) {
+        return value != null ? value : 0;
+    }
+}
@@ -0,0 +1,145 @@
+package books;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads an import file one line at a time, so only the current line is held in memory.
+ *
+ * CSV files use the semicolon-separated layout of the backups written by BackupBooksHandler; a header row, if
+ * present, may reorder or omit columns, and may include the {@code userId} column of backups. NDJSON files
+ * hold one JSON object per line with the same field names.
+ * Empty values and the {@code null} written by backups for missing numbers are left out of the row.
+ */
+final class BookRows implements Closeable {
+
+    static final List<String> BACKUP_COLUMNS = List.of(
+            "id", "title", "author", "publicationYear", "language", "format", "finishDate", "readYear", "readingTimeInDays");
+    // Written by backups after the book columns, which hold every library
+    static final String OWNER_COLUMN = "userId";
+
+    private final BufferedReader reader;
+    private final boolean ndjson;
+    private final ObjectMapper objectMapper;
+    private List<String> columns = BACKUP_COLUMNS;
+    private int lineNumber;
+
+    private BookRows(BufferedReader reader, boolean ndjson, ObjectMapper objectMapper) {
+        this.reader = reader;
+        this.ndjson = ndjson;
+        this.objectMapper = objectMapper;
+    }
+
+    static BookRows csv(BufferedReader reader) {
+        return new BookRows(reader, false, null);
+    }
+
+    static BookRows ndjson(BufferedReader reader, ObjectMapper objectMapper) {
+        return new BookRows(reader, true, objectMapper);
+    }
+
+    /**
+     * The next non-empty row, or {@code null} at the end of the file. A row that cannot be read is returned
+     * with its error instead of fields.
+     */
+    Row next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (ndjson) {
+                return parseJson(line);
+            }
+            if (lineNumber == 1 && isHeader(line)) {
+                columns = List.of(line.trim().split(";", -1));
+                continue;
+            }
+            return parseCsv(line);
+        }
+        return null;
+    }
+
+    private static boolean isHeader(String line) {
+        for (String column : line.trim().split(";", -1)) {
+            if (!BACKUP_COLUMNS.contains(column) && !OWNER_COLUMN.equals(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Row parseCsv(String line) {
+        String[] values = line.split(";", -1);
+        if (values.length != columns.size()) {
+            return Row.error(lineNumber, "Expected " + columns.size() + " columns but found " + values.length);
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            put(fields, columns.get(i), values[i]);
+        }
+        return new Row(lineNumber, fields, null);
+    }
+
+    private Row parseJson(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            return Row.error(lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            return Row.error(lineNumber, "Expected a JSON object");
+        }
+        Map<String, String> fields = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> entries = node.fields();
+        while (entries.hasNext()) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            if (entry.getValue().isValueNode() && !entry.getValue().isNull()) {
+                put(fields, entry.getKey(), entry.getValue().asText());
+            }
+        }
+        return new Row(lineNumber, fields, null);
+    }
+
+    private static void put(Map<String, String> fields, String name, String value) {
+        String trimmed = value.trim();
+        if (!trimmed.isEmpty() && !"null".equals(trimmed)) {
+            fields.put(name, trimmed);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    static final class Row {
+        final int line;
+        final Map<String, String> fields;
+        final String error;
+
+        private Row(int line, Map<String, String> fields, String error) {
+            this.line = line;
+            this.fields = fields;
+            this.error = error;
+        }
+
+        static Row error(int line, String error) {
+            return new Row(line, null, error);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * MinHash signature of a book's normalized title and author, so that likely duplicates are found with a few keyed
+ * reads instead of a scan of the library.
+ *
+ * Title and author are cut into overlapping {@value #SHINGLE}-character shingles, and two books are as alike as
+ * the Jaccard similarity of their shingle sets. The signature keeps, for each of {@value #BANDS} times
+ * {@value #ROWS} hash functions, the smallest hash of any shingle; each band of {@value #ROWS} minimums is hashed
+ * into a {@link SignatureBucket} key. Books that share a bucket are candidates, and only candidates are compared:
+ * two books with a similarity of 0.8 share a bucket with a probability of 0.997, two with 0.3 with one of 0.2.
+ */
+public final class BookSignature {
+
+    public static final int BANDS = 8;
+    public static final int ROWS = 3;
+    // Share of shingles two books must have in common to be reported as likely duplicates
+    public static final double THRESHOLD = 0.8;
+
+    private static final int SHINGLE = 3;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final long[] SEEDS = new long[BANDS * ROWS];
+
+    static {
+        for (int i = 0; i < SEEDS.length; i++) {
+            SEEDS[i] = mix(i + 1);
+        }
+    }
+
+    private final Set<String> shingles;
+    private final long[] minimums;
+
+    private BookSignature(Set<String> shingles, long[] minimums) {
+        this.shingles = shingles;
+        this.minimums = minimums;
+    }
+
+    /**
+     * The signature of the normalized title and author (see {@link SearchKeys}).
+     */
+    public static BookSignature of(String normalizedTitle, String normalizedAuthor) {
+        String title = words(normalizedTitle);
+        String author = words(normalizedAuthor);
+        // A book without title and author has no shingles, and is never taken for a duplicate
+        Set<String> shingles = title.isEmpty() && author.isEmpty()
+                ? Collections.emptySet()
+                : shingles(title + " / " + author);
+        long[] minimums = new long[BANDS * ROWS];
+        Arrays.fill(minimums, Long.MAX_VALUE);
+        for (String shingle : shingles) {
+            // String.hashCode is specified, so the buckets are the same in every JVM
+            long hash = shingle.hashCode();
+            for (int i = 0; i < minimums.length; i++) {
+                minimums[i] = Math.min(minimums[i], mix(hash ^ SEEDS[i]));
+            }
+        }
+        return new BookSignature(shingles, minimums);
+    }
+
+    private static String words(String value) {
+        return value != null ? NON_WORD.matcher(value).replaceAll(" ").trim() : "";
+    }
+
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        for (int start = 0; start + SHINGLE <= text.length(); start++) {
+            shingles.add(text.substring(start, start + SHINGLE));
+        }
+        return shingles;
+    }
+
+    public boolean isEmpty() {
+        return shingles.isEmpty();
+    }
+
+    /**
+     * The keys of the {@value #BANDS} buckets the book goes into, none for an empty signature.
+     */
+    public List<String> buckets() {
+        List<String> buckets = new ArrayList<>(BANDS);
+        if (isEmpty()) {
+            return buckets;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long hash = band;
+            for (int row = 0; row < ROWS; row++) {
+                hash = mix(hash ^ minimums[band * ROWS + row]);
+            }
+            buckets.add(band + ":" + String.format("%016x", hash));
+        }
+        return buckets;
+    }
+
+    /**
+     * Jaccard similarity of the two books' shingles, between 0 and 1.
+     */
+    public double similarity(BookSignature other) {
+        if (isEmpty() || other.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String shingle : shingles) {
+            if (other.shingles.contains(shingle)) {
+                common++;
+            }
+        }
+        return (double) common / (shingles.size() + other.shingles.size() - common);
+    }
+
+    // Finalizer of SplitMix64: every input bit affects every output bit
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,510 @@
+package books;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Entity;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Imports the books of a CSV or NDJSON file uploaded under {@code imports/<userId>/} in the backup bucket into
+ * the library of that user.
+ *
+ * The object is streamed line by line through {@link BookRows} twice. The first pass counts the rows that will
+ * become books, and their ids are reserved as one block by a single atomic {@code ADD} to the library's counter,
+ * so books created during the import take ids after the block. The second pass, over the same version of the
+ * object, turns the rows into {@link Book}s with the ids of the block, in file order, and writes them in
+ * BatchWriteItem calls of 25 on a small thread pool. The number of batches in flight is bounded, so memory use
+ * does not depend on the file size. With {@code SIGNATURE_TABLE_NAME} set, each written batch also adds its books
+ * to their {@link BookSignature} buckets, so that the duplicate check of later creates finds them. Once all
+ * batches are written, the reading statistics are dropped. Rejected rows are collected in an {@link ImportReport} stored next to the file under {@code import-reports/}.
+ */
+@Slf4j
+public class ImportBooksHandler implements RequestHandler<S3Event, Void> {
+
+    static final String IMPORT_PREFIX = "imports/";
+    static final String REPORT_PREFIX = "import-reports/";
+
+    private static final int BATCH_SIZE = 25;
+    private static final int WRITE_THREADS = 8;
+    private static final int MAX_IN_FLIGHT = WRITE_THREADS * 2;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final S3Client s3Client;
+    private final TableSchema<Book> bookSchema = TableSchema.fromBean(Book.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BookJsonWriter bookJsonWriter = new BookJsonWriter(objectMapper.getFactory());
+    private final String tableName;
+    // Duplicate check of CreateBookHandler, optional like there
+    private final String signatureTableName;
+
+    public ImportBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build(),
+                S3Client.builder()
+                        .overrideConfiguration(o -> o.addExecutionInterceptor(new TracingInterceptor()))
+                        .build());
+    }
+
+    public ImportBooksHandler(DynamoDbClient dynamoDbClient, S3Client s3Client) {
+        this.tableName = System.getenv("TABLE_NAME");
+        String signatureTableName = System.getenv("SIGNATURE_TABLE_NAME");
+        this.signatureTableName = signatureTableName != null && !signatureTableName.isEmpty() ? signatureTableName : null;
+        this.dynamoDbClient = dynamoDbClient;
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public Void handleRequest(S3Event event, Context context) {
+        log.info("ImportBooks function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        RequestMetrics metrics = RequestMetrics.start("ImportBooks", context);
+        try {
+            for (S3EventNotification.S3EventNotificationRecord record : event.getRecords()) {
+                String bucket = record.getS3().getBucket().getName();
+                String key = record.getS3().getObject().getUrlDecodedKey();
+                importFile(bucket, key, metrics);
+            }
+        } catch (Exception e) {
+            log.error("Error importing books", e);
+            metrics.count("Errors", 1);
+            throw new RuntimeException("Failed to import books", e);
+        } finally {
+            metrics.finish();
+        }
+        return null;
+    }
+
+    private void importFile(String bucket, String key, RequestMetrics metrics) throws Exception {
+        String userId = userId(key);
+        if (userId == null) {
+            // Retrying would not help, so the file is left alone
+            log.error("Skipping s3://{}/{}: imports must be uploaded under {}<userId>/", bucket, key, IMPORT_PREFIX);
+            metrics.count("Errors", 1);
+            return;
+        }
+        log.info("Importing books from s3://{}/{} into the library of user {}", bucket, key, userId);
+        ResponseInputStream<GetObjectResponse> counted = get(bucket, key, null);
+        String eTag = counted.response().eTag();
+        long count;
+        try (BookRows rows = rows(key, counted)) {
+            count = metrics.time("S3", () -> countBooks(rows, userId));
+        }
+        int lastId = count > 0 ? metrics.time("Query", () -> reserveIds(userId, count)) : 0;
+        int firstId = (int) (lastId - count + 1);
+        LocalDate previousFinishDate = firstId > 1 ? metrics.time("Query", () -> finishDate(userId, firstId - 1)) : null;
+
+        ImportState state = new ImportState(userId, firstId, previousFinishDate);
+        ExecutorService writers = Executors.newFixedThreadPool(WRITE_THREADS);
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+        try (ImportReport report = new ImportReport(objectMapper);
+             BookRows rows = rows(key, get(bucket, key, eTag))) {
+            List<PendingBook> batch = new ArrayList<>(BATCH_SIZE);
+            BookRows.Row row;
+            while ((row = rows.next()) != null) {
+                state.rows++;
+                if (row.error != null) {
+                    report.reject(row.line, row.error);
+                    continue;
+                }
+                // Whole-table backups hold every library; only the rows of this one are imported
+                if (!ownedBy(row, userId)) {
+                    state.skipped++;
+                    continue;
+                }
+                // The object is read at the version that was counted, so this only guards the block
+                if (state.nextId > lastId) {
+                    report.reject(row.line, "No id reserved for this row");
+                    continue;
+                }
+                try {
+                    Book book = toBook(row.fields, state);
+                    batch.add(new PendingBook(row.line, bookSchema.itemToMap(book, true)));
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    report.reject(row.line, e.getMessage());
+                    continue;
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    submit(batch, writers, inFlight, state, report, metrics);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, writers, inFlight, state, report, metrics);
+            }
+            // Every permit is back once the last batch is written
+            inFlight.acquire(MAX_IN_FLIGHT);
+            if (state.nextId > firstId) {
+                metrics.time("Update", () -> invalidateStats(userId));
+            }
+
+            long imported = state.nextId - firstId - state.failedWrites.get();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("source", "s3://" + bucket + "/" + key);
+            summary.put("userId", userId);
+            summary.put("rows", state.rows);
+            summary.put("imported", imported);
+            summary.put("rejected", report.rejected());
+            summary.put("skipped", state.skipped);
+            summary.put("firstId", firstId);
+            summary.put("lastId", state.nextId - 1);
+            synchronized (metrics) {
+                metrics.count("ItemCount", imported);
+                metrics.count("RejectedRows", report.rejected());
+            }
+            uploadReport(bucket, key, report.finish(summary), metrics);
+            log.info("Imported {} of {} rows from s3://{}/{}, ids {} to {}",
+                    imported, state.rows, bucket, key, firstId, state.nextId - 1);
+        } finally {
+            writers.shutdown();
+        }
+    }
+
+    // With an ETag, the read fails if the object was replaced since it was counted
+    private ResponseInputStream<GetObjectResponse> get(String bucket, String key, String eTag) {
+        return s3Client.getObject(GetObjectRequest.builder().bucket(bucket).key(key).ifMatch(eTag).build());
+    }
+
+    private BookRows rows(String key, ResponseInputStream<GetObjectResponse> object) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(object, StandardCharsets.UTF_8));
+        String lowerKey = key.toLowerCase();
+        return lowerKey.endsWith(".ndjson") || lowerKey.endsWith(".jsonl")
+                ? BookRows.ndjson(reader, objectMapper)
+                : BookRows.csv(reader);
+    }
+
+    private static boolean ownedBy(BookRows.Row row, String userId) {
+        String owner = row.fields.get(BookRows.OWNER_COLUMN);
+        return owner == null || owner.equals(userId);
+    }
+
+    /**
+     * The number of rows of the library that are valid books, validated as the import pass does.
+     */
+    private long countBooks(BookRows rows, String userId) throws IOException {
+        ImportState counting = new ImportState(userId, 1, null);
+        long count = 0;
+        BookRows.Row row;
+        while ((row = rows.next()) != null) {
+            if (row.error != null || !ownedBy(row, userId)) {
+                continue;
+            }
+            try {
+                toBook(row.fields, counting);
+                count++;
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                // Rejected, and reported, by the import pass
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Validates one row into a book with the next id. The reading time of the file is kept; when it is
+     * missing it is counted, as in CreateBookHandler, from the previous book's finish date.
+     */
+    Book toBook(Map<String, String> fields, ImportState state) {
+        String title = required(fields, "title");
+        String author = required(fields, "author");
+        LocalDate finishDate = LocalDate.parse(required(fields, "finishDate"));
+
+        Book book = new Book();
+        book.setUserId(state.userId);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setNormalizedTitle(SearchKeys.normalize(title));
+        book.setNormalizedAuthor(SearchKeys.normalize(author));
+        book.setPublicationYear(number(fields, "publicationYear"));
+        book.setLanguage(fields.get("language"));
+        book.setFormat(fields.get("format"));
+        book.setFinishDate(finishDate.toString());
+        book.setReadYear(finishDate.getYear());
+        Integer readingTime = number(fields, "readingTimeInDays");
+        if (readingTime == null) {
+            readingTime = state.previousFinishDate != null
+                    ? (int) ChronoUnit.DAYS.between(state.previousFinishDate, finishDate)
+                    : 0;
+        }
+        book.setReadingTimeInDays(readingTime);
+        book.setVersion(1L);
+
+        book.setId(state.nextId++);
+        book.setJson(render(book));
+        state.previousFinishDate = finishDate;
+        return book;
+    }
+
+    private String render(Book book) {
+        try {
+            return bookJsonWriter.write(book);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return value;
+    }
+
+    private static Integer number(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number: " + value);
+        }
+    }
+
+    private void submit(List<PendingBook> batch, ExecutorService writers, Semaphore inFlight,
+                        ImportState state, ImportReport report, RequestMetrics metrics) throws InterruptedException {
+        // Blocks the reader while the writers are busy, so unwritten rows cannot pile up
+        inFlight.acquire();
+        // Writers join the invocation's trace, so their DynamoDB calls show up under it
+        Entity traceEntity = AWSXRay.getTraceEntity();
+        Runnable write = () -> writeBatch(batch, state, report, metrics);
+        writers.execute(() -> {
+            try {
+                if (traceEntity != null) {
+                    traceEntity.run(write);
+                } else {
+                    write.run();
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Writes one batch, retrying unprocessed items with exponential backoff; items that still fail are
+     * rejected in the report and leave a gap in the ids.
+     */
+    private void writeBatch(List<PendingBook> batch, ImportState state, ImportReport report, RequestMetrics metrics) {
+        Map<AttributeValue, Integer> lines = new LinkedHashMap<>();
+        List<WriteRequest> requests = new ArrayList<>(batch.size());
+        for (PendingBook book : batch) {
+            lines.put(book.item.get("id"), book.line);
+            requests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(book.item).build()).build());
+        }
+
+        String failure = "Not written after " + MAX_ATTEMPTS + " attempts";
+        try {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS && !requests.isEmpty(); attempt++) {
+                if (attempt > 0) {
+                    Thread.sleep(Math.min(50L << attempt, 5000));
+                }
+                BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                        .requestItems(Map.of(tableName, requests))
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .build());
+                // The metrics interceptor only sees the invocation thread, so count writer calls here
+                double capacity = response.consumedCapacity().stream().mapToDouble(ImportBooksHandler::units).sum();
+                synchronized (metrics) {
+                    metrics.count("ConsumedWriteCapacity", capacity);
+                    metrics.count("DynamoDbCalls", 1);
+                }
+                requests = response.unprocessedItems().getOrDefault(tableName, List.of());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = "Interrupted";
+        } catch (Exception e) {
+            log.error("Failed to write import batch", e);
+            failure = e.getMessage();
+        }
+        state.failedWrites.addAndGet(requests.size());
+        for (WriteRequest request : requests) {
+            report.reject(lines.get(request.putRequest().item().get("id")), failure);
+        }
+        if (signatureTableName != null) {
+            Set<AttributeValue> failed = requests.stream()
+                    .map(request -> request.putRequest().item().get("id"))
+                    .collect(Collectors.toSet());
+            addToBuckets(batch.stream()
+                    .map(book -> book.item)
+                    .filter(item -> !failed.contains(item.get("id")))
+                    .collect(Collectors.toList()), state.userId, metrics);
+        }
+    }
+
+    /**
+     * Adds the written books to their signature buckets, one update per bucket. The books are in the table
+     * already, so a failure only leaves them out of the duplicate check, and is logged.
+     */
+    private void addToBuckets(List<Map<String, AttributeValue>> items, String userId, RequestMetrics metrics) {
+        Map<String, List<Integer>> buckets = new HashMap<>();
+        for (Map<String, AttributeValue> item : items) {
+            BookSignature signature = BookSignature.of(item.get("normalizedTitle").s(), item.get("normalizedAuthor").s());
+            int id = Integer.parseInt(item.get("id").n());
+            signature.buckets().forEach(bucket -> buckets.computeIfAbsent(bucket, b -> new ArrayList<>()).add(id));
+        }
+        for (Map.Entry<String, List<Integer>> bucket : buckets.entrySet()) {
+            try {
+                SignatureBuckets.write(dynamoDbClient,
+                        SignatureBuckets.add(signatureTableName, userId, bucket.getKey(), bucket.getValue()));
+            } catch (Exception e) {
+                log.error("Books {} of user {} not added to signature bucket {}", bucket.getValue(), userId, bucket.getKey(), e);
+                synchronized (metrics) {
+                    metrics.count("Errors", 1);
+                }
+            }
+        }
+        synchronized (metrics) {
+            metrics.count("DynamoDbCalls", buckets.size());
+        }
+    }
+
+    private static double units(ConsumedCapacity capacity) {
+        return capacity != null && capacity.capacityUnits() != null ? capacity.capacityUnits() : 0;
+    }
+
+    /**
+     * The owner of an import, from the first path segment after {@value #IMPORT_PREFIX}, or {@code null}.
+     */
+    static String userId(String key) {
+        if (!key.startsWith(IMPORT_PREFIX)) {
+            return null;
+        }
+        int slash = key.indexOf('/', IMPORT_PREFIX.length());
+        return slash > IMPORT_PREFIX.length() ? key.substring(IMPORT_PREFIX.length(), slash) : null;
+    }
+
+    /**
+     * Takes the next {@code count} ids of the library in one atomic step and returns the last of them. Books
+     * created meanwhile, whose transaction is conditioned on the counter, retry with an id after the block. The
+     * finish date of the last book is dropped, as it is now one of the block's, for the next create to read it.
+     */
+    private int reserveIds(String userId, long count) {
+        Map<String, AttributeValue> counter = dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Libraries.itemKey(userId, Libraries.COUNTER_ID))
+                .updateExpression("ADD lastId :count REMOVE lastFinishDate")
+                .expressionAttributeValues(Map.of(":count", AttributeValue.fromN(String.valueOf(count))))
+                .returnValues(ReturnValue.UPDATED_NEW)
+                .build()).attributes();
+        return Integer.parseInt(counter.get("lastId").n());
+    }
+
+    // Finish date of the book before the block, for the first reading time
+    private LocalDate finishDate(String userId, int id) {
+        Map<String, AttributeValue> book = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Libraries.itemKey(userId, id))
+                .projectionExpression("finishDate")
+                .consistentRead(true)
+                .build()).item();
+        return book != null && book.get("finishDate") != null ? LocalDate.parse(book.get("finishDate").s()) : null;
+    }
+
+    /**
+     * Makes the reading statistics stale, by moving the counter's {@code statsVersion} on, for GET /books/stats
+     * to compute them again with the imported books. This happens after the last write, as statistics computed
+     * while the batches were written miss some of them; a failure fails the import rather than leaving them.
+     */
+    private Void invalidateStats(String userId) {
+        dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Libraries.itemKey(userId, Libraries.COUNTER_ID))
+                .updateExpression("ADD statsVersion :one")
+                .expressionAttributeValues(Map.of(":one", AttributeValue.fromN("1")))
+                .build());
+        return null;
+    }
+
+    private void uploadReport(String bucket, String key, Path report, RequestMetrics metrics) throws Exception {
+        String reportKey = REPORT_PREFIX + (key.startsWith(IMPORT_PREFIX) ? key.substring(IMPORT_PREFIX.length()) : key)
+                + ".report.ndjson";
+        try {
+            metrics.time("S3", () -> s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(reportKey)
+                    .contentType("application/x-ndjson")
+                    .build(), RequestBody.fromFile(report)));
+            log.info("Import report uploaded to s3://{}/{}", bucket, reportKey);
+        } finally {
+            Files.deleteIfExists(report);
+        }
+    }
+
+    static final class ImportState {
+        private final String userId;
+        private int nextId;
+        private LocalDate previousFinishDate;
+        private long rows;
+        private long skipped;
+        private final AtomicLong failedWrites = new AtomicLong();
+
+        ImportState(String userId, int nextId, LocalDate previousFinishDate) {
+            this.userId = userId;
+            this.nextId = nextId;
+            this.previousFinishDate = previousFinishDate;
+        }
+    }
+
+    private static final class PendingBook {
+        private final int line;
+        private final Map<String, AttributeValue> item;
+
+        private PendingBook(int line, Map<String, AttributeValue> item) {
+            this.line = line;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package books;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Per-row errors of one import, spooled to a temporary file as they occur so the report does not grow the heap.
+ *
+ * The finished report is NDJSON: a summary object on the first line, then one {@code {"line":..,"error":..}}
+ * object per rejected row. Rows are rejected from the parsing thread and from the batch writers, so
+ * {@link #reject(int, String)} is synchronized.
+ */
+final class ImportReport implements AutoCloseable {
+
+    private final ObjectMapper objectMapper;
+    private final Path errors;
+    private final BufferedWriter writer;
+    private long rejected;
+
+    ImportReport(ObjectMapper objectMapper) throws IOException {
+        this.objectMapper = objectMapper;
+        this.errors = Files.createTempFile("import-errors", ".ndjson");
+        this.writer = Files.newBufferedWriter(errors, StandardCharsets.UTF_8);
+    }
+
+    synchronized void reject(int line, String error) {
+        rejected++;
+        try {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("line", line);
+            entry.put("error", error);
+            writer.write(objectMapper.writeValueAsString(entry));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the import report", e);
+        }
+    }
+
+    synchronized long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Writes the summary followed by the spooled errors to a new temporary file and returns it.
+     */
+    synchronized Path finish(Map<String, Object> summary) throws IOException {
+        writer.close();
+        Path report = Files.createTempFile("import-report", ".ndjson");
+        try (OutputStream out = Files.newOutputStream(report);
+             InputStream in = Files.newInputStream(errors)) {
+            out.write(objectMapper.writeValueAsBytes(summary));
+            out.write('\n');
+            in.transferTo(out);
+        }
+        return report;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        Files.deleteIfExists(errors);
+    }
+}
@@ -0,0 +1,140 @@
+package books;
+
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * The work of a create that its response does not wait for. It receives the book notifications that
+ * BookOutboxPublisher sends to SNS and, for each new book, adds it to the {@link BookSignature} buckets of its
+ * title and author, stores the books of the library it is likely a duplicate of on it, as {@code duplicates},
+ * which {@code GET /books/{id}} returns, and adds it to the library's {@link ReadingStats}.
+ *
+ * The book is read again rather than taken from the notification, so a title changed meanwhile is indexed as
+ * it is now. Buckets are added to with {@code ADD} and the statistics are only brought up to the counter's
+ * {@code lastId}, so notifications delivered twice, or out of order, change nothing more. Statistics that are
+ * missing or stale are left to the next reader to compute. Failures are thrown, so that Lambda retries the
+ * notification and then sends it to the dead-letter queue.
+ */
+@Slf4j
+public class IndexNewBooksHandler implements RequestHandler<SNSEvent, Void> {
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbTable<Book> bookTable;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+    private final String signatureTableName;
+    private final DuplicateCheck duplicateCheck;
+    private final LibraryStats libraryStats;
+
+    public IndexNewBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public IndexNewBooksHandler(DynamoDbClient ddbClient) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.dynamoDbClient = ddbClient;
+        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
+                .dynamoDbClient(ddbClient)
+                .build();
+        this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
+        this.signatureTableName = System.getenv("SIGNATURE_TABLE_NAME");
+        this.duplicateCheck = signatureTableName != null && !signatureTableName.isEmpty()
+                ? new DuplicateCheck(enhancedClient, bookTable, enhancedClient.table(signatureTableName, TableSchema.fromBean(SignatureBucket.class)))
+                : null;
+        this.libraryStats = new LibraryStats(ddbClient, BookArchive.fromEnvironment(), tableName);
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @Override
+    public Void handleRequest(SNSEvent event, Context context) {
+        log.info("IndexNewBooks function started - Request ID: {}", context.getAwsRequestId());
+
+        RequestMetrics metrics = RequestMetrics.start("IndexNewBooks", context);
+        metrics.count("Records", event.getRecords().size());
+        try {
+            for (SNSEvent.SNSRecord record : event.getRecords()) {
+                SNSEvent.MessageAttribute userId = record.getSNS().getMessageAttributes() != null
+                        ? record.getSNS().getMessageAttributes().get("userId")
+                        : null;
+                if (userId == null) {
+                    log.warn("Book notification without userId, skipped: {}", record.getSNS().getMessageId());
+                    continue;
+                }
+                int bookId = objectMapper.readTree(record.getSNS().getMessage()).get("id").asInt();
+                index(userId.getValue(), bookId, metrics);
+            }
+        } catch (Exception e) {
+            log.error("Error indexing new books", e);
+            metrics.count("Errors", 1);
+            throw new RuntimeException("Failed to index new books", e);
+        } finally {
+            metrics.finish();
+        }
+        return null;
+    }
+
+    private void index(String userId, int bookId, RequestMetrics metrics) throws Exception {
+        Book book = metrics.time("Query", () -> bookTable.getItem(r -> r.key(Libraries.key(userId, bookId)).consistentRead(true)));
+        if (book == null) {
+            log.info("Book {} of user {} is no longer in the table", bookId, userId);
+        } else if (duplicateCheck != null) {
+            BookSignature signature = BookSignature.of(
+                    book.getNormalizedTitle() != null ? book.getNormalizedTitle() : SearchKeys.normalize(book.getTitle()),
+                    book.getNormalizedAuthor() != null ? book.getNormalizedAuthor() : SearchKeys.normalize(book.getAuthor()));
+            List<Map<String, Object>> duplicates = metrics.time("Query", () -> duplicateCheck.find(userId, bookId, signature));
+            metrics.time("Update", () -> {
+                for (String bucket : signature.buckets()) {
+                    SignatureBuckets.write(dynamoDbClient,
+                            SignatureBuckets.add(signatureTableName, userId, bucket, List.of(bookId)));
+                }
+                return null;
+            });
+            metrics.count("DuplicateCount", duplicates.size());
+            if (!duplicates.isEmpty()) {
+                metrics.time("Update", () -> flag(userId, bookId, duplicates));
+            }
+            log.info("Indexed book {} of user {} in {} buckets, with {} likely duplicates", bookId, userId,
+                    signature.buckets().size(), duplicates.size());
+        }
+
+        if (!libraryStats.catchUp(userId, metrics)) {
+            log.info("Reading statistics of user {} are missing or stale, left to the next reader", userId);
+        }
+    }
+
+    // Stored as the JSON array GET /books/{id} adds to the book; a book archived or gone meanwhile is left alone
+    private Void flag(String userId, int bookId, List<Map<String, Object>> duplicates) throws Exception {
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Libraries.itemKey(userId, bookId))
+                    .updateExpression("SET duplicates = :duplicates")
+                    .conditionExpression("attribute_exists(id)")
+                    .expressionAttributeValues(Map.of(
+                            ":duplicates", AttributeValue.fromS(objectMapper.writeValueAsString(duplicates))))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            log.info("Book {} of user {} is no longer in the table, its duplicates are not stored", bookId, userId);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+package books;
+
+import java.util.Set;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * The books of a library that share one band of their {@link BookSignature}, in the signature table. Only read
+ * here; IndexNewBooksHandler adds a created book to its buckets, see SignatureBuckets.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class SignatureBucket {
+    private String userId;
+    // Band and hash of its minimums, see BookSignature#buckets
+    private String bucket;
+    private Set<Integer> ids;
+    // Moved on by every change
+    private Long version;
+
+    @DynamoDbPartitionKey
+    public String getUserId() {
+        return userId;
+    }
+
+    @DynamoDbSortKey
+    public String getBucket() {
+        return bucket;
+    }
+}
@@ -0,0 +1,255 @@
+package books;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * The books of a library most like each other, kept on every book item as its {@value #ATTRIBUTE} list of at
+ * most {@value #TOP_K} neighbours, so that {@code GET /books/{id}/similar} reads one item instead of comparing the
+ * book with the whole library.
+ *
+ * A book is described by the words of its title, its author, its language and its format, each weighted by its
+ * inverse document frequency in the library: a shared author counts for much more than a shared language, and a
+ * rare title word for more than a common one. Two books are as similar as the cosine of their weight vectors.
+ * The document frequencies are either counted from the whole library ({@link #load}) or read from the feature
+ * index IndexSimilarBooksHandler keeps ({@link #of}), which then compares a new book with its candidates only.
+ */
+public final class BookSimilarity {
+
+    public static final String ATTRIBUTE = "similar";
+    public static final int TOP_K = 10;
+    // Attributes features are taken from, with the stored neighbours
+    public static final String PROJECTION = "id, title, author, normalizedTitle, normalizedAuthor, #language, #format, #similar";
+    public static final Map<String, String> PROJECTION_NAMES = Map.of(
+            "#language", "language",
+            "#format", "format",
+            "#similar", ATTRIBUTE);
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<Integer, Set<String>> features = new HashMap<>();
+    private final Map<Integer, List<Neighbour>> stored = new HashMap<>();
+    private final Map<String, Double> weights = new HashMap<>();
+    private final Map<Integer, Double> norms = new HashMap<>();
+
+    private BookSimilarity() {
+    }
+
+    /**
+     * Reads the features, and the stored neighbours, of every book of the library.
+     */
+    public static BookSimilarity load(DynamoDbClient dynamoDbClient, String tableName, String userId) throws IOException {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        dynamoDbClient.queryPaginator(QueryRequest.builder()
+                        .tableName(tableName)
+                        .keyConditionExpression("userId = :userId AND id > :counterId")
+                        .projectionExpression(PROJECTION)
+                        .expressionAttributeNames(PROJECTION_NAMES)
+                        .expressionAttributeValues(Map.of(
+                                ":userId", AttributeValue.fromS(userId),
+                                ":counterId", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                        .build())
+                .items()
+                .forEach(items::add);
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        for (Map<String, AttributeValue> item : items) {
+            features(item).forEach(feature -> documentFrequencies.merge(feature, 1, Integer::sum));
+        }
+        return of(items, documentFrequencies, items.size());
+    }
+
+    /**
+     * The given books, read with {@link #PROJECTION}, weighted by document frequencies in a library of
+     * {@code books} books. Only these books are compared with each other.
+     */
+    public static BookSimilarity of(List<Map<String, AttributeValue>> items, Map<String, Integer> documentFrequencies,
+                                    long books) throws IOException {
+        BookSimilarity library = new BookSimilarity();
+        for (Map<String, AttributeValue> item : items) {
+            int id = Integer.parseInt(item.get("id").n());
+            Set<String> bookFeatures = features(item);
+            library.features.put(id, bookFeatures);
+            if (item.get(ATTRIBUTE) != null) {
+                library.stored.put(id, fromJson(item.get(ATTRIBUTE).s()));
+            }
+        }
+        // Smoothed inverse document frequency, so that a feature every book has still weighs 1
+        library.features.values().forEach(bookFeatures -> bookFeatures.forEach(feature -> library.weights.computeIfAbsent(
+                feature, f -> Math.log((1.0 + books) / (1.0 + documentFrequencies.getOrDefault(f, 1))) + 1)));
+        library.features.forEach((id, bookFeatures) -> {
+            double sum = 0;
+            for (String feature : bookFeatures) {
+                sum += Math.pow(library.weights.get(feature), 2);
+            }
+            library.norms.put(id, Math.sqrt(sum));
+        });
+        return library;
+    }
+
+    // Title words, author, language and format, prefixed so that a word never matches an author or a language
+    static Set<String> features(Map<String, AttributeValue> item) {
+        Set<String> features = new HashSet<>();
+        String title = key(item, "normalizedTitle", "title");
+        if (title != null) {
+            for (String word : NON_WORD.split(title)) {
+                if (word.length() > 1) {
+                    features.add("t:" + word);
+                }
+            }
+        }
+        String author = key(item, "normalizedAuthor", "author");
+        if (author != null && !author.isEmpty()) {
+            features.add("a:" + author);
+        }
+        String language = key(item, null, "language");
+        if (language != null && !language.isEmpty()) {
+            features.add("l:" + language);
+        }
+        String format = key(item, null, "format");
+        if (format != null && !format.isEmpty()) {
+            features.add("f:" + format);
+        }
+        return features;
+    }
+
+    // Stored search key written by CreateBookHandler, normalized here for items created before it existed
+    private static String key(Map<String, AttributeValue> item, String normalized, String attribute) {
+        if (normalized != null && item.get(normalized) != null) {
+            return item.get(normalized).s();
+        }
+        return item.get(attribute) != null ? SearchKeys.normalize(item.get(attribute).s()) : null;
+    }
+
+    public boolean contains(int id) {
+        return features.containsKey(id);
+    }
+
+    public Set<Integer> ids() {
+        return features.keySet();
+    }
+
+    /**
+     * The neighbours stored on the book, or {@code null} when none were computed yet.
+     */
+    public List<Neighbour> stored(int id) {
+        return stored.get(id);
+    }
+
+    /**
+     * Cosine similarity of the two books' weight vectors, between 0 and 1.
+     */
+    public double score(int id, int other) {
+        double norm = norms.get(id) * norms.get(other);
+        if (norm == 0) {
+            return 0;
+        }
+        double dot = 0;
+        Set<String> otherFeatures = features.get(other);
+        for (String feature : features.get(id)) {
+            if (otherFeatures.contains(feature)) {
+                dot += Math.pow(weights.get(feature), 2);
+            }
+        }
+        return dot / norm;
+    }
+
+    /**
+     * The {@value #TOP_K} books most like the book, most similar first, leaving out books with nothing in common.
+     */
+    public List<Neighbour> nearest(int id) {
+        List<Neighbour> nearest = new ArrayList<>();
+        for (int other : features.keySet()) {
+            if (other != id) {
+                offer(nearest, other, score(id, other));
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Puts the book into the neighbours if it is among the {@value #TOP_K} most similar, replacing its earlier
+     * score, and tells whether the list changed.
+     */
+    public static boolean offer(List<Neighbour> neighbours, int id, double score) {
+        List<Neighbour> before = new ArrayList<>(neighbours);
+        neighbours.removeIf(neighbour -> neighbour.id == id);
+        // Three decimals are stored, and compared
+        double rounded = Math.round(score * 1000) / 1000.0;
+        if (rounded > 0) {
+            neighbours.add(new Neighbour(id, rounded));
+            neighbours.sort(Comparator.comparingDouble((Neighbour neighbour) -> -neighbour.score)
+                    .thenComparingInt(neighbour -> neighbour.id));
+            if (neighbours.size() > TOP_K) {
+                neighbours.remove(TOP_K);
+            }
+        }
+        return !neighbours.equals(before);
+    }
+
+    /**
+     * Stores the neighbours on the book, unless it left the table meanwhile.
+     */
+    public static void save(DynamoDbClient dynamoDbClient, String tableName, String userId, int id,
+                            List<Neighbour> neighbours) throws IOException {
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Libraries.itemKey(userId, id))
+                    .updateExpression("SET #similar = :similar")
+                    .conditionExpression("attribute_exists(id)")
+                    .expressionAttributeNames(Map.of("#similar", ATTRIBUTE))
+                    .expressionAttributeValues(Map.of(":similar", AttributeValue.fromS(toJson(neighbours))))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Archived or gone; there is nothing to keep the neighbours on
+        }
+    }
+
+    public static String toJson(List<Neighbour> neighbours) throws IOException {
+        return OBJECT_MAPPER.writeValueAsString(neighbours);
+    }
+
+    public static List<Neighbour> fromJson(String json) throws IOException {
+        return OBJECT_MAPPER.readValue(json, new TypeReference<List<Neighbour>>() {});
+    }
+
+    public static final class Neighbour {
+        public int id;
+        public double score;
+
+        public Neighbour() {
+        }
+
+        Neighbour(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Neighbour && ((Neighbour) other).id == id && ((Neighbour) other).score == score;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(id) * 31 + Double.hashCode(score);
+        }
+    }
+}
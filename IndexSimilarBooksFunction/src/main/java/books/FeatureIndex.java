@@ -0,0 +1,197 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * The {@link BookSimilarity} features of a library, in the feature table: one item per feature with its document
+ * frequency {@code df} and, for title words and authors, the {@code ids} of the books that have it, so that a new
+ * book is only compared with the books it shares one of those with. A feature of more than {@value #MAX_POSTINGS}
+ * books stops collecting ids; like a stop word, it weighs too little to make a book a neighbour on its own.
+ *
+ * Item {@value #LIBRARY} counts the library's books and holds {@code indexedTo}, the id up to which the books are
+ * in the index. Each new book indexes the books after it, which takes in imported books and, the first time, the
+ * whole library. A notification retried after a partial failure counts its book's features again; the counts only
+ * weigh features, so this barely moves the scores. Deleted and archived books are not taken out of the counts.
+ */
+final class FeatureIndex {
+
+    static final int MAX_POSTINGS = 500;
+
+    private static final String LIBRARY = "*";
+    private static final int BATCH_GET_SIZE = 100;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final String featureTableName;
+
+    FeatureIndex(DynamoDbClient dynamoDbClient, String tableName, String featureTableName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.featureTableName = featureTableName;
+    }
+
+    /**
+     * Adds the books after {@code indexedTo} to the index, and returns the number of books in the library.
+     */
+    long catchUp(String userId) {
+        Map<String, AttributeValue> library = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(featureTableName)
+                .key(featureKey(userId, LIBRARY))
+                .consistentRead(true)
+                .build()).item();
+        int indexedTo = library != null && library.get("indexedTo") != null
+                ? Integer.parseInt(library.get("indexedTo").n())
+                : Libraries.COUNTER_ID;
+        long books = library != null && library.get("books") != null ? Long.parseLong(library.get("books").n()) : 0;
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        dynamoDbClient.queryPaginator(QueryRequest.builder()
+                        .tableName(tableName)
+                        .keyConditionExpression("userId = :userId AND id > :indexedTo")
+                        .projectionExpression(BookSimilarity.PROJECTION)
+                        .expressionAttributeNames(BookSimilarity.PROJECTION_NAMES)
+                        .expressionAttributeValues(Map.of(
+                                ":userId", AttributeValue.fromS(userId),
+                                ":indexedTo", AttributeValue.fromN(String.valueOf(indexedTo))))
+                        .build())
+                .items()
+                .forEach(items::add);
+        if (items.isEmpty()) {
+            return books;
+        }
+
+        Map<String, Set<Integer>> postings = new HashMap<>();
+        int last = indexedTo;
+        for (Map<String, AttributeValue> item : items) {
+            int id = Integer.parseInt(item.get("id").n());
+            BookSimilarity.features(item).forEach(feature -> postings.computeIfAbsent(feature, f -> new HashSet<>()).add(id));
+            last = Math.max(last, id);
+        }
+        postings.forEach((feature, ids) -> add(userId, feature, ids));
+
+        // indexedTo only moves forward, in case a later book's notification got here first
+        Map<String, AttributeValue> values = Map.of(
+                ":books", AttributeValue.fromN(String.valueOf(items.size())),
+                ":last", AttributeValue.fromN(String.valueOf(last)));
+        try {
+            return Long.parseLong(dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(featureTableName)
+                    .key(featureKey(userId, LIBRARY))
+                    .updateExpression("ADD books :books SET indexedTo = :last")
+                    .conditionExpression("attribute_not_exists(indexedTo) OR indexedTo < :last")
+                    .expressionAttributeValues(values)
+                    .returnValues(ReturnValue.UPDATED_NEW)
+                    .build()).attributes().get("books").n());
+        } catch (ConditionalCheckFailedException e) {
+            return Long.parseLong(dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(featureTableName)
+                    .key(featureKey(userId, LIBRARY))
+                    .updateExpression("ADD books :books")
+                    .expressionAttributeValues(Map.of(":books", values.get(":books")))
+                    .returnValues(ReturnValue.UPDATED_NEW)
+                    .build()).attributes().get("books").n());
+        }
+    }
+
+    // Counts the books, and lists them while the feature is rare enough to collect ids
+    private void add(String userId, String feature, Set<Integer> ids) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":df", AttributeValue.fromN(String.valueOf(ids.size())));
+        if (collectsIds(feature)) {
+            values.put(":ids", AttributeValue.fromNs(ids.stream().map(String::valueOf).collect(Collectors.toList())));
+            values.put(":max", AttributeValue.fromN(String.valueOf(MAX_POSTINGS)));
+            try {
+                dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                        .tableName(featureTableName)
+                        .key(featureKey(userId, feature))
+                        .updateExpression("ADD df :df, ids :ids")
+                        .conditionExpression("attribute_not_exists(df) OR df < :max")
+                        .expressionAttributeValues(values)
+                        .build());
+                return;
+            } catch (ConditionalCheckFailedException e) {
+                values.remove(":ids");
+                values.remove(":max");
+            }
+        }
+        dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(featureTableName)
+                .key(featureKey(userId, feature))
+                .updateExpression("ADD df :df")
+                .expressionAttributeValues(values)
+                .build());
+    }
+
+    // Nearly every book shares a language or a format with many others, so those only count
+    private static boolean collectsIds(String feature) {
+        return feature.startsWith("t:") || feature.startsWith("a:");
+    }
+
+    /**
+     * The document frequencies of the features; features not in the index yet are left out.
+     */
+    Map<String, Integer> documentFrequencies(String userId, Set<String> features) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Map<String, AttributeValue> item : read(userId, features, "feature, df")) {
+            frequencies.put(item.get("feature").s(), Integer.parseInt(item.get("df").n()));
+        }
+        return frequencies;
+    }
+
+    /**
+     * The books that share a title word or the author with a book of these features, without the features
+     * too common to collect ids.
+     */
+    Set<Integer> candidates(String userId, Set<String> features) {
+        Set<String> collecting = features.stream().filter(FeatureIndex::collectsIds).collect(Collectors.toSet());
+        Set<Integer> candidates = new HashSet<>();
+        for (Map<String, AttributeValue> item : read(userId, collecting, "df, ids")) {
+            if (item.get("ids") != null && Integer.parseInt(item.get("df").n()) <= MAX_POSTINGS) {
+                item.get("ids").ns().forEach(id -> candidates.add(Integer.parseInt(id)));
+            }
+        }
+        return candidates;
+    }
+
+    private List<Map<String, AttributeValue>> read(String userId, Set<String> features, String projection) {
+        List<Map<String, AttributeValue>> keys = features.stream()
+                .map(feature -> featureKey(userId, feature))
+                .collect(Collectors.toList());
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start += BATCH_GET_SIZE) {
+            Map<String, KeysAndAttributes> request = Map.of(featureTableName, KeysAndAttributes.builder()
+                    .keys(keys.subList(start, Math.min(start + BATCH_GET_SIZE, keys.size())))
+                    .projectionExpression(projection)
+                    .build());
+            while (!request.isEmpty()) {
+                BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                        .requestItems(request)
+                        .build());
+                items.addAll(response.responses().getOrDefault(featureTableName, List.of()));
+                request = response.unprocessedKeys();
+            }
+        }
+        return items;
+    }
+
+    private static Map<String, AttributeValue> featureKey(String userId, String feature) {
+        return Map.of("userId", AttributeValue.fromS(userId), "feature", AttributeValue.fromS(feature));
+    }
+}
@@ -0,0 +1,209 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Keeps the {@link BookSimilarity} neighbours of a library up to date as books are created. It receives the
+ * book notifications that BookOutboxPublisher sends to SNS, adds the new book to the library's
+ * {@link FeatureIndex}, stores the new book's nearest neighbours on it, and adds the new book to the neighbours
+ * of every book it is now among the most similar to. Only the books that share a title word or the author with
+ * the new book are read and compared, weighted by the document frequencies of the index, so a create costs a few
+ * keyed reads however large the library is.
+ *
+ * Books whose neighbours were never computed, because they were imported or predate this function, are left
+ * to {@code GET /books/{id}/similar}, which computes them on first use. A neighbour list is only replaced if it
+ * is still the one read, so invocations for different books can run at once; notifications delivered twice
+ * store the same lists again. Failures are thrown, so that Lambda retries the notification and then sends it to
+ * the dead-letter queue.
+ */
+@Slf4j
+public class IndexSimilarBooksHandler implements RequestHandler<SNSEvent, Void> {
+
+    private static final int BATCH_GET_SIZE = 100;
+    // Attempts at replacing a neighbour list that other invocations keep changing
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+    private final FeatureIndex featureIndex;
+
+    public IndexSimilarBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public IndexSimilarBooksHandler(DynamoDbClient ddbClient) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.dynamoDbClient = ddbClient;
+        this.objectMapper = new ObjectMapper();
+        this.featureIndex = new FeatureIndex(ddbClient, tableName, System.getenv("FEATURE_TABLE_NAME"));
+    }
+
+    @Override
+    public Void handleRequest(SNSEvent event, Context context) {
+        log.info("IndexSimilarBooks function started - Request ID: {}", context.getAwsRequestId());
+
+        RequestMetrics metrics = RequestMetrics.start("IndexSimilarBooks", context);
+        metrics.count("Records", event.getRecords().size());
+        try {
+            for (SNSEvent.SNSRecord record : event.getRecords()) {
+                SNSEvent.MessageAttribute userId = record.getSNS().getMessageAttributes() != null
+                        ? record.getSNS().getMessageAttributes().get("userId")
+                        : null;
+                if (userId == null) {
+                    log.warn("Book notification without userId, skipped: {}", record.getSNS().getMessageId());
+                    continue;
+                }
+                int bookId = objectMapper.readTree(record.getSNS().getMessage()).get("id").asInt();
+                index(userId.getValue(), bookId, metrics);
+            }
+        } catch (Exception e) {
+            log.error("Error indexing similar books", e);
+            metrics.count("Errors", 1);
+            throw new RuntimeException("Failed to index similar books", e);
+        } finally {
+            metrics.finish();
+        }
+        return null;
+    }
+
+    private void index(String userId, int bookId, RequestMetrics metrics) throws Exception {
+        long books = metrics.time("Update", () -> featureIndex.catchUp(userId));
+        Map<String, AttributeValue> book = metrics.time("Query", () -> dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Libraries.itemKey(userId, bookId))
+                .projectionExpression(BookSimilarity.PROJECTION)
+                .expressionAttributeNames(BookSimilarity.PROJECTION_NAMES)
+                .consistentRead(true)
+                .build()).item());
+        if (book == null || book.isEmpty()) {
+            log.info("Book {} of user {} is no longer in the table", bookId, userId);
+            return;
+        }
+
+        Set<Integer> candidates = metrics.time("Query", () -> featureIndex.candidates(userId, BookSimilarity.features(book)));
+        candidates.remove(bookId);
+        List<Map<String, AttributeValue>> items = metrics.time("Query", () -> books(userId, candidates));
+        items.add(book);
+        Set<String> features = new HashSet<>();
+        items.forEach(item -> features.addAll(BookSimilarity.features(item)));
+        Map<String, Integer> documentFrequencies = metrics.time("Query", () -> featureIndex.documentFrequencies(userId, features));
+        BookSimilarity library = metrics.time("Mapping", () -> BookSimilarity.of(items, documentFrequencies, books));
+
+        List<BookSimilarity.Neighbour> nearest = metrics.time("Mapping", () -> library.nearest(bookId));
+        metrics.time("Update", () -> {
+            BookSimilarity.save(dynamoDbClient, tableName, userId, bookId, nearest);
+            return null;
+        });
+
+        Map<Integer, String> storedJson = new HashMap<>();
+        for (Map<String, AttributeValue> item : items) {
+            if (item.get(BookSimilarity.ATTRIBUTE) != null) {
+                storedJson.put(Integer.parseInt(item.get("id").n()), item.get(BookSimilarity.ATTRIBUTE).s());
+            }
+        }
+        int updated = 0;
+        for (int id : library.ids()) {
+            if (id == bookId || !storedJson.containsKey(id)) {
+                continue;
+            }
+            double score = library.score(id, bookId);
+            if (metrics.time("Update", () -> offer(userId, id, storedJson.get(id), bookId, score))) {
+                updated++;
+            }
+        }
+        metrics.count("ItemCount", library.ids().size());
+        metrics.count("UpdatedItemCount", updated + 1);
+        log.info("Indexed book {} of user {}: {} neighbours among {} candidates, added to the neighbours of {} books",
+                bookId, userId, nearest.size(), candidates.size(), updated);
+    }
+
+    /**
+     * Puts the new book into the stored neighbours of another, if it is among its nearest. The list is replaced
+     * only if it is still the one read, and read again otherwise.
+     */
+    private boolean offer(String userId, int id, String json, int bookId, double score) throws Exception {
+        for (int attempt = 1; json != null; attempt++) {
+            List<BookSimilarity.Neighbour> neighbours = BookSimilarity.fromJson(json);
+            if (!BookSimilarity.offer(neighbours, bookId, score)) {
+                return false;
+            }
+            try {
+                dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                        .tableName(tableName)
+                        .key(Libraries.itemKey(userId, id))
+                        .updateExpression("SET #similar = :similar")
+                        .conditionExpression("#similar = :read")
+                        .expressionAttributeNames(Map.of("#similar", BookSimilarity.ATTRIBUTE))
+                        .expressionAttributeValues(Map.of(
+                                ":similar", AttributeValue.fromS(BookSimilarity.toJson(neighbours)),
+                                ":read", AttributeValue.fromS(json)))
+                        .build());
+                return true;
+            } catch (ConditionalCheckFailedException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                Map<String, AttributeValue> item = dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(tableName)
+                        .key(Libraries.itemKey(userId, id))
+                        .projectionExpression("#similar")
+                        .expressionAttributeNames(Map.of("#similar", BookSimilarity.ATTRIBUTE))
+                        .consistentRead(true)
+                        .build()).item();
+                // Archived or gone meanwhile
+                json = item != null && item.get(BookSimilarity.ATTRIBUTE) != null ? item.get(BookSimilarity.ATTRIBUTE).s() : null;
+            }
+        }
+        return false;
+    }
+
+    // The candidates with their features and stored neighbours; books archived since they were indexed are missing
+    private List<Map<String, AttributeValue>> books(String userId, Set<Integer> ids) {
+        List<Map<String, AttributeValue>> keys = ids.stream()
+                .map(id -> Libraries.itemKey(userId, id))
+                .collect(Collectors.toList());
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start += BATCH_GET_SIZE) {
+            Map<String, KeysAndAttributes> request = Map.of(tableName, KeysAndAttributes.builder()
+                    .keys(keys.subList(start, Math.min(start + BATCH_GET_SIZE, keys.size())))
+                    .projectionExpression(BookSimilarity.PROJECTION)
+                    .expressionAttributeNames(BookSimilarity.PROJECTION_NAMES)
+                    .build());
+            while (!request.isEmpty()) {
+                BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                        .requestItems(request)
+                        .build());
+                items.addAll(response.responses().getOrDefault(tableName, List.of()));
+                request = response.unprocessedKeys();
+            }
+        }
+        return items;
+    }
+}
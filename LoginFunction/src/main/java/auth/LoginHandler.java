@@ -7,6 +7,7 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -25,7 +26,9 @@ public class LoginHandler implements RequestHandler<APIGatewayProxyRequestEvent,
     private final String clientId;
 
     public LoginHandler() {
-        this.cognitoClient = CognitoIdentityProviderClient.builder().build();
+        this.cognitoClient = CognitoIdentityProviderClient.builder()
+                .overrideConfiguration(o -> o.addExecutionInterceptor(new TracingInterceptor()))
+                .build();
         this.objectMapper = new ObjectMapper();
         this.userPoolId = System.getenv("USER_POOL_ID");
         this.clientId = System.getenv("USER_POOL_CLIENT_ID");
@@ -39,6 +42,7 @@ public class LoginHandler implements RequestHandler<APIGatewayProxyRequestEvent,
         headers.put("Content-Type", "application/json");
         headers.put("Access-Control-Allow-Origin", "*");
 
+        RequestMetrics metrics = RequestMetrics.start("Login", context);
         try {
             // Parse request body
             JsonNode requestBody = objectMapper.readTree(input.getBody());
@@ -59,7 +63,7 @@ public class LoginHandler implements RequestHandler<APIGatewayProxyRequestEvent,
                     .authParameters(authParams)
                     .build();
 
-            AdminInitiateAuthResponse authResponse = cognitoClient.adminInitiateAuth(authRequest);
+            AdminInitiateAuthResponse authResponse = metrics.time("Cognito", () -> cognitoClient.adminInitiateAuth(authRequest));
 
             String accessToken = authResponse.authenticationResult().accessToken();
             String idToken = authResponse.authenticationResult().idToken();
@@ -71,20 +75,20 @@ public class LoginHandler implements RequestHandler<APIGatewayProxyRequestEvent,
                 accessToken, idToken
             );
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(response);
+                    .withBody(response));
                     
         } catch (Exception e) {
             log.error("Error during login", e);
             
             String errorResponse = "{\"error\": \"Login failed\", \"message\": \"Invalid credentials\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(401)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
 }
\ No newline at end of file
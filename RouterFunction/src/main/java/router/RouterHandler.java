@@ -0,0 +1,170 @@
+package router;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+
+import books.ApiGateway;
+import books.CreateBookHandler;
+import books.ExportBooksHandler;
+import books.GetAllBooksHandler;
+import books.GetBookByIdHandler;
+import books.GetBookCalendarHandler;
+import books.GetBookStatsHandler;
+import books.GetBooksCountByYearHandler;
+import books.GetBooksCountHandler;
+import books.GetDashboardHandler;
+import books.GetSimilarBooksHandler;
+import books.GetTopBooksHandler;
+import books.SearchBooksByAuthorHandler;
+import books.SearchBooksByReadYearHandler;
+import books.SearchBooksByTitleHandler;
+import books.SuggestBooksHandler;
+import books.UpdateBookHandler;
+import lombok.extern.slf4j.Slf4j;
+import search.SearchBooksHandler;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * Single function serving every book endpoint, as an alternative to the one-function-per-endpoint deployment.
+ *
+ * Requests are dispatched on {@code httpMethod} and {@code resource} to the unchanged handlers of the
+ * function modules, which all share the DynamoDB client created here; a handler is only constructed on the first
+ * request of its endpoint. Behind a {@code /{proxy+}} resource the request path is matched instead and the
+ * path parameters are filled in from it. Behind an HTTP API, {@code handleHttpRequest} takes the version 2.0
+ * payload and routes it the same way. Metrics keep the per-endpoint function names, so both deployments
+ * show up side by side.
+ */
+@Slf4j
+public class RouterHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> handlers =
+            new ConcurrentHashMap<>();
+
+    public RouterHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new books.DynamoDbMetricsInterceptor())
+                        .addExecutionInterceptor(new search.DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public RouterHandler(DynamoDbClient dynamoDbClient) {
+        // Literal resources before /books/{id}, so that /books/count is not taken for a book id
+        route("GET", "/books", () -> new GetAllBooksHandler(dynamoDbClient));
+        route("POST", "/books", () -> new CreateBookHandler(dynamoDbClient));
+        route("GET", "/books/export", () -> new ExportBooksHandler(dynamoDbClient));
+        route("GET", "/books/count", () -> new GetBooksCountHandler(dynamoDbClient));
+        route("GET", "/books/count/year", () -> new GetBooksCountByYearHandler(dynamoDbClient));
+        route("GET", "/books/stats", () -> new GetBookStatsHandler(dynamoDbClient));
+        route("GET", "/books/top", () -> new GetTopBooksHandler(dynamoDbClient));
+        route("GET", "/books/calendar", () -> new GetBookCalendarHandler(dynamoDbClient));
+        route("GET", "/books/suggest", () -> new SuggestBooksHandler(dynamoDbClient));
+        route("GET", "/books/search/title", () -> new SearchBooksByTitleHandler(dynamoDbClient));
+        route("GET", "/books/search/author", () -> new SearchBooksByAuthorHandler(dynamoDbClient));
+        route("GET", "/books/search/year", () -> new SearchBooksByReadYearHandler(dynamoDbClient));
+        route("GET", "/books/{id}", () -> new GetBookByIdHandler(dynamoDbClient));
+        route("PATCH", "/books/{id}", () -> new UpdateBookHandler(dynamoDbClient));
+        route("GET", "/books/{id}/similar", () -> new GetSimilarBooksHandler(dynamoDbClient));
+        route("GET", "/search", () -> new SearchBooksHandler(dynamoDbClient));
+        route("GET", "/dashboard", () -> new GetDashboardHandler(dynamoDbClient));
+    }
+
+    /**
+     * Entry point behind the HTTP API; routes on the converted event like behind the REST API.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        String method = input.getHttpMethod();
+        String resource = input.getResource();
+        String path = input.getPath() != null ? input.getPath() : resource;
+
+        for (Route route : routes) {
+            // CORS preflights go to the handler of the resource, which answers them itself
+            if (!route.method.equals(method) && !"OPTIONS".equals(method)) {
+                continue;
+            }
+            if (route.resource.equals(resource)) {
+                return handler(route).handleRequest(input, context);
+            }
+            Matcher matcher = path != null ? route.pattern.matcher(path) : null;
+            if (matcher != null && matcher.matches()) {
+                input.setResource(route.resource);
+                input.setPathParameters(pathParameters(route, matcher));
+                return handler(route).handleRequest(input, context);
+            }
+        }
+
+        log.info("No route for {} {}", method, path);
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(404)
+                .withHeaders(ApiGateway.JSON_HEADERS)
+                .withBody("{\"error\": \"Not found\"}");
+    }
+
+    private void route(String method, String resource,
+                       Supplier<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> factory) {
+        routes.add(new Route(method, resource, factory));
+    }
+
+    private RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler(Route route) {
+        return handlers.computeIfAbsent(route.method + " " + route.resource, key -> route.factory.get());
+    }
+
+    private static Map<String, String> pathParameters(Route route, Matcher matcher) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String name : route.parameterNames) {
+            parameters.put(name, matcher.group(name));
+        }
+        return parameters.isEmpty() ? null : parameters;
+    }
+
+    private static final class Route {
+        private static final Pattern PARAMETER = Pattern.compile("\\{(\\w+)\\}");
+
+        private final String method;
+        private final String resource;
+        private final Supplier<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> factory;
+        private final List<String> parameterNames = new ArrayList<>();
+        private final Pattern pattern;
+
+        private Route(String method, String resource,
+                      Supplier<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> factory) {
+            this.method = method;
+            this.resource = resource;
+            this.factory = factory;
+
+            // /books/{id} becomes /books/(?<id>[^/]+)
+            StringBuilder regex = new StringBuilder();
+            Matcher parameter = PARAMETER.matcher(resource);
+            int last = 0;
+            while (parameter.find()) {
+                regex.append(Pattern.quote(resource.substring(last, parameter.start())))
+                        .append("(?<").append(parameter.group(1)).append(">[^/]+)");
+                parameterNames.add(parameter.group(1));
+                last = parameter.end();
+            }
+            regex.append(Pattern.quote(resource.substring(last))).append("/?");
+            this.pattern = Pattern.compile(regex.toString());
+        }
+    }
+}
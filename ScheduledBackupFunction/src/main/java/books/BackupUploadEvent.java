@@ -0,0 +1,35 @@
+package books;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the upload of a backup file to S3.
+ */
+@Name("awsbooks.BackupUpload")
+@Label("Backup Upload")
+@Category("AwsBooks")
+public class BackupUploadEvent extends Event {
+
+    @Label("Bucket")
+    String bucket;
+
+    @Label("Key")
+    String key;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    public static BackupUploadEvent start(String bucket, String key, long size) {
+        BackupUploadEvent event = new BackupUploadEvent();
+        event.bucket = bucket;
+        event.key = key;
+        event.size = size;
+        event.begin();
+        return event;
+    }
+}
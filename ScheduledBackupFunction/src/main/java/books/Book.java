@@ -5,12 +5,14 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @DynamoDbBean
 public class Book {
+    private String userId;
     private Integer id;
     private String title;
     private String author;
@@ -21,7 +23,13 @@ public class Book {
     private String format;
     private String language;
 
+    // Cognito sub of the library's owner; ids are per library
     @DynamoDbPartitionKey
+    public String getUserId() {
+        return userId;
+    }
+
+    @DynamoDbSortKey
     public Integer getId() {
         return id;
     }
@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -16,6 +17,9 @@ import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.handlers.TracingHandler;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
@@ -34,13 +38,18 @@ public class ScheduledBackupHandler implements RequestHandler<ScheduledEvent, Vo
         this.tableName = System.getenv("TABLE_NAME");
         this.bucketName = System.getenv("BACKUP_BUCKET_NAME");
         
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
+        DynamoDbClient ddbClient = DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build();
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
         this.bookTable = enhancedClient.table(tableName, TableSchema.fromBean(Book.class));
         this.s3Client = AmazonS3ClientBuilder.standard()
                 .withRegion(Regions.EU_CENTRAL_1)
+                .withRequestHandlers(new TracingHandler(AWSXRay.getGlobalRecorder()))
                 .build();
     }
 
@@ -48,21 +57,27 @@ public class ScheduledBackupHandler implements RequestHandler<ScheduledEvent, Vo
     public Void handleRequest(ScheduledEvent event, Context context) {
         log.info("ScheduledBackup function started - Request ID: {}", context.getAwsRequestId());
         
+        RequestMetrics metrics = RequestMetrics.start("ScheduledBackup", context);
         try {
-            // Scan all books ordered by ID
-            List<Book> books = bookTable.scan()
+            // Scan all libraries, ordered by owner and ID, leaving out their counters
+            BookScanEvent scanEvent = BookScanEvent.start("ScheduledBackup");
+            List<Book> books = metrics.time("Scan", () -> bookTable.scan()
                     .items()
                     .stream()
-                    .sorted((b1, b2) -> Integer.compare(b1.getId(), b2.getId()))
-                    .collect(Collectors.toList());
+                    .filter(book -> book.getId() > Libraries.COUNTER_ID)
+                    .sorted(Comparator.comparing(Book::getUserId).thenComparing(Book::getId))
+                    .collect(Collectors.toList()));
+            scanEvent.end(books.size());
             
             log.info("Found {} books to backup", books.size());
+            metrics.count("ItemCount", books.size());
             
             // Create backup content in CSV format
+            SerializationEvent serializationEvent = SerializationEvent.start("ScheduledBackup");
             StringBuilder backupContent = new StringBuilder();
             
             // Header row
-            backupContent.append("id;title;author;publicationYear;language;format;finishDate;readYear;readingTimeInDays\n");
+            backupContent.append("id;title;author;publicationYear;language;format;finishDate;readYear;readingTimeInDays;userId\n");
             
             // Data rows
             for (Book book : books) {
@@ -74,8 +89,10 @@ public class ScheduledBackupHandler implements RequestHandler<ScheduledEvent, Vo
                             .append(book.getFormat() != null ? book.getFormat() : "").append(";")
                             .append(book.getFinishDate() != null ? book.getFinishDate() : "").append(";")
                             .append(book.getReadYear()).append(";")
-                            .append(book.getReadingTimeInDays()).append("\n");
+                            .append(book.getReadingTimeInDays()).append(";")
+                            .append(book.getUserId()).append("\n");
             }
+            serializationEvent.end(backupContent.length());
             
             // Generate filename with scheduled backup format
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
@@ -83,17 +100,23 @@ public class ScheduledBackupHandler implements RequestHandler<ScheduledEvent, Vo
             
             // Upload to S3
             byte[] contentBytes = backupContent.toString().getBytes("UTF-8");
+            metrics.bytes("BackupSize", contentBytes.length);
             InputStream contentStream = new ByteArrayInputStream(contentBytes);
             
             PutObjectRequest putRequest = new PutObjectRequest(bucketName, fileName, contentStream, null);
             
-            s3Client.putObject(putRequest);
+            BackupUploadEvent uploadEvent = BackupUploadEvent.start(bucketName, fileName, contentBytes.length);
+            metrics.time("S3", () -> s3Client.putObject(putRequest));
+            uploadEvent.commit();
             
             log.info("Scheduled backup successfully uploaded to S3: s3://{}/{}", bucketName, fileName);
             
         } catch (Exception e) {
             log.error("Error creating scheduled backup", e);
+            metrics.count("Errors", 1);
             throw new RuntimeException("Failed to create scheduled backup", e);
+        } finally {
+            metrics.finish();
         }
         
         return null;
@@ -0,0 +1,35 @@
+package books;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the rendering of a response or backup body, with its size.
+ */
+@Name("awsbooks.Serialization")
+@Label("Serialization")
+@Category("AwsBooks")
+public class SerializationEvent extends Event {
+
+    @Label("Function")
+    String function;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    public static SerializationEvent start(String function) {
+        SerializationEvent event = new SerializationEvent();
+        event.function = function;
+        event.begin();
+        return event;
+    }
+
+    public void end(long length) {
+        this.size = length;
+        commit();
+    }
+}
@@ -1,22 +1,32 @@
 package books;
 
-import java.time.LocalDate;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.stream.Collectors;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 @Slf4j
 public class SearchBooksByAuthorHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
@@ -24,11 +34,24 @@ public class SearchBooksByAuthorHandler implements RequestHandler<APIGatewayProx
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<Book> bookTable;
     private final ObjectMapper objectMapper;
+    private final BookJsonWriter bookJsonWriter;
+    private final BookArchive archive;
     private final String tableName;
 
     public SearchBooksByAuthorHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public SearchBooksByAuthorHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public SearchBooksByAuthorHandler(DynamoDbClient ddbClient, BookArchive archive) {
         this.tableName = System.getenv("TABLE_NAME");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
@@ -36,17 +59,22 @@ public class SearchBooksByAuthorHandler implements RequestHandler<APIGatewayProx
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
         this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.bookJsonWriter = new BookJsonWriter(objectMapper.getFactory());
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("SearchBooksByAuthor function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
         
         // Handle OPTIONS request for CORS preflight
         if ("OPTIONS".equals(input.getHttpMethod())) {
@@ -56,60 +84,99 @@ public class SearchBooksByAuthorHandler implements RequestHandler<APIGatewayProx
                     .withBody("");
         }
 
+        RequestMetrics metrics = RequestMetrics.start("SearchBooksByAuthor", context);
         try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
             String authorQuery = input.getQueryStringParameters() != null ? 
                 input.getQueryStringParameters().get("author") : null;
                 
-            if (authorQuery == null || authorQuery.trim().isEmpty()) {
-                return new APIGatewayProxyResponseEvent()
+            if (authorQuery == null || SearchKeys.normalize(authorQuery).isEmpty()) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
                         .withStatusCode(400)
                         .withHeaders(headers)
-                        .withBody("{\"error\": \"Author parameter is required\"}");
+                        .withBody("{\"error\": \"Author parameter is required\"}"));
             }
             
             log.info("Searching books by author: {}", authorQuery);
             
-            List<BookResponse> books = bookTable.scan()
+            String normalizedQuery = SearchKeys.normalize(authorQuery);
+            
+            // Match against the stored search key in DynamoDB; items written before the key existed
+            // are returned as well and checked here
+            Expression filter = Expression.builder()
+                    .expression("contains(#normalizedAuthor, :author) OR attribute_not_exists(#normalizedAuthor)")
+                    .putExpressionName("#normalizedAuthor", "normalizedAuthor")
+                    .putExpressionValue(":author", AttributeValue.builder().s(normalizedQuery).build())
+                    .build();
+            
+            BookScanEvent scanEvent = BookScanEvent.start("SearchBooksByAuthor");
+            List<Book> items = metrics.time("Query", () -> bookTable.query(QueryEnhancedRequest.builder()
+                            .queryConditional(Libraries.books(userId))
+                            .filterExpression(filter)
+                            .build())
                     .items()
                     .stream()
-                    .filter(book -> book.getAuthor() != null && 
-                           book.getAuthor().toLowerCase().contains(authorQuery.toLowerCase()))
-                    .map(this::convertToBookResponse)
+                    .collect(Collectors.toList()));
+            scanEvent.end(items.size());
+            
+            List<Book> books = metrics.time("Mapping", () -> items.stream()
+                    .filter(book -> book.getNormalizedAuthor() != null || 
+                           (book.getAuthor() != null && SearchKeys.normalize(book.getAuthor()).contains(normalizedQuery)))
                     .sorted((b1, b2) -> b1.getTitle().compareToIgnoreCase(b2.getTitle()))
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toList()));
+            SortedMap<Integer, String> archived = metrics.time("Archive", () -> archive.books(userId));
+            List<String> matches = metrics.time("Mapping", () -> merge(books, archived, normalizedQuery));
+            metrics.count("ItemCount", matches.size());
             
-            log.info("Found {} books by author: {}", books.size(), authorQuery);
+            log.info("Found {} books by author: {}", matches.size(), authorQuery);
             
-            String jsonResponse = objectMapper.writeValueAsString(books);
+            SerializationEvent serializationEvent = SerializationEvent.start("SearchBooksByAuthor");
+            String jsonResponse = metrics.time("Serialization", () -> "[" + String.join(",", matches) + "]");
+            serializationEvent.end(jsonResponse.length());
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(jsonResponse);
+                    .withBody(jsonResponse));
                     
         } catch (Exception e) {
             log.error("Error searching books by author", e);
             
             String errorResponse = "{\"error\": \"Failed to search books\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
-    
-    private BookResponse convertToBookResponse(Book book) {
-        BookResponse response = new BookResponse();
-        response.setId(book.getId());
-        response.setTitle(book.getTitle());
-        response.setAuthor(book.getAuthor());
-        response.setPublicationYear(book.getPublicationYear());
-        response.setLanguage(book.getLanguage());
-        response.setFormat(book.getFormat());
-        response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
-        response.setReadYear(book.getReadYear());
-        response.setReadingTimeInDays(book.getReadingTimeInDays());
-        return response;
+
+    /**
+     * The matching books of the table and of the {@link BookArchive}, by title, as pre-rendered JSON. A book still
+     * in the table wins over its archived copy.
+     */
+    private List<String> merge(List<Book> books, SortedMap<Integer, String> archived, String normalizedQuery)
+            throws IOException {
+        List<Map.Entry<String, String>> matches = new ArrayList<>();
+        Set<Integer> hot = new HashSet<>();
+        for (Book book : books) {
+            hot.add(book.getId());
+            matches.add(Map.entry(book.getTitle(), bookJsonWriter.write(book)));
+        }
+        for (Map.Entry<Integer, String> entry : archived.entrySet()) {
+            JsonNode book = objectMapper.readTree(entry.getValue());
+            if (!hot.contains(entry.getKey()) && SearchKeys.normalize(book.path("author").asText()).contains(normalizedQuery)) {
+                matches.add(Map.entry(book.path("title").asText(), entry.getValue()));
+            }
+        }
+        matches.sort((m1, m2) -> m1.getKey().compareToIgnoreCase(m2.getKey()));
+        return matches.stream().map(Map.Entry::getValue).collect(Collectors.toList());
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package books;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+
+/**
+ * What the API handlers share about API Gateway: the response headers, and the conversion between the two
+ * payload formats.
+ *
+ * The handlers are written against the REST API event. Behind the HTTP API, which sends the smaller version 2.0
+ * payload, their {@code handleHttpRequest} entry point converts the event with {@link #fromHttpApi} and the
+ * response with {@link #toHttpApi}. The claims of the HTTP API's JWT authorizer end up where the REST API's
+ * Cognito authorizer puts them, so {@link Libraries#userId} reads both.
+ */
+public final class ApiGateway {
+
+    /** Headers of every JSON response; the CORS headers are for the REST API, the HTTP API sets its own. */
+    public static final Map<String, String> JSON_HEADERS = Map.of(
+            "Content-Type", "application/json",
+            "Access-Control-Allow-Origin", "*",
+            "Access-Control-Allow-Methods", "GET, POST, PUT, PATCH, DELETE, OPTIONS",
+            "Access-Control-Allow-Headers", "Content-Type, Authorization");
+
+    private ApiGateway() {
+    }
+
+    public static APIGatewayProxyRequestEvent fromHttpApi(APIGatewayV2HTTPEvent event) {
+        APIGatewayV2HTTPEvent.RequestContext context = event.getRequestContext();
+        APIGatewayProxyRequestEvent.ProxyRequestContext proxyContext = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        String method = null;
+        if (context != null) {
+            proxyContext.setRequestId(context.getRequestId());
+            proxyContext.setStage(context.getStage());
+            if (context.getHttp() != null) {
+                method = context.getHttp().getMethod();
+            }
+            if (context.getAuthorizer() != null && context.getAuthorizer().getJwt() != null
+                    && context.getAuthorizer().getJwt().getClaims() != null) {
+                proxyContext.setAuthorizer(Map.of("claims", context.getAuthorizer().getJwt().getClaims()));
+            }
+        }
+
+        // The route key, "GET /books/{id}", names the resource; the $default route has none
+        String routeKey = event.getRouteKey();
+        int space = routeKey != null ? routeKey.indexOf(' ') : -1;
+        String resource = space > 0 ? routeKey.substring(space + 1) : null;
+
+        String body = event.getBody();
+        if (body != null && event.getIsBase64Encoded()) {
+            body = new String(Base64.getDecoder().decode(body), StandardCharsets.UTF_8);
+        }
+
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withResource(resource)
+                .withPath(event.getRawPath())
+                .withHeaders(event.getHeaders())
+                .withQueryStringParameters(event.getQueryStringParameters())
+                .withPathParameters(event.getPathParameters())
+                .withBody(body)
+                .withIsBase64Encoded(false)
+                .withRequestContext(proxyContext);
+    }
+
+    public static APIGatewayV2HTTPResponse toHttpApi(APIGatewayProxyResponseEvent response) {
+        return APIGatewayV2HTTPResponse.builder()
+                .withStatusCode(response.getStatusCode())
+                .withHeaders(response.getHeaders())
+                .withBody(response.getBody())
+                .withIsBase64Encoded(Boolean.TRUE.equals(response.getIsBase64Encoded()))
+                .build();
+    }
+}
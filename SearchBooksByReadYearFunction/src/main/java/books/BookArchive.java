@@ -0,0 +1,353 @@
+package books;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * The read years that ArchiveBooksHandler moved out of the table, kept in S3 and merged back in by the read
+ * paths.
+ *
+ * The archive of a library lives under {@code archive/<userId>/} in the {@code ARCHIVE_BUCKET_NAME} bucket. Each
+ * archiver run writes one gzipped segment per read year, holding the books in id order as their pre-rendered
+ * JSON, one per line, and then lists the new segments in the library's {@value #INDEX}. Segments are never
+ * changed once written, so a warm container keeps those it has read and only reads the index again, after
+ * {@code ARCHIVE_INDEX_TTL_SECONDS}. Without a bucket the archive is empty and S3 is never called.
+ */
+public final class BookArchive {
+
+    public static final String INDEX = "index.json";
+
+    private static final String PREFIX = "archive/";
+    // Libraries whose index, and segments, a warm container keeps
+    private static final int MAX_CACHED_INDEXES = 32;
+    private static final int MAX_CACHED_SEGMENTS = 256;
+
+    private static BookArchive shared;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final long indexTtlMillis;
+    private final ObjectMapper objectMapper;
+    private final Map<String, CachedIndex> cachedIndexes = Collections.synchronizedMap(lru(MAX_CACHED_INDEXES));
+    private final Map<String, Segment> cachedSegments = Collections.synchronizedMap(lru(MAX_CACHED_SEGMENTS));
+
+    /**
+     * @param s3Client {@code null} for no archive
+     */
+    public BookArchive(S3Client s3Client, String bucketName, long indexTtlMillis) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.indexTtlMillis = indexTtlMillis;
+        this.objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * The archive configured by the environment, one per container so that the handlers of the router share
+     * its cache.
+     */
+    public static synchronized BookArchive fromEnvironment() {
+        if (shared == null) {
+            String bucketName = System.getenv("ARCHIVE_BUCKET_NAME");
+            long indexTtlMillis = Long.parseLong(
+                    Optional.ofNullable(System.getenv("ARCHIVE_INDEX_TTL_SECONDS")).orElse("300")) * 1000;
+            S3Client s3Client = bucketName != null && !bucketName.isEmpty()
+                    ? S3Client.builder()
+                            .overrideConfiguration(o -> o.addExecutionInterceptor(new TracingInterceptor()))
+                            .build()
+                    : null;
+            shared = new BookArchive(s3Client, bucketName, indexTtlMillis);
+        }
+        return shared;
+    }
+
+    public boolean isEnabled() {
+        return s3Client != null;
+    }
+
+    /**
+     * How long a reader may go on using an index it has read; segments added meanwhile are unknown to it.
+     */
+    public long indexTtlMillis() {
+        return indexTtlMillis;
+    }
+
+    /**
+     * The library's index as read at most {@code ARCHIVE_INDEX_TTL_SECONDS} ago.
+     */
+    public Index index(String userId) throws IOException {
+        CachedIndex cached = cachedIndexes.get(userId);
+        if (cached == null || System.currentTimeMillis() - cached.readAt > indexTtlMillis) {
+            cached = new CachedIndex(readIndex(userId));
+            cachedIndexes.put(userId, cached);
+        }
+        return cached.index;
+    }
+
+    /**
+     * The library's index as stored now; empty when nothing was archived.
+     */
+    public Index readIndex(String userId) throws IOException {
+        if (!isEnabled()) {
+            return new Index();
+        }
+        try {
+            return objectMapper.readValue(s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(PREFIX + userId + "/" + INDEX)
+                    .build()).asByteArray(), Index.class);
+        } catch (NoSuchKeyException e) {
+            return new Index();
+        }
+    }
+
+    public void writeIndex(String userId, Index index) throws IOException {
+        s3Client.putObject(PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(PREFIX + userId + "/" + INDEX)
+                .contentType("application/json")
+                .build(), RequestBody.fromBytes(objectMapper.writeValueAsBytes(index)));
+        cachedIndexes.remove(userId);
+    }
+
+    /**
+     * The archived books of the library by id, as pre-rendered JSON. A book archived twice, because it was
+     * changed after its first archiving, is returned as the later segment has it.
+     */
+    public SortedMap<Integer, String> books(String userId) throws IOException {
+        return books(userId, info -> true);
+    }
+
+    /**
+     * The archived books of the library read in the year, reading only that year's segments.
+     */
+    public SortedMap<Integer, String> books(String userId, int readYear) throws IOException {
+        return books(userId, info -> info.readYear == readYear);
+    }
+
+    /**
+     * The archived books of the library with ids from {@code fromId} to {@code toId}, reading only the segments
+     * whose id range overlaps that one.
+     */
+    public SortedMap<Integer, String> books(String userId, int fromId, int toId) throws IOException {
+        SortedMap<Integer, String> books = books(userId, info -> info.overlaps(fromId, toId));
+        return toId < Integer.MAX_VALUE ? books.subMap(fromId, toId + 1) : books.tailMap(fromId);
+    }
+
+    private SortedMap<Integer, String> books(String userId, Predicate<SegmentInfo> segments) throws IOException {
+        SortedMap<Integer, String> books = new TreeMap<>();
+        for (SegmentInfo info : index(userId).segments) {
+            if (!segments.test(info)) {
+                continue;
+            }
+            Segment segment = segment(info.key);
+            for (int i = 0; i < segment.ids.length; i++) {
+                books.put(segment.ids[i], segment.books.get(i));
+            }
+        }
+        return books;
+    }
+
+    /**
+     * The archived book as pre-rendered JSON, or {@code null}. Only the segments whose id range holds the id are
+     * read, the latest first, as it has the later version of a book archived twice.
+     */
+    public String book(String userId, int id) throws IOException {
+        List<SegmentInfo> segments = index(userId).segments;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            SegmentInfo info = segments.get(i);
+            if (info.holds(id)) {
+                Segment segment = segment(info.key);
+                int position = Arrays.binarySearch(segment.ids, id);
+                if (position >= 0) {
+                    return segment.books.get(position);
+                }
+            }
+        }
+        return null;
+    }
+
+    public Segment segment(String key) throws IOException {
+        Segment segment = cachedSegments.get(key);
+        if (segment == null) {
+            segment = readSegment(key);
+            cachedSegments.put(key, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Writes the books, rendered and in id order, as a new segment of the library's read year and adds it to
+     * the index, which is still to be written. The key is made of the segment's position in the index and its
+     * first and last id, so writing the same books again, after a run that failed before writing the index,
+     * replaces the earlier segment instead of adding one.
+     *
+     * @param replaced how many of the books an earlier segment holds in an older version
+     */
+    public void addSegment(String userId, Index index, int readYear, int[] ids, List<String> books, int replaced)
+            throws IOException {
+        SegmentInfo info = new SegmentInfo();
+        info.readYear = readYear;
+        info.key = PREFIX + userId + "/" + readYear + "/" + index.segments.size() + "-" + ids[0] + "-"
+                + ids[ids.length - 1] + ".ndjson.gz";
+        info.count = books.size();
+        info.replaced = replaced;
+        info.writtenAt = System.currentTimeMillis();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(String.join("\n", books).getBytes(StandardCharsets.UTF_8));
+        }
+        s3Client.putObject(PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(info.key)
+                .contentType("application/x-ndjson")
+                .contentEncoding("gzip")
+                .build(), RequestBody.fromBytes(bytes.toByteArray()));
+        index.segments.add(info);
+    }
+
+    private Segment readSegment(String key) throws IOException {
+        String content;
+        try (InputStream in = new GZIPInputStream(s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build()))) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<String> books = content.isEmpty() ? List.of() : List.of(content.split("\n"));
+        int[] ids = new int[books.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = id(books.get(i));
+        }
+        return new Segment(ids, books);
+    }
+
+    // BookJsonWriter writes the id first, so only the first field is usually read
+    private int id(String json) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("id".equals(field)) {
+                    return parser.getIntValue();
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("Archived book without id: " + json);
+    }
+
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Contents of {@value #INDEX}: the segments of a library in the order they were written.
+     */
+    public static final class Index {
+        public List<SegmentInfo> segments = new ArrayList<>();
+
+        /** Number of archived books. */
+        public long count() {
+            long count = 0;
+            for (SegmentInfo info : segments) {
+                count += info.count - info.replaced;
+            }
+            return count;
+        }
+
+        /** Number of archived books read in the year. */
+        public long count(int readYear) {
+            long count = 0;
+            for (SegmentInfo info : segments) {
+                if (info.readYear == readYear) {
+                    count += info.count - info.replaced;
+                }
+            }
+            return count;
+        }
+
+        /** Number of archived books by read year. */
+        public SortedMap<Integer, Long> countsByYear() {
+            SortedMap<Integer, Long> counts = new TreeMap<>();
+            for (SegmentInfo info : segments) {
+                counts.merge(info.readYear, (long) (info.count - info.replaced), Long::sum);
+            }
+            return counts;
+        }
+    }
+
+    public static final class SegmentInfo {
+        public int readYear;
+        public String key;
+        // Books in the segment, and how many of them an earlier segment holds in an older version
+        public int count;
+        public int replaced;
+        // Epoch millis; 0 for segments written before it was recorded
+        public long writtenAt;
+
+        // The key ends in "<position>-<first id>-<last id>.ndjson.gz", see addSegment
+        boolean holds(int id) {
+            return overlaps(id, id);
+        }
+
+        boolean overlaps(int fromId, int toId) {
+            String[] range = key.substring(key.lastIndexOf('/') + 1, key.indexOf('.', key.lastIndexOf('/'))).split("-");
+            return toId >= Integer.parseInt(range[1]) && fromId <= Integer.parseInt(range[2]);
+        }
+    }
+
+    /**
+     * The books of a segment, in id order.
+     */
+    public static final class Segment {
+        public final int[] ids;
+        public final List<String> books;
+
+        Segment(int[] ids, List<String> books) {
+            this.ids = ids;
+            this.books = books;
+        }
+    }
+
+    private static final class CachedIndex {
+        private final Index index;
+        private final long readAt = System.currentTimeMillis();
+
+        private CachedIndex(Index index) {
+            this.index = index;
+        }
+    }
+}
@@ -1,22 +1,28 @@
 package books;
 
-import java.time.LocalDate;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.stream.Collectors;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 @Slf4j
 public class SearchBooksByReadYearHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
@@ -24,11 +30,24 @@ public class SearchBooksByReadYearHandler implements RequestHandler<APIGatewayPr
     private final DynamoDbEnhancedClient enhancedClient;
     private final DynamoDbTable<Book> bookTable;
     private final ObjectMapper objectMapper;
+    private final BookJsonWriter bookJsonWriter;
+    private final BookArchive archive;
     private final String tableName;
 
     public SearchBooksByReadYearHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public SearchBooksByReadYearHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public SearchBooksByReadYearHandler(DynamoDbClient ddbClient, BookArchive archive) {
         this.tableName = System.getenv("TABLE_NAME");
-        DynamoDbClient ddbClient = DynamoDbClient.builder().build();
         this.enhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(ddbClient)
                 .build();
@@ -36,17 +55,22 @@ public class SearchBooksByReadYearHandler implements RequestHandler<APIGatewayPr
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
         this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.bookJsonWriter = new BookJsonWriter(objectMapper.getFactory());
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
         log.info("SearchBooksByReadYear function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
         
         // Handle OPTIONS request for CORS preflight
         if ("OPTIONS".equals(input.getHttpMethod())) {
@@ -56,69 +80,94 @@ public class SearchBooksByReadYearHandler implements RequestHandler<APIGatewayPr
                     .withBody("");
         }
 
+        RequestMetrics metrics = RequestMetrics.start("SearchBooksByReadYear", context);
         try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
             String yearParam = input.getQueryStringParameters() != null ? 
                 input.getQueryStringParameters().get("year") : null;
                 
             if (yearParam == null || yearParam.trim().isEmpty()) {
-                return new APIGatewayProxyResponseEvent()
+                return metrics.finish(new APIGatewayProxyResponseEvent()
                         .withStatusCode(400)
                         .withHeaders(headers)
-                        .withBody("{\"error\": \"Year parameter is required\"}");
+                        .withBody("{\"error\": \"Year parameter is required\"}"));
             }
             
             int year = Integer.parseInt(yearParam);
             log.info("Searching books read in year: {}", year);
             
-            List<BookResponse> books = bookTable.scan()
+            BookScanEvent scanEvent = BookScanEvent.start("SearchBooksByReadYear");
+            List<Book> items = metrics.time("Query", () -> bookTable.query(QueryEnhancedRequest.builder()
+                            .queryConditional(Libraries.books(userId))
+                            .filterExpression(readIn(year))
+                            .build())
                     .items()
                     .stream()
-                    .filter(book -> book.getReadYear() == year)
-                    .map(this::convertToBookResponse)
-                    .sorted((b1, b2) -> Integer.compare(b1.getId(), b2.getId()))
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toList()));
+            scanEvent.end(items.size());
             
-            log.info("Found {} books read in year: {}", books.size(), year);
+            // Only the segments of the year are read
+            SortedMap<Integer, String> archived = metrics.time("Archive", () -> archive.books(userId, year));
+            metrics.count("ItemCount", items.size());
+            metrics.count("ArchivedItemCount", archived.size());
             
-            String jsonResponse = objectMapper.writeValueAsString(books);
+            log.info("Found {} books read in year {} in database and {} in the archive", items.size(), year, archived.size());
             
-            return new APIGatewayProxyResponseEvent()
+            SerializationEvent serializationEvent = SerializationEvent.start("SearchBooksByReadYear");
+            // The query returns the books in id order already
+            String jsonResponse = metrics.time("Serialization", () -> archived.isEmpty()
+                    ? bookJsonWriter.write(items)
+                    : join(archived, items));
+            serializationEvent.end(jsonResponse.length());
+            
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
                     .withHeaders(headers)
-                    .withBody(jsonResponse);
+                    .withBody(jsonResponse));
                     
         } catch (NumberFormatException e) {
             log.error("Invalid year format", e);
             
             String errorResponse = "{\"error\": \"Invalid year format\", \"message\": \"Year must be a valid integer\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(400)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         } catch (Exception e) {
             log.error("Error searching books by read year", e);
             
             String errorResponse = "{\"error\": \"Failed to search books\", \"message\": \"" + e.getMessage() + "\"}";
             
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
                     .withHeaders(headers)
-                    .withBody(errorResponse);
+                    .withBody(errorResponse));
         }
     }
     
-    private BookResponse convertToBookResponse(Book book) {
-        BookResponse response = new BookResponse();
-        response.setId(book.getId());
-        response.setTitle(book.getTitle());
-        response.setAuthor(book.getAuthor());
-        response.setPublicationYear(book.getPublicationYear());
-        response.setLanguage(book.getLanguage());
-        response.setFormat(book.getFormat());
-        response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
-        response.setReadYear(book.getReadYear());
-        response.setReadingTimeInDays(book.getReadingTimeInDays());
-        return response;
+    private static Expression readIn(int year) {
+        return Expression.builder()
+                .expression("readYear = :year")
+                .putExpressionValue(":year", AttributeValue.fromN(String.valueOf(year)))
+                .build();
+    }
+
+    /**
+     * The archived books and those of the table as a JSON array in id order. A book still in the table wins over
+     * its archived copy.
+     */
+    private String join(SortedMap<Integer, String> archived, List<Book> books) throws IOException {
+        for (Book book : books) {
+            archived.put(book.getId(), bookJsonWriter.write(book));
+        }
+        return "[" + String.join(",", archived.values()) + "]";
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package books;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning a scan of the books table, with the number of items it produced.
+ */
+@Name("awsbooks.BookScan")
+@Label("Book Scan")
+@Category("AwsBooks")
+public class BookScanEvent extends Event {
+
+    @Label("Function")
+    String function;
+
+    @Label("Items")
+    long items;
+
+    public static BookScanEvent start(String function) {
+        BookScanEvent event = new BookScanEvent();
+        event.function = function;
+        event.begin();
+        return event;
+    }
+
+    public void end(long itemCount) {
+        this.items = itemCount;
+        commit();
+    }
+}
@@ -0,0 +1,56 @@
+package books;
+
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Every Cognito user has a library of their own: books are keyed by the owner's {@code sub} claim and the
+ * book id, so a request reads its owner's partition with a Query and never the whole table.
+ *
+ * Item {@value #COUNTER_ID} of each partition is not a book; it holds {@code lastId}, the last id given out in
+ * the library, so the next id is known without reading the books. Item {@value #STATS_ID} is not one either; it
+ * holds the library's reading statistics, apart from the counter so that a create does not rewrite them.
+ */
+public final class Libraries {
+
+    public static final int COUNTER_ID = 0;
+    public static final int STATS_ID = -1;
+
+    private Libraries() {
+    }
+
+    /**
+     * The {@code sub} claim the Cognito authorizer passed on, or {@code null} when the request has none.
+     */
+    public static String userId(APIGatewayProxyRequestEvent input) {
+        if (input.getRequestContext() == null || input.getRequestContext().getAuthorizer() == null) {
+            return null;
+        }
+        Object claims = input.getRequestContext().getAuthorizer().get("claims");
+        if (!(claims instanceof Map)) {
+            return null;
+        }
+        Object sub = ((Map<?, ?>) claims).get("sub");
+        return sub instanceof String && !((String) sub).isEmpty() ? (String) sub : null;
+    }
+
+    /**
+     * Key condition for the books of a library in id order, leaving out the counter item.
+     */
+    public static QueryConditional books(String userId) {
+        return QueryConditional.sortGreaterThan(Key.builder().partitionValue(userId).sortValue(COUNTER_ID).build());
+    }
+
+    public static Key key(String userId, int id) {
+        return Key.builder().partitionValue(userId).sortValue(id).build();
+    }
+
+    public static Map<String, AttributeValue> itemKey(String userId, int id) {
+        return Map.of("userId", AttributeValue.fromS(userId), "id", AttributeValue.fromN(String.valueOf(id)));
+    }
+}
@@ -0,0 +1,154 @@
+package search;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Immutable in-memory index over the books table.
+ *
+ * Every book gets a position in {@link #books}; for each facet value (language, format,
+ * readYear, publicationYear) a compressed bitmap holds the positions of the books that
+ * carry it. Exact filters become bitmap ANDs and facet counts are bitmap cardinalities,
+ * so the work per search is proportional to the matching books, not to the whole table.
+ * Title and author tokens are also indexed by trigram, which gives the fuzzy search its candidates.
+ */
+public class BookIndex {
+
+    static final List<String> FACETS = List.of("language", "format", "readYear", "publicationYear");
+
+    private final List<Map<String, Object>> books;
+    private final List<String> titleKeys;
+    private final List<String> authorKeys;
+    private final Map<String, Map<String, RoaringBitmap>> facets;
+    private final Map<String, RoaringBitmap> trigrams;
+    private final long builtAt;
+
+    private BookIndex(List<Map<String, Object>> books, List<String> titleKeys, List<String> authorKeys,
+                      Map<String, Map<String, RoaringBitmap>> facets, Map<String, RoaringBitmap> trigrams) {
+        this.books = books;
+        this.titleKeys = titleKeys;
+        this.authorKeys = authorKeys;
+        this.facets = facets;
+        this.trigrams = trigrams;
+        this.builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Builds the index; {@code titleKeys} and {@code authorKeys} hold the normalized search key of each
+     * book (see {@link SearchKeys}), aligned with {@code books}.
+     */
+    public static BookIndex build(List<Map<String, Object>> books, List<String> titleKeys, List<String> authorKeys) {
+        Map<String, Map<String, RoaringBitmap>> facets = new HashMap<>();
+        for (String facet : FACETS) {
+            facets.put(facet, new HashMap<>());
+        }
+        Map<String, RoaringBitmap> trigrams = new HashMap<>();
+
+        for (int position = 0; position < books.size(); position++) {
+            Map<String, Object> book = books.get(position);
+            for (String facet : FACETS) {
+                Object value = book.get(facet);
+                if (value != null) {
+                    facets.get(facet)
+                            .computeIfAbsent(String.valueOf(value), v -> new RoaringBitmap())
+                            .add(position);
+                }
+            }
+            for (String key : List.of(titleKeys.get(position), authorKeys.get(position))) {
+                for (String token : FuzzyMatcher.tokens(key)) {
+                    for (String trigram : FuzzyMatcher.trigrams(token)) {
+                        trigrams.computeIfAbsent(trigram, t -> new RoaringBitmap()).add(position);
+                    }
+                }
+            }
+        }
+
+        facets.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+        trigrams.values().forEach(RoaringBitmap::runOptimize);
+        return new BookIndex(List.copyOf(books), List.copyOf(titleKeys), List.copyOf(authorKeys), facets, trigrams);
+    }
+
+    public int size() {
+        return books.size();
+    }
+
+    public boolean isOlderThan(long ageMillis) {
+        return System.currentTimeMillis() - builtAt > ageMillis;
+    }
+
+    public Map<String, Object> get(int position) {
+        return books.get(position);
+    }
+
+    public String titleKey(int position) {
+        return titleKeys.get(position);
+    }
+
+    public String authorKey(int position) {
+        return authorKeys.get(position);
+    }
+
+    /**
+     * Positions of every book in the index.
+     */
+    public RoaringBitmap all() {
+        RoaringBitmap all = new RoaringBitmap();
+        all.add(0L, (long) books.size());
+        return all;
+    }
+
+    /**
+     * Positions of the books whose facet equals the given value exactly.
+     */
+    public RoaringBitmap facet(String facet, String value) {
+        RoaringBitmap bitmap = facets.get(facet).get(value);
+        return bitmap != null ? bitmap : new RoaringBitmap();
+    }
+
+    /**
+     * Union of the bitmaps of every facet value accepted by the predicate.
+     */
+    public RoaringBitmap facetMatching(String facet, Predicate<String> valueMatches) {
+        RoaringBitmap result = new RoaringBitmap();
+        facets.get(facet).forEach((value, bitmap) -> {
+            if (valueMatches.test(value)) {
+                result.or(bitmap);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Positions of the books whose title or author shares at least one trigram with the query.
+     */
+    public RoaringBitmap trigramCandidates(Collection<String> queryTrigrams) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (String trigram : queryTrigrams) {
+            RoaringBitmap bitmap = trigrams.get(trigram);
+            if (bitmap != null) {
+                result.or(bitmap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of books in the result set for every value of every facet, skipping empty values.
+     */
+    public Map<String, Map<String, Integer>> facetCounts(RoaringBitmap result) {
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (String facet : FACETS) {
+            Map<String, Integer> valueCounts = new TreeMap<>();
+            facets.get(facet).forEach((value, bitmap) -> {
+                int count = RoaringBitmap.andCardinality(bitmap, result);
+                if (count > 0) {
+                    valueCounts.put(value, count);
+                }
+            });
+            counts.put(facet, valueCounts);
+        }
+        return counts;
+    }
+}
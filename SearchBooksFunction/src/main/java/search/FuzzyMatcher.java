@@ -0,0 +1,223 @@
+package search;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+
+/**
+ * Typo-tolerant ranking for title and author queries.
+ *
+ * Candidates come from the trigram postings of the {@link BookIndex}; each one is scored token by token
+ * (prefix match, bounded edit distance or trigram overlap) and only the best {@code limit} books are kept
+ * in a bounded min-heap, so ranking costs O(candidates * log limit) instead of sorting every match.
+ * Tokens of one or two characters have no trigram of their own to compare and one edit changes half of them,
+ * so they only match the same token.
+ */
+public final class FuzzyMatcher {
+
+    static final double MIN_SCORE = 0.5;
+    // Shorter query tokens are matched exactly
+    static final int MIN_FUZZY_LENGTH = 3;
+
+    private FuzzyMatcher() {
+    }
+
+    public static List<Map<String, Object>> rank(BookIndex index, RoaringBitmap filter,
+                                                 String titleQuery, String authorQuery, int limit) {
+        List<String> titleTokens = tokens(titleQuery);
+        List<String> authorTokens = tokens(authorQuery);
+
+        // Every query token must share at least one trigram with the book's title or author, and a short token
+        // all of its padded grams, as the same token has them
+        RoaringBitmap candidates = filter.clone();
+        for (String token : titleTokens) {
+            narrow(candidates, index, token);
+        }
+        for (String token : authorTokens) {
+            narrow(candidates, index, token);
+        }
+
+        // Min-heap on score: the head is the weakest of the current top results
+        PriorityQueue<Scored> heap = new PriorityQueue<>(limit + 1);
+        candidates.forEach((int position) -> {
+            double score = 0;
+            int fields = 0;
+            if (!titleTokens.isEmpty()) {
+                score += score(titleTokens, index.titleKey(position));
+                fields++;
+            }
+            if (!authorTokens.isEmpty()) {
+                score += score(authorTokens, index.authorKey(position));
+                fields++;
+            }
+            score = fields > 0 ? score / fields : 1.0;
+
+            if (score < MIN_SCORE) {
+                return;
+            }
+            if (heap.size() < limit) {
+                heap.add(new Scored(position, score));
+            } else if (score > heap.peek().score) {
+                heap.poll();
+                heap.add(new Scored(position, score));
+            }
+        });
+
+        List<Scored> top = new ArrayList<>(heap);
+        top.sort(Comparator.reverseOrder());
+
+        List<Map<String, Object>> books = new ArrayList<>(top.size());
+        for (Scored scored : top) {
+            Map<String, Object> book = new LinkedHashMap<>(index.get(scored.position));
+            book.put("score", Math.round(scored.score * 1000) / 1000.0);
+            books.add(book);
+        }
+        return books;
+    }
+
+    private static void narrow(RoaringBitmap candidates, BookIndex index, String token) {
+        if (token.length() >= MIN_FUZZY_LENGTH) {
+            candidates.and(index.trigramCandidates(trigrams(token)));
+            return;
+        }
+        for (String gram : trigrams(token)) {
+            candidates.and(index.trigramCandidates(List.of(gram)));
+        }
+    }
+
+    /**
+     * Average, over the query tokens, of the best similarity against any token of the field's search key.
+     */
+    static double score(List<String> queryTokens, String field) {
+        if (field == null) {
+            return 0;
+        }
+        List<String> fieldTokens = tokens(field);
+        if (fieldTokens.isEmpty()) {
+            return 0;
+        }
+
+        double total = 0;
+        for (String queryToken : queryTokens) {
+            double best = 0;
+            for (String fieldToken : fieldTokens) {
+                best = Math.max(best, similarity(queryToken, fieldToken));
+                if (best == 1.0) {
+                    break;
+                }
+            }
+            total += best;
+        }
+        return total / queryTokens.size();
+    }
+
+    static double similarity(String queryToken, String fieldToken) {
+        if (queryToken.length() < MIN_FUZZY_LENGTH) {
+            return queryToken.equals(fieldToken) ? 1.0 : 0;
+        }
+        if (fieldToken.startsWith(queryToken)) {
+            return 1.0;
+        }
+        int maxEdits = queryToken.length() <= 4 ? 1 : 2;
+        int distance = boundedEditDistance(queryToken, fieldToken, maxEdits);
+        double editScore = distance <= maxEdits
+                ? 1.0 - (double) distance / Math.max(queryToken.length(), fieldToken.length())
+                : 0;
+        return Math.max(editScore, dice(trigrams(queryToken), trigrams(fieldToken)));
+    }
+
+    /**
+     * Levenshtein distance restricted to a diagonal band; returns {@code maxEdits + 1} as soon as the
+     * distance is known to exceed the bound.
+     */
+    static int boundedEditDistance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - maxEdits);
+            int to = Math.min(b.length(), i + maxEdits);
+            current[0] = i;
+            if (from > 1) {
+                current[from - 1] = maxEdits + 1;
+            }
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j] + 1, current[j - 1] + 1));
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (to < b.length()) {
+                current[to + 1] = maxEdits + 1;
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], maxEdits + 1);
+    }
+
+    static double dice(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int shared = 0;
+        for (String trigram : a) {
+            if (b.contains(trigram)) {
+                shared++;
+            }
+        }
+        return 2.0 * shared / (a.size() + b.size());
+    }
+
+    static List<String> tokens(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : SearchKeys.normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Trigrams of a token padded with word boundaries, so short tokens still produce grams.
+     */
+    static Set<String> trigrams(String token) {
+        String padded = "$" + token + "$";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static final class Scored implements Comparable<Scored> {
+        private final int position;
+        private final double score;
+
+        private Scored(int position, double score) {
+            this.position = position;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Scored other) {
+            int byScore = Double.compare(score, other.score);
+            // On equal scores the later position is the weaker one, keeping results stable
+            return byScore != 0 ? byScore : Integer.compare(other.position, position);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package search;
+
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+/**
+ * Every Cognito user has a library of their own: books are keyed by the owner's {@code sub} claim and the
+ * book id, so a request reads its owner's partition with a Query and never the whole table.
+ *
+ * Item {@value #COUNTER_ID} of each partition is not a book; it holds {@code lastId}, the last id given out in
+ * the library, so the next id is known without reading the books.
+ */
+public final class Libraries {
+
+    public static final int COUNTER_ID = 0;
+
+    private Libraries() {
+    }
+
+    /**
+     * The {@code sub} claim the Cognito authorizer passed on, or {@code null} when the request has none.
+     */
+    public static String userId(APIGatewayProxyRequestEvent input) {
+        if (input.getRequestContext() == null || input.getRequestContext().getAuthorizer() == null) {
+            return null;
+        }
+        Object claims = input.getRequestContext().getAuthorizer().get("claims");
+        if (!(claims instanceof Map)) {
+            return null;
+        }
+        Object sub = ((Map<?, ?>) claims).get("sub");
+        return sub instanceof String && !((String) sub).isEmpty() ? (String) sub : null;
+    }
+}
@@ -0,0 +1,98 @@
+package search;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Opt-in JDK Flight Recorder profiling of sampled invocations.
+ *
+ * {@code PROFILING_SAMPLE_RATE} (0 to 1, default 0 = off) is the share of invocations recorded with the JDK
+ * "profile" settings: CPU samples, allocations, locks and the custom events of this function. Each recording
+ * is written to /tmp and, when {@code PROFILING_BUCKET} is set, moved to
+ * {@code s3://<bucket>/profiles/<function>/}. Profiling problems are logged as warnings and never fail the request.
+ */
+@Slf4j
+final class Profiler {
+
+    private static final double SAMPLE_RATE = sampleRate(System.getenv("PROFILING_SAMPLE_RATE"));
+    private static final String BUCKET = System.getenv("PROFILING_BUCKET");
+    private static final Path DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"));
+
+    // Created on the first upload, so functions that never profile do not pay for it
+    private static S3Client s3Client;
+
+    private Profiler() {
+    }
+
+    /**
+     * Starts a recording if this invocation is sampled, otherwise returns {@code null}.
+     */
+    static Recording start() {
+        if (SAMPLE_RATE <= 0 || ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE) {
+            return null;
+        }
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.start();
+            return recording;
+        } catch (Exception e) {
+            log.warn("Could not start profiling: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    static void stop(Recording recording, String function, String requestId) {
+        if (recording == null) {
+            return;
+        }
+        boolean upload = BUCKET != null && !BUCKET.isEmpty();
+        String name = function + "-" + (requestId != null ? requestId : System.currentTimeMillis()) + ".jfr";
+        Path file = DIRECTORY.resolve(name);
+        try (recording) {
+            recording.stop();
+            recording.dump(file);
+            if (upload) {
+                s3().putObject(PutObjectRequest.builder()
+                        .bucket(BUCKET)
+                        .key("profiles/" + function + "/" + name)
+                        .build(), RequestBody.fromFile(file));
+            }
+        } catch (Exception e) {
+            log.warn("Could not save profile of {}: {}", function, e.getMessage());
+        } finally {
+            // Recordings meant for the bucket never pile up in the /tmp of a warm container, uploaded or not
+            if (upload) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete profile {}: {}", file, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static synchronized S3Client s3() {
+        if (s3Client == null) {
+            s3Client = S3Client.create();
+        }
+        return s3Client;
+    }
+
+    private static double sampleRate(String value) {
+        try {
+            return value != null ? Double.parseDouble(value.trim()) : 0;
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid PROFILING_SAMPLE_RATE: {}", value);
+            return 0;
+        }
+    }
+}
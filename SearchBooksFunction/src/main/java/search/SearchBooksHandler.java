@@ -4,18 +4,65 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
+import org.roaringbitmap.RoaringBitmap;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SearchBooksHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final DynamoDbClient dynamoDbClient = DynamoDbClient.create();
+    private final DynamoDbClient dynamoDbClient;
+    private final BookArchive archive;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final String TABLE_NAME = System.getenv("TABLE_NAME");
+    private final long INDEX_TTL_MILLIS = Long.parseLong(
+            Optional.ofNullable(System.getenv("SEARCH_INDEX_TTL_SECONDS")).orElse("300")) * 1000;
+
+    private static final int DEFAULT_FUZZY_LIMIT = 10;
+    private static final int MAX_FUZZY_LIMIT = 100;
+    // Libraries whose index a warm container keeps; the least recently searched one is dropped first
+    private static final int MAX_CACHED_LIBRARIES = 32;
+
+    // Facet index of each library, shared by the invocations of a warm container and rebuilt once the library's
+    // version moves or it expires
+    private final Map<String, CachedIndex> cachedIndexes = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedIndex> eldest) {
+                    return size() > MAX_CACHED_LIBRARIES;
+                }
+            });
+
+    public SearchBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public SearchBooksHandler(DynamoDbClient dynamoDbClient) {
+        this(dynamoDbClient, BookArchive.fromEnvironment());
+    }
+
+    public SearchBooksHandler(DynamoDbClient dynamoDbClient, BookArchive archive) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
@@ -23,15 +70,20 @@ public class SearchBooksHandler implements RequestHandler<APIGatewayProxyRequest
         if ("OPTIONS".equals(input.getHttpMethod())) {
             return new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
-                    .withHeaders(Map.of(
-                            "Access-Control-Allow-Origin", "*",
-                            "Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS",
-                            "Access-Control-Allow-Headers", "Content-Type, Authorization"
-                    ))
+                    .withHeaders(ApiGateway.JSON_HEADERS)
                     .withBody("");
         }
         
+        RequestMetrics metrics = RequestMetrics.start("SearchBooks", context);
         try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(ApiGateway.JSON_HEADERS)
+                        .withBody("{\"message\":\"Unauthorized\"}"));
+            }
+
             // Get query parameters
             Map<String, String> queryParams = input.getQueryStringParameters();
             if (queryParams == null) {
@@ -40,102 +92,234 @@ public class SearchBooksHandler implements RequestHandler<APIGatewayProxyRequest
 
             String title = queryParams.get("title");
             String author = queryParams.get("author");
-            String year = queryParams.get("year");
-            String readYear = queryParams.get("readYear");
-            String language = queryParams.get("language");
-            String format = queryParams.get("format");
-
-            // Build scan request
-            ScanRequest.Builder scanBuilder = ScanRequest.builder()
-                    .tableName(TABLE_NAME);
-
-            List<String> filterExpressions = new ArrayList<>();
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-
-            // Apply DynamoDB filters for exact matches only
-            Map<String, String> expressionAttributeNames = new HashMap<>();
-            
-            // Only add exact match filters for numeric fields
-            if (year != null && !year.trim().isEmpty()) {
-                filterExpressions.add("#publicationYear = :year");
-                expressionAttributeValues.put(":year", AttributeValue.builder().n(year.trim()).build());
-                expressionAttributeNames.put("#publicationYear", "publicationYear");
-            }
 
-            if (readYear != null && !readYear.trim().isEmpty()) {
-                filterExpressions.add("#readYear = :readYear");
-                expressionAttributeValues.put(":readYear", AttributeValue.builder().n(readYear.trim()).build());
-                expressionAttributeNames.put("#readYear", "readYear");
-            }
+            BookIndex index = getIndex(userId, metrics);
+            Map<String, String> params = queryParams;
+            RoaringBitmap candidates = metrics.time("Search", () -> facetFilter(index, params));
 
-            if (format != null && !format.trim().isEmpty()) {
-                filterExpressions.add("#format = :format");
-                expressionAttributeValues.put(":format", AttributeValue.builder().s(format.trim()).build());
-                expressionAttributeNames.put("#format", "format");
+            // Typo-tolerant mode: rank by similarity and keep only the best matches
+            if ("true".equalsIgnoreCase(queryParams.get("fuzzy"))) {
+                String limitParam = queryParams.get("limit");
+                int limit = limitParam != null && !limitParam.trim().isEmpty()
+                        ? Math.max(1, Math.min(MAX_FUZZY_LIMIT, Integer.parseInt(limitParam.trim())))
+                        : DEFAULT_FUZZY_LIMIT;
+                List<Map<String, Object>> ranked = metrics.time("Search",
+                        () -> FuzzyMatcher.rank(index, candidates, title, author, limit));
+                metrics.count("ItemCount", ranked.size());
+                SerializationEvent serializationEvent = SerializationEvent.start("SearchBooks");
+                String body = metrics.time("Serialization", () -> objectMapper.writeValueAsString(ranked));
+                serializationEvent.end(body.length());
+
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(200)
+                        .withHeaders(ApiGateway.JSON_HEADERS)
+                        .withBody(body));
             }
-            if (!filterExpressions.isEmpty()) {
-                scanBuilder.filterExpression(String.join(" AND ", filterExpressions))
-                          .expressionAttributeValues(expressionAttributeValues)
-                          .expressionAttributeNames(expressionAttributeNames);
+
+            RoaringBitmap result = metrics.time("Search", () -> textFilter(index, candidates, title, author));
+            List<Map<String, Object>> books = new ArrayList<>(result.getCardinality());
+            result.forEach((int position) -> books.add(index.get(position)));
+
+            metrics.count("ItemCount", books.size());
+            Object body = books;
+            if ("true".equalsIgnoreCase(queryParams.get("facets"))) {
+                Map<String, Object> facetedResponse = new LinkedHashMap<>();
+                facetedResponse.put("count", books.size());
+                facetedResponse.put("facets", metrics.time("Search", () -> index.facetCounts(result)));
+                facetedResponse.put("books", books);
+                body = facetedResponse;
             }
 
-            ScanResponse response = dynamoDbClient.scan(scanBuilder.build());
-
-            // Convert to Book objects and apply case-insensitive filters in memory
-            List<Map<String, Object>> books = response.items().stream()
-                    .map(this::convertToBook)
-                    .filter(book -> {
-                        // Case-insensitive title filter
-                        if (title != null && !title.trim().isEmpty()) {
-                            String bookTitle = (String) book.get("title");
-                            if (bookTitle == null || !bookTitle.toLowerCase().contains(title.trim().toLowerCase())) {
-                                return false;
-                            }
-                        }
-                        
-                        // Case-insensitive author filter
-                        if (author != null && !author.trim().isEmpty()) {
-                            String bookAuthor = (String) book.get("author");
-                            if (bookAuthor == null || !bookAuthor.toLowerCase().contains(author.trim().toLowerCase())) {
-                                return false;
-                            }
-                        }
-                        
-                        // Case-insensitive language filter
-                        if (language != null && !language.trim().isEmpty()) {
-                            String bookLanguage = (String) book.get("language");
-                            if (bookLanguage == null || !bookLanguage.toLowerCase().contains(language.trim().toLowerCase())) {
-                                return false;
-                            }
-                        }
-                        
-                        return true;
-                    })
-                    .collect(Collectors.toList());
+            Object responseBody = body;
+            SerializationEvent serializationEvent = SerializationEvent.start("SearchBooks");
+            String json = metrics.time("Serialization", () -> objectMapper.writeValueAsString(responseBody));
+            serializationEvent.end(json.length());
 
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(200)
-                    .withHeaders(Map.of(
-                            "Content-Type", "application/json",
-                            "Access-Control-Allow-Origin", "*",
-                            "Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS",
-                            "Access-Control-Allow-Headers", "Content-Type, Authorization"
-                    ))
-                    .withBody(objectMapper.writeValueAsString(books));
+                    .withHeaders(ApiGateway.JSON_HEADERS)
+                    .withBody(json));
 
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
-            return new APIGatewayProxyResponseEvent()
+            return metrics.finish(new APIGatewayProxyResponseEvent()
                     .withStatusCode(500)
-                    .withHeaders(Map.of(
-                            "Content-Type", "application/json",
-                            "Access-Control-Allow-Origin", "*"
-                    ))
-                    .withBody("{\"message\":\"Internal server error: " + e.getMessage() + "\"}");
+                    .withHeaders(ApiGateway.JSON_HEADERS)
+                    .withBody("{\"message\":\"Internal server error: " + e.getMessage() + "\"}"));
+        }
+    }
+
+    /**
+     * Positions matching the exact filters (year, readYear, format) and the language filter,
+     * computed as bitmap intersections over the facet index.
+     */
+    RoaringBitmap facetFilter(BookIndex index, Map<String, String> queryParams) {
+        String year = queryParams.get("year");
+        String readYear = queryParams.get("readYear");
+        String language = queryParams.get("language");
+        String format = queryParams.get("format");
+
+        RoaringBitmap candidates = index.all();
+
+        if (year != null && !year.trim().isEmpty()) {
+            candidates.and(index.facet("publicationYear", String.valueOf(Integer.parseInt(year.trim()))));
+        }
+
+        if (readYear != null && !readYear.trim().isEmpty()) {
+            candidates.and(index.facet("readYear", String.valueOf(Integer.parseInt(readYear.trim()))));
+        }
+
+        if (format != null && !format.trim().isEmpty()) {
+            candidates.and(index.facet("format", format.trim()));
         }
+
+        // Case-insensitive language filter, resolved against the distinct language values only
+        if (language != null && !language.trim().isEmpty()) {
+            String languageQuery = SearchKeys.normalize(language);
+            candidates.and(index.facetMatching("language", value -> SearchKeys.normalize(value).contains(languageQuery)));
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Accent- and case-insensitive title and author filters against the stored search keys,
+     * evaluated on the remaining candidates only.
+     */
+    RoaringBitmap textFilter(BookIndex index, RoaringBitmap candidates, String title, String author) {
+        String titleQuery = title != null && !title.trim().isEmpty() ? SearchKeys.normalize(title) : null;
+        String authorQuery = author != null && !author.trim().isEmpty() ? SearchKeys.normalize(author) : null;
+        if (titleQuery == null && authorQuery == null) {
+            return candidates;
+        }
+
+        RoaringBitmap result = new RoaringBitmap();
+        candidates.forEach((int position) -> {
+            if (titleQuery != null) {
+                String titleKey = index.titleKey(position);
+                if (titleKey == null || !titleKey.contains(titleQuery)) {
+                    return;
+                }
+            }
+            if (authorQuery != null) {
+                String authorKey = index.authorKey(position);
+                if (authorKey == null || !authorKey.contains(authorQuery)) {
+                    return;
+                }
+            }
+            result.add(position);
+        });
+        return result;
+    }
+
+    /**
+     * The library's index, rebuilt from the table and the archive when the counter item's version differs from
+     * the one it was built at: {@code lastId} moves with every created book and {@code statsVersion} with every
+     * import and every update of a title, author, language, format or finish date. An update of the publication
+     * year alone moves neither, so the index is also rebuilt after {@code SEARCH_INDEX_TTL_SECONDS}.
+     */
+    private BookIndex getIndex(String userId, RequestMetrics metrics) throws Exception {
+        Map<String, AttributeValue> counter = metrics.time("Query", () -> dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of(
+                        "userId", AttributeValue.fromS(userId),
+                        "id", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                .projectionExpression("lastId, statsVersion")
+                .build()).item());
+        String version = version(counter);
+        CachedIndex cached = cachedIndexes.get(userId);
+        BookIndex current = cached != null && cached.version.equals(version) ? cached.index : null;
+        if (current == null || current.isOlderThan(INDEX_TTL_MILLIS)) {
+            List<Map<String, Object>> books = new ArrayList<>();
+            List<String> titleKeys = new ArrayList<>();
+            List<String> authorKeys = new ArrayList<>();
+            BookScanEvent scanEvent = BookScanEvent.start("SearchBooks");
+            metrics.time("Query", () -> {
+                dynamoDbClient.queryPaginator(QueryRequest.builder()
+                                .tableName(TABLE_NAME)
+                                .keyConditionExpression("userId = :userId AND id > :counterId")
+                                .expressionAttributeValues(Map.of(
+                                        ":userId", AttributeValue.fromS(userId),
+                                        ":counterId", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID))))
+                                .build())
+                        .items()
+                        .forEach(item -> {
+                            Map<String, Object> book = convertToBook(item);
+                            books.add(book);
+                            titleKeys.add(searchKey(item, "normalizedTitle", (String) book.get("title")));
+                            authorKeys.add(searchKey(item, "normalizedAuthor", (String) book.get("author")));
+                        });
+                return null;
+            });
+            scanEvent.end(books.size());
+            SortedMap<Integer, String> archived = metrics.time("Archive", () -> archive.books(userId));
+            current = metrics.time("IndexBuild", () -> {
+                if (!archived.isEmpty()) {
+                    mergeArchived(archived, books, titleKeys, authorKeys);
+                }
+                return BookIndex.build(books, titleKeys, authorKeys);
+            });
+            cachedIndexes.put(userId, new CachedIndex(current, version));
+        }
+        return current;
+    }
+
+    // An empty library has no counter yet
+    private static String version(Map<String, AttributeValue> counter) {
+        if (counter == null || counter.isEmpty()) {
+            return "0";
+        }
+        AttributeValue lastId = counter.get("lastId");
+        AttributeValue statsVersion = counter.get("statsVersion");
+        return (lastId != null ? lastId.n() : "0") + "." + (statsVersion != null ? statsVersion.n() : "0");
+    }
+
+    /**
+     * Adds the archived books that are not in the table to the queried ones, keeping the lists in id order.
+     * The archive holds the books as the API returns them, so their search keys are normalized here.
+     */
+    void mergeArchived(SortedMap<Integer, String> archived, List<Map<String, Object>> books,
+                       List<String> titleKeys, List<String> authorKeys) throws IOException {
+        for (Map<String, Object> book : books) {
+            archived.remove((Integer) book.get("id"));
+        }
+        List<Map<String, Object>> hotBooks = new ArrayList<>(books);
+        List<String> hotTitleKeys = new ArrayList<>(titleKeys);
+        List<String> hotAuthorKeys = new ArrayList<>(authorKeys);
+        books.clear();
+        titleKeys.clear();
+        authorKeys.clear();
+
+        int next = 0;
+        for (Map.Entry<Integer, String> entry : archived.entrySet()) {
+            while (next < hotBooks.size() && (Integer) hotBooks.get(next).get("id") < entry.getKey()) {
+                books.add(hotBooks.get(next));
+                titleKeys.add(hotTitleKeys.get(next));
+                authorKeys.add(hotAuthorKeys.get(next));
+                next++;
+            }
+            Map<String, Object> book = objectMapper.readValue(entry.getValue(), new TypeReference<Map<String, Object>>() {});
+            // Same fields as convertToBook
+            book.remove("version");
+            book.values().removeIf(Objects::isNull);
+            books.add(book);
+            titleKeys.add(SearchKeys.normalize((String) book.get("title")));
+            authorKeys.add(SearchKeys.normalize((String) book.get("author")));
+        }
+        for (; next < hotBooks.size(); next++) {
+            books.add(hotBooks.get(next));
+            titleKeys.add(hotTitleKeys.get(next));
+            authorKeys.add(hotAuthorKeys.get(next));
+        }
+    }
+
+    // Stored key written by CreateBookHandler, normalized here for items created before it existed
+    String searchKey(Map<String, AttributeValue> item, String attribute, String value) {
+        AttributeValue stored = item.get(attribute);
+        return stored != null ? stored.s() : SearchKeys.normalize(value);
     }
 
-    private Map<String, Object> convertToBook(Map<String, AttributeValue> item) {
+    Map<String, Object> convertToBook(Map<String, AttributeValue> item) {
         Map<String, Object> book = new HashMap<>();
         
         if (item.get("id") != null) {
@@ -168,4 +352,14 @@ public class SearchBooksHandler implements RequestHandler<APIGatewayProxyRequest
         
         return book;
     }
-}
\ No newline at end of file
+
+    private static final class CachedIndex {
+        private final BookIndex index;
+        private final String version;
+
+        private CachedIndex(BookIndex index, String version) {
+            this.index = index;
+            this.version = version;
+        }
+    }
+}
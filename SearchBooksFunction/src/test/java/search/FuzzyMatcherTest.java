@@ -0,0 +1,110 @@
+package search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class FuzzyMatcherTest {
+
+    @Test
+    void matchesTokensOfOneOrTwoCharactersExactly() {
+        BookIndex index = index(
+                "It", "Stephen King",
+                "Ithaca", "Constantine Cavafy",
+                "Edit", "Anonymous",
+                "V.", "Thomas Pynchon",
+                "Vineland", "Thomas Pynchon");
+
+        assertEquals(List.of(1), ids(FuzzyMatcher.rank(index, index.all(), "it", null, 10)));
+        assertEquals(List.of(4), ids(FuzzyMatcher.rank(index, index.all(), "V", null, 10)));
+        assertEquals(1.0, FuzzyMatcher.similarity("ab", "ab"));
+        // Neither a prefix nor one edit is enough
+        assertEquals(0.0, FuzzyMatcher.similarity("ab", "abbey"));
+        assertEquals(0.0, FuzzyMatcher.similarity("ab", "tab"));
+        assertEquals(0.0, FuzzyMatcher.similarity("a", "b"));
+    }
+
+    @Test
+    void allowsTwoEditsFromFiveCharactersOnly() {
+        // A transposition is two edits
+        assertEquals(2, FuzzyMatcher.boundedEditDistance("tolkein", "tolkien", 2));
+        assertEquals(3, FuzzyMatcher.boundedEditDistance("talkein", "tolkien", 2));
+        assertEquals(3, FuzzyMatcher.boundedEditDistance("tolkien", "tolkienxyz", 2));
+        assertEquals(1.0 - 2.0 / 7, FuzzyMatcher.similarity("tolkein", "tolkien"), 1e-9);
+        assertEquals(0.0, FuzzyMatcher.similarity("talkein", "tolkien"));
+
+        // Four characters allow one edit; beyond it only the shared trigrams count
+        assertEquals(2, FuzzyMatcher.boundedEditDistance("bron", "brno", 1));
+        assertEquals(FuzzyMatcher.dice(FuzzyMatcher.trigrams("bron"), FuzzyMatcher.trigrams("brno")),
+                FuzzyMatcher.similarity("bron", "brno"));
+        assertTrue(FuzzyMatcher.similarity("bron", "brno") < FuzzyMatcher.MIN_SCORE);
+
+        BookIndex index = index(
+                "The Hobbit", "J. R. R. Tolkien",
+                "Dracula", "Bram Stoker");
+        List<Map<String, Object>> ranked = FuzzyMatcher.rank(index, index.all(), null, "Tolkein", 10);
+        assertEquals(List.of(1), ids(ranked));
+        assertEquals(0.714, ranked.get(0).get("score"));
+        assertEquals(List.of(), FuzzyMatcher.rank(index, index.all(), null, "Talkein", 10));
+    }
+
+    @Test
+    void keepsTheEarlierBooksOnATieAtTheLimit() {
+        BookIndex index = index(
+                "Dune", "Frank Herbert",
+                "Dune", "Frank Herbert",
+                "Dune", "Frank Herbert",
+                "Dune", "Frank Herbert",
+                "Children of Dune", "Frank Herbert");
+
+        List<Map<String, Object>> ranked = FuzzyMatcher.rank(index, index.all(), "dune", null, 2);
+
+        assertEquals(List.of(1, 2), ids(ranked));
+        assertEquals(1.0, ranked.get(0).get("score"));
+        assertEquals(1.0, ranked.get(1).get("score"));
+        assertEquals(List.of(1, 2, 3, 4, 5), ids(FuzzyMatcher.rank(index, index.all(), "dune", null, 5)));
+    }
+
+    @Test
+    void foldsAccentsAndCaseOfTheQuery() {
+        BookIndex index = index(
+                "Cien a\u00f1os de soledad", "Gabriel Garc\u00eda M\u00e1rquez",
+                "Rayuela", "Julio Cort\u00e1zar");
+
+        assertEquals(List.of(1), ids(FuzzyMatcher.rank(index, index.all(), "ANOS", "GARC\u00cdA MARQUEZ", 10)));
+        assertEquals(List.of(2), ids(FuzzyMatcher.rank(index, index.all(), null, "cortazar", 10)));
+        // A typo on top of a missing accent
+        List<Map<String, Object>> ranked = FuzzyMatcher.rank(index, index.all(), null, "Garsia M\u00e1rques", 10);
+        assertEquals(List.of(1), ids(ranked));
+        assertTrue((Double) ranked.get(0).get("score") > FuzzyMatcher.MIN_SCORE);
+    }
+
+    // Books with ids from 1, from pairs of title and author, keyed as SearchBooksHandler keys them
+    private static BookIndex index(String... titlesAndAuthors) {
+        List<Map<String, Object>> books = new ArrayList<>();
+        List<String> titleKeys = new ArrayList<>();
+        List<String> authorKeys = new ArrayList<>();
+        for (int i = 0; i < titlesAndAuthors.length; i += 2) {
+            Map<String, Object> book = new HashMap<>();
+            book.put("id", books.size() + 1);
+            book.put("title", titlesAndAuthors[i]);
+            book.put("author", titlesAndAuthors[i + 1]);
+            books.add(book);
+            titleKeys.add(SearchKeys.normalize(titlesAndAuthors[i]));
+            authorKeys.add(SearchKeys.normalize(titlesAndAuthors[i + 1]));
+        }
+        return BookIndex.build(books, titleKeys, authorKeys);
+    }
+
+    private static List<Integer> ids(List<Map<String, Object>> books) {
+        List<Integer> ids = new ArrayList<>();
+        books.forEach(book -> ids.add((Integer) book.get("id")));
+        return ids;
+    }
+}
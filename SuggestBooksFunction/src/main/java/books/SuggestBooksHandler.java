@@ -0,0 +1,217 @@
+package books;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+/**
+ * Search-as-you-type over the titles and authors of the caller's library, answered from a {@link SuggestIndex}
+ * that a warm container keeps per library.
+ *
+ * Each request reads the library's counter item, one small read, to learn its version: {@code lastId} moves
+ * with every created book and {@code statsVersion} with every created book, every changed title or author and
+ * every import. The index is rebuilt from the table and the archive only when that version differs from the one
+ * it was built at; otherwise the request costs two binary searches.
+ *
+ * {@code prefix} is required; {@code type} ({@code title} or {@code author}) narrows the suggestions, and
+ * {@code limit} sets their number (default 10, at most 50).
+ */
+@Slf4j
+public class SuggestBooksHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 50;
+    // Libraries whose index a warm container keeps; the least recently searched one is dropped first
+    private static final int MAX_CACHED_LIBRARIES = 32;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbTable<Book> bookTable;
+    private final BookArchive archive;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+
+    private final Map<String, SuggestIndex> cachedIndexes = Collections.synchronizedMap(
+            new LinkedHashMap<String, SuggestIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SuggestIndex> eldest) {
+                    return size() > MAX_CACHED_LIBRARIES;
+                }
+            });
+
+    public SuggestBooksHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public SuggestBooksHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public SuggestBooksHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this.tableName = System.getenv("TABLE_NAME");
+        this.dynamoDbClient = ddbClient;
+        this.bookTable = DynamoDbEnhancedClient.builder()
+                .dynamoDbClient(ddbClient)
+                .build()
+                .table(tableName, TableSchema.fromBean(Book.class));
+        this.archive = archive;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("SuggestBooks function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("SuggestBooks", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+
+            Map<String, String> params = input.getQueryStringParameters() != null
+                    ? input.getQueryStringParameters()
+                    : Map.of();
+            String prefix = SearchKeys.normalize(params.get("prefix"));
+            String type = params.get("type") != null && !params.get("type").trim().isEmpty()
+                    ? params.get("type").trim()
+                    : null;
+            if (prefix == null || prefix.isEmpty()
+                    || (type != null && !SuggestIndex.TITLE.equals(type) && !SuggestIndex.AUTHOR.equals(type))) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(400)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Invalid parameter\", \"message\": \"prefix is required and type must be title or author\"}"));
+            }
+            int limit = params.get("limit") != null
+                    ? Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(params.get("limit").trim())))
+                    : DEFAULT_LIMIT;
+
+            SuggestIndex index = getIndex(userId, metrics);
+            List<Map<String, Object>> suggestions = metrics.time("Search", () -> index.suggest(prefix, type, limit));
+            metrics.count("ItemCount", suggestions.size());
+
+            SerializationEvent serializationEvent = SerializationEvent.start("SuggestBooks");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(suggestions));
+            serializationEvent.end(jsonResponse.length());
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (NumberFormatException e) {
+            log.error("Invalid suggest parameter", e);
+
+            String errorResponse = "{\"error\": \"Invalid parameter\", \"message\": \"limit must be a valid integer\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(400)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        } catch (Exception e) {
+            log.error("Error suggesting books", e);
+
+            String errorResponse = "{\"error\": \"Failed to suggest books\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+
+    private SuggestIndex getIndex(String userId, RequestMetrics metrics) throws Exception {
+        Map<String, AttributeValue> counter = metrics.time("Query", () -> dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Libraries.itemKey(userId, Libraries.COUNTER_ID))
+                .projectionExpression("lastId, statsVersion")
+                .build()).item());
+        String version = version(counter);
+        SuggestIndex current = cachedIndexes.get(userId);
+        if (current != null && current.version().equals(version)) {
+            return current;
+        }
+
+        BookScanEvent scanEvent = BookScanEvent.start("SuggestBooks");
+        SortedMap<Integer, Book> books = metrics.time("Query", () -> {
+            SortedMap<Integer, Book> found = new TreeMap<>();
+            bookTable.query(QueryEnhancedRequest.builder()
+                            .queryConditional(Libraries.books(userId))
+                            .attributesToProject("id", "title", "author", "normalizedTitle", "normalizedAuthor")
+                            .build())
+                    .items()
+                    .forEach(book -> found.put(book.getId(), book));
+            return found;
+        });
+        scanEvent.end(books.size());
+        SortedMap<Integer, String> archived = metrics.time("Archive", () -> archive.books(userId));
+        current = metrics.time("IndexBuild", () -> {
+            for (Map.Entry<Integer, String> book : archived.entrySet()) {
+                if (!books.containsKey(book.getKey())) {
+                    books.put(book.getKey(), objectMapper.readValue(book.getValue(), Book.class));
+                }
+            }
+            return SuggestIndex.build(List.copyOf(books.values()), version);
+        });
+        log.info("Built the suggest index of user {} at version {} with {} entries", userId, version, current.size());
+        cachedIndexes.put(userId, current);
+        return current;
+    }
+
+    // An empty library has no counter yet
+    private static String version(Map<String, AttributeValue> counter) {
+        if (counter == null || counter.isEmpty()) {
+            return "0";
+        }
+        AttributeValue lastId = counter.get("lastId");
+        AttributeValue statsVersion = counter.get("statsVersion");
+        return (lastId != null ? lastId.n() : "0") + "." + (statsVersion != null ? statsVersion.n() : "0");
+    }
+}
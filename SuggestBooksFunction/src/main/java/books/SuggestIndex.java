@@ -0,0 +1,184 @@
+package books;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable typeahead index over the titles and authors of one library.
+ *
+ * Each distinct title and author is an entry, counted by its books. The entries' normalized keys (see
+ * {@link SearchKeys}) are cut at every word start, and the cuts are kept in one sorted array, so the entries
+ * whose key or one of whose words starts with a prefix are a contiguous range of it, found by two binary
+ * searches. A lookup costs the range it returns, not the size of the library.
+ */
+public class SuggestIndex {
+
+    public static final String TITLE = "title";
+    public static final String AUTHOR = "author";
+
+    private final String[] types;
+    private final String[] values;
+    private final String[] keys;
+    private final int[] counts;
+    // Latest book of each title entry, -1 for authors
+    private final int[] ids;
+    // Sorted word-start suffixes of the keys, and the entry each belongs to
+    private final String[] suffixes;
+    private final int[] suffixEntries;
+    private final String version;
+
+    private SuggestIndex(String[] types, String[] values, String[] keys, int[] counts, int[] ids, String[] suffixes,
+                         int[] suffixEntries, String version) {
+        this.types = types;
+        this.values = values;
+        this.keys = keys;
+        this.counts = counts;
+        this.ids = ids;
+        this.suffixes = suffixes;
+        this.suffixEntries = suffixEntries;
+        this.version = version;
+    }
+
+    /**
+     * Builds the index of the books, in id order, as of the library version.
+     */
+    public static SuggestIndex build(List<Book> books, String version) {
+        List<String> types = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        Map<String, Integer> entries = new HashMap<>();
+        for (Book book : books) {
+            addEntry(TITLE, book.getTitle(), book.getNormalizedTitle(), book.getId(), entries, types, values, keys, counts, ids);
+            addEntry(AUTHOR, book.getAuthor(), book.getNormalizedAuthor(), -1, entries, types, values, keys, counts, ids);
+        }
+
+        List<String> suffixes = new ArrayList<>();
+        List<Integer> suffixEntries = new ArrayList<>();
+        for (int entry = 0; entry < keys.size(); entry++) {
+            String key = keys.get(entry);
+            for (int start = 0; start < key.length(); start++) {
+                if (start == 0 || key.charAt(start - 1) == ' ') {
+                    suffixes.add(key.substring(start));
+                    suffixEntries.add(entry);
+                }
+            }
+        }
+        Integer[] order = new Integer[suffixes.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing(suffixes::get));
+
+        String[] sortedSuffixes = new String[order.length];
+        int[] sortedEntries = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedSuffixes[i] = suffixes.get(order[i]);
+            sortedEntries[i] = suffixEntries.get(order[i]);
+        }
+        return new SuggestIndex(types.toArray(new String[0]), values.toArray(new String[0]), keys.toArray(new String[0]),
+                counts.stream().mapToInt(Integer::intValue).toArray(), ids.stream().mapToInt(Integer::intValue).toArray(),
+                sortedSuffixes, sortedEntries, version);
+    }
+
+    // Entries are keyed by type and normalized value, so spellings that differ only in case or accents share one
+    private static void addEntry(String type, String value, String key, int id, Map<String, Integer> entries,
+                                 List<String> types, List<String> values, List<String> keys, List<Integer> counts,
+                                 List<Integer> ids) {
+        String normalized = key != null ? key : SearchKeys.normalize(value);
+        if (normalized == null || normalized.isEmpty()) {
+            return;
+        }
+        Integer entry = entries.get(type + ":" + normalized);
+        if (entry == null) {
+            entries.put(type + ":" + normalized, types.size());
+            types.add(type);
+            values.add(value);
+            keys.add(normalized);
+            counts.add(1);
+            ids.add(id);
+        } else {
+            counts.set(entry, counts.get(entry) + 1);
+            // Books come in id order, so the last one is the latest
+            ids.set(entry, id);
+        }
+    }
+
+    public String version() {
+        return version;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * The entries of the type, or of both types when {@code null}, matching the normalized prefix: those whose
+     * whole key starts with it first, then those with a word starting with it, each by number of books.
+     */
+    public List<Map<String, Object>> suggest(String prefix, String type, int limit) {
+        int from = firstAtLeast(prefix);
+        // Every string starting with the prefix sorts before the prefix followed by the last character
+        int to = firstAtLeast(prefix + Character.MAX_VALUE);
+
+        BitSet matches = new BitSet(values.length);
+        BitSet whole = new BitSet(values.length);
+        for (int i = from; i < to; i++) {
+            int entry = suffixEntries[i];
+            if (type == null || type.equals(types[entry])) {
+                matches.set(entry);
+                // A suffix as long as the whole key is the key itself
+                if (suffixes[i].length() == keys[entry].length()) {
+                    whole.set(entry);
+                }
+            }
+        }
+
+        // The best entries, kept in a heap whose head is the worst of them
+        Comparator<Integer> ranking = Comparator.<Integer, Boolean>comparing(whole::get).reversed()
+                .thenComparing(entry -> -counts[entry])
+                .thenComparing(entry -> values[entry]);
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, ranking.reversed());
+        matches.stream().forEach(entry -> {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        });
+        List<Integer> ranked = new ArrayList<>(best);
+        ranked.sort(ranking);
+
+        List<Map<String, Object>> suggestions = new ArrayList<>(ranked.size());
+        for (int entry : ranked) {
+            Map<String, Object> suggestion = new LinkedHashMap<>();
+            suggestion.put("type", types[entry]);
+            suggestion.put("value", values[entry]);
+            suggestion.put("count", counts[entry]);
+            if (ids[entry] >= 0) {
+                suggestion.put("id", ids[entry]);
+            }
+            suggestions.add(suggestion);
+        }
+        return suggestions;
+    }
+
+    private int firstAtLeast(String key) {
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (suffixes[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
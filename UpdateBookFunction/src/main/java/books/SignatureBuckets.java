@@ -0,0 +1,53 @@
+package books;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Changes to the {@link BookSignature} buckets of the signature table. Ids are added and removed with {@code ADD}
+ * and {@code DELETE}, so writers never undo each other's changes and a book added twice is listed once, and the
+ * bucket's {@code version} is moved on with every change.
+ */
+final class SignatureBuckets {
+
+    private SignatureBuckets() {
+    }
+
+    static Update add(String tableName, String userId, String bucket, Collection<Integer> ids) {
+        return change("ADD ids :ids, version :one", tableName, userId, bucket, ids);
+    }
+
+    static Update remove(String tableName, String userId, String bucket, Collection<Integer> ids) {
+        return change("DELETE ids :ids ADD version :one", tableName, userId, bucket, ids);
+    }
+
+    private static Update change(String expression, String tableName, String userId, String bucket,
+                                 Collection<Integer> ids) {
+        return Update.builder()
+                .tableName(tableName)
+                .key(Map.of("userId", AttributeValue.fromS(userId), "bucket", AttributeValue.fromS(bucket)))
+                .updateExpression(expression)
+                .expressionAttributeValues(Map.of(
+                        ":ids", AttributeValue.fromNs(ids.stream().map(String::valueOf).collect(Collectors.toList())),
+                        ":one", AttributeValue.fromN("1")))
+                .build();
+    }
+
+    /**
+     * Runs the change on its own, outside a transaction.
+     */
+    static void write(DynamoDbClient dynamoDbClient, Update update) {
+        dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(update.tableName())
+                .key(update.key())
+                .updateExpression(update.updateExpression())
+                .expressionAttributeValues(update.expressionAttributeValues())
+                .build());
+    }
+}
@@ -0,0 +1,533 @@
+package books;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionCheck;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Partial update of a book: the fields present in the PATCH body become an update with a {@code SET} expression, conditioned on the {@code version} the client read (0 for books written before
+ * versioning). A change to the book alone is one conditional UpdateItem. A changed {@code finishDate} also
+ * recalculates {@code readYear} and {@code readingTimeInDays}, and the reading time of the next book, which is
+ * measured from this book's finish date; both updates then go into one transaction, together with a check that
+ * the previous book is still the version the reading time was computed from. The date must stay between the
+ * finish dates of the previous and next books, as ids follow the finish order; a neighbour of an archived read
+ * year is looked up in the {@link BookArchive}, and only the order is checked against it, as archived books are
+ * read-only. Changes to fields the reading statistics depend on drop the library's statistics in the same
+ * transaction, so a book is never updated with the statistics left stale. A changed title or author likewise
+ * moves the book to the {@link BookSignature} buckets of the duplicate check, when {@code SIGNATURE_TABLE_NAME}
+ * is set.
+ *
+ * Each write also replaces the pre-rendered {@code json} attribute, rendered from the item as read and the
+ * changes. The version condition ensures the item was not changed in between, so the stored JSON always matches
+ * the book.
+ */
+@Slf4j
+public class UpdateBookHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final Set<String> STRING_FIELDS = Set.of("title", "author", "language", "format");
+    // Fields the library's reading statistics are computed from
+    private static final Set<String> STATS_FIELDS = Set.of("title", "author", "language", "format", "finishDate");
+
+    private final DynamoDbClient dynamoDbClient;
+    private final TableSchema<Book> bookSchema = TableSchema.fromBean(Book.class);
+    private final ObjectMapper objectMapper;
+    private final BookArchive archive;
+    private final String tableName;
+    // Signature buckets of the duplicate check, optional like in CreateBookHandler
+    private final String signatureTableName;
+
+    public UpdateBookHandler() {
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(o -> o
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .addExecutionInterceptor(new DynamoDbMetricsInterceptor()))
+                .build());
+    }
+
+    public UpdateBookHandler(DynamoDbClient ddbClient) {
+        this(ddbClient, BookArchive.fromEnvironment());
+    }
+
+    public UpdateBookHandler(DynamoDbClient ddbClient, BookArchive archive) {
+        this(ddbClient, archive, System.getenv("TABLE_NAME"), System.getenv("SIGNATURE_TABLE_NAME"));
+    }
+
+    UpdateBookHandler(DynamoDbClient ddbClient, BookArchive archive, String tableName, String signatureTableName) {
+        this.tableName = tableName;
+        this.signatureTableName = signatureTableName != null && !signatureTableName.isEmpty() ? signatureTableName : null;
+        this.dynamoDbClient = ddbClient;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.findAndRegisterModules();
+        this.objectMapper.disable(com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.archive = archive;
+    }
+
+    /**
+     * Entry point behind the HTTP API, which sends the version 2.0 payload.
+     */
+    public APIGatewayV2HTTPResponse handleHttpRequest(APIGatewayV2HTTPEvent input, Context context) {
+        return ApiGateway.toHttpApi(handleRequest(ApiGateway.fromHttpApi(input), context));
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        log.info("UpdateBook function started - Request ID: {}", context != null ? context.getAwsRequestId() : "test");
+
+        Map<String, String> headers = ApiGateway.JSON_HEADERS;
+
+        // Handle OPTIONS request for CORS preflight
+        if ("OPTIONS".equals(input.getHttpMethod())) {
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody("");
+        }
+
+        RequestMetrics metrics = RequestMetrics.start("UpdateBook", context);
+        try {
+            String userId = Libraries.userId(input);
+            if (userId == null) {
+                return metrics.finish(new APIGatewayProxyResponseEvent()
+                        .withStatusCode(401)
+                        .withHeaders(headers)
+                        .withBody("{\"error\": \"Unauthorized\"}"));
+            }
+            
+            int bookId = Integer.parseInt(input.getPathParameters().get("id"));
+            // Id 0 is the library's counter, not a book
+            if (bookId <= Libraries.COUNTER_ID) {
+                return metrics.finish(error(404, "Book not found", headers));
+            }
+            Map<String, Object> changes = objectMapper.readValue(input.getBody(), new TypeReference<Map<String, Object>>() { });
+            log.info("Updating book with ID: {}, fields: {}", bookId, changes.keySet());
+
+            BookUpdate update = metrics.time("Mapping", () -> toUpdate(userId, bookId, changes));
+            Map<String, AttributeValue> current = metrics.time("Query", () -> dynamoDbClient.getItem(GetItemRequest.builder()
+                    .tableName(tableName)
+                    .key(update.key())
+                    .consistentRead(true)
+                    .build()).item());
+            if (current == null || current.isEmpty()) {
+                log.info("Book not found with ID: {}", bookId);
+                return metrics.finish(error(404, "Book not found", headers));
+            }
+            boolean statsChanged = changes.keySet().stream().anyMatch(STATS_FIELDS::contains);
+            Map<String, AttributeValue> updated;
+            try {
+                updated = update.finishDate != null
+                        ? updateWithSuccessor(update, current, statsChanged)
+                        : updateBook(update, current, statsChanged);
+            } catch (ConditionalCheckFailedException e) {
+                return metrics.finish(conflictOrNotFound(userId, bookId, headers));
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.cancellationReasons();
+                if (!reasons.isEmpty() && "ConditionalCheckFailed".equals(reasons.get(0).code())) {
+                    return metrics.finish(conflictOrNotFound(userId, bookId, headers));
+                }
+                if (reasons.stream().skip(1).anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()))) {
+                    return metrics.finish(error(409, "The previous or next book was changed concurrently, retry the update", headers));
+                }
+                throw e;
+            }
+
+            BookResponse response = metrics.time("Mapping", () -> convertToBookResponse(bookSchema.mapToItem(updated)));
+            SerializationEvent serializationEvent = SerializationEvent.start("UpdateBook");
+            String jsonResponse = metrics.time("Serialization", () -> objectMapper.writeValueAsString(response));
+            serializationEvent.end(jsonResponse.length());
+
+            log.info("Book updated successfully with ID: {}, version: {}", bookId, response.getVersion());
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(jsonResponse));
+
+        } catch (IllegalArgumentException | DateTimeParseException | JsonProcessingException e) {
+            log.info("Invalid update request: {}", e.getMessage());
+            return metrics.finish(error(400, e.getMessage(), headers));
+        } catch (Exception e) {
+            log.error("Error updating book", e);
+
+            String errorResponse = "{\"error\": \"Failed to update book\", \"message\": \"" + e.getMessage() + "\"}";
+
+            return metrics.finish(new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(headers)
+                    .withBody(errorResponse));
+        }
+    }
+
+    /**
+     * Validates the PATCH body and turns it into the update expression of the book.
+     */
+    BookUpdate toUpdate(String userId, int bookId, Map<String, Object> changes) {
+        Map<String, Object> fields = new HashMap<>(changes);
+        if (!(fields.remove("version") instanceof Number)) {
+            throw new IllegalArgumentException("version is required, use 0 for books without one");
+        }
+        long expectedVersion = ((Number) changes.get("version")).longValue();
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+
+        BookUpdate update = new BookUpdate(userId, bookId, expectedVersion);
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            String name = field.getKey();
+            Object value = field.getValue();
+            if (STRING_FIELDS.contains(name)) {
+                if (!(value instanceof String) || ((String) value).trim().isEmpty()) {
+                    throw new IllegalArgumentException(name + " must be a non-empty string");
+                }
+                update.set(name, AttributeValue.fromS((String) value));
+                // Keep the stored search keys in step with the values they are derived from
+                if ("title".equals(name)) {
+                    update.set("normalizedTitle", AttributeValue.fromS(SearchKeys.normalize((String) value)));
+                } else if ("author".equals(name)) {
+                    update.set("normalizedAuthor", AttributeValue.fromS(SearchKeys.normalize((String) value)));
+                }
+            } else if ("publicationYear".equals(name)) {
+                if (!(value instanceof Integer)) {
+                    throw new IllegalArgumentException("publicationYear must be a number");
+                }
+                update.set(name, AttributeValue.fromN(value.toString()));
+            } else if ("finishDate".equals(name)) {
+                if (!(value instanceof String)) {
+                    throw new IllegalArgumentException("finishDate must be an ISO date");
+                }
+                update.finishDate = LocalDate.parse((String) value);
+                update.set(name, AttributeValue.fromS(update.finishDate.toString()));
+                update.set("readYear", AttributeValue.fromN(String.valueOf(update.finishDate.getYear())));
+            } else {
+                throw new IllegalArgumentException("Field cannot be updated: " + name);
+            }
+        }
+        return update;
+    }
+
+    private Map<String, AttributeValue> updateBook(BookUpdate update, Map<String, AttributeValue> current,
+            boolean statsChanged) throws JsonProcessingException {
+        Map<String, AttributeValue> updated = render(update, current);
+        List<TransactWriteItem> writes = new ArrayList<>();
+        writes.add(update.write(tableName));
+        writes.addAll(signatureChanges(update.userId, update.bookId, current, updated));
+        commit(update.userId, writes, statsChanged);
+        return updated;
+    }
+
+    /**
+     * Updates the book and the reading time of the next one in a single transaction. Ids are assigned in
+     * finish order without gaps, so the previous and next books are the neighbouring ids.
+     */
+    private Map<String, AttributeValue> updateWithSuccessor(BookUpdate update, Map<String, AttributeValue> current,
+            boolean statsChanged) throws IOException {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        if (update.bookId > 1) {
+            keys.add(Libraries.itemKey(update.userId, update.bookId - 1));
+        }
+        keys.add(Libraries.itemKey(update.userId, update.bookId + 1));
+        List<Map<String, AttributeValue>> neighbours = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                        .keys(keys)
+                        .consistentRead(true)
+                        .build()))
+                .build()).responses().getOrDefault(tableName, List.of());
+
+        Map<String, AttributeValue> previous = null;
+        Map<String, AttributeValue> next = null;
+        for (Map<String, AttributeValue> neighbour : neighbours) {
+            if (Integer.parseInt(neighbour.get("id").n()) < update.bookId) {
+                previous = neighbour;
+            } else {
+                next = neighbour;
+            }
+        }
+
+        // Neighbours missing from the table may have been archived with their read year
+        LocalDate previousFinishDate = previous != null || update.bookId == 1
+                ? finishDate(previous)
+                : archivedFinishDate(update.userId, update.bookId - 1);
+        LocalDate nextFinishDate = next != null ? finishDate(next) : archivedFinishDate(update.userId, update.bookId + 1);
+
+        // A date out of finish order would make this book's or the next book's reading time negative
+        if (previousFinishDate != null && update.finishDate.isBefore(previousFinishDate)) {
+            throw new IllegalArgumentException("finishDate must not be before " + previousFinishDate
+                    + ", the finish date of the previous book");
+        }
+        if (nextFinishDate != null && update.finishDate.isAfter(nextFinishDate)) {
+            throw new IllegalArgumentException("finishDate must not be after " + nextFinishDate
+                    + ", the finish date of the next book");
+        }
+
+        // Same rule as CreateBookHandler: days since the previous book was finished, 0 for the first book. Without
+        // the previous book's date there is nothing to measure from, and the stored reading time is kept.
+        if (update.bookId == 1) {
+            update.set("readingTimeInDays", AttributeValue.fromN("0"));
+        } else if (previousFinishDate != null) {
+            update.set("readingTimeInDays", AttributeValue.fromN(
+                    String.valueOf(ChronoUnit.DAYS.between(previousFinishDate, update.finishDate))));
+        }
+        Map<String, AttributeValue> updated = render(update, current);
+
+        List<TransactWriteItem> writes = new ArrayList<>();
+        writes.add(update.write(tableName));
+        if (next != null && nextFinishDate != null) {
+            BookUpdate successor = new BookUpdate(update.userId, update.bookId + 1,
+                    next.get("version") != null ? Long.parseLong(next.get("version").n()) : 0);
+            successor.set("readingTimeInDays",
+                    AttributeValue.fromN(String.valueOf(ChronoUnit.DAYS.between(update.finishDate, nextFinishDate))));
+            render(successor, next);
+            writes.add(successor.write(tableName));
+        }
+        if (previous != null) {
+            // The reading time above is only right while the previous book keeps the finish date it was read with
+            BookUpdate predecessor = new BookUpdate(update.userId, update.bookId - 1,
+                    previous.get("version") != null ? Long.parseLong(previous.get("version").n()) : 0);
+            writes.add(TransactWriteItem.builder().conditionCheck(ConditionCheck.builder()
+                    .tableName(tableName)
+                    .key(predecessor.key())
+                    .conditionExpression(predecessor.condition())
+                    .expressionAttributeNames(Map.of("#version", "version"))
+                    .expressionAttributeValues(Map.of(":expectedVersion", predecessor.values.get(":expectedVersion")))
+                    .build()).build());
+        }
+        writes.addAll(signatureChanges(update.userId, update.bookId, current, updated));
+        commit(update.userId, writes, statsChanged);
+
+        // Transactions return no attributes; the version condition held, so the book is as rendered
+        return updated;
+    }
+
+    /**
+     * Moves the book from the signature buckets of its old title and author to those of the new ones. Buckets
+     * both signatures share are left alone.
+     */
+    private List<TransactWriteItem> signatureChanges(String userId, int bookId, Map<String, AttributeValue> current,
+                                                     Map<String, AttributeValue> updated) {
+        List<TransactWriteItem> writes = new ArrayList<>();
+        if (signatureTableName == null) {
+            return writes;
+        }
+        List<String> before = signature(current).buckets();
+        List<String> after = signature(updated).buckets();
+        for (String bucket : before) {
+            if (!after.contains(bucket)) {
+                writes.add(TransactWriteItem.builder()
+                        .update(SignatureBuckets.remove(signatureTableName, userId, bucket, List.of(bookId)))
+                        .build());
+            }
+        }
+        for (String bucket : after) {
+            if (!before.contains(bucket)) {
+                writes.add(TransactWriteItem.builder()
+                        .update(SignatureBuckets.add(signatureTableName, userId, bucket, List.of(bookId)))
+                        .build());
+            }
+        }
+        return writes;
+    }
+
+    // Stored search keys, normalized here for books written before they were stored
+    private static BookSignature signature(Map<String, AttributeValue> item) {
+        return BookSignature.of(
+                item.get("normalizedTitle") != null ? item.get("normalizedTitle").s() : SearchKeys.normalize(item.get("title").s()),
+                item.get("normalizedAuthor") != null ? item.get("normalizedAuthor").s() : SearchKeys.normalize(item.get("author").s()));
+    }
+
+    /**
+     * Runs the writes, the book's update first, in one transaction, or as a plain conditional UpdateItem when the
+     * book's update is the only write. With {@code statsChanged}, the transaction also moves the counter's
+     * {@code statsVersion} on, which makes the library's reading statistics stale, for GET /books/stats to compute
+     * them again from the books, and makes SuggestBooksHandler rebuild its index of titles and authors. The
+     * counter's {@code lastFinishDate} is dropped with it, as the finish date changed may be the last book's.
+     */
+    private void commit(String userId, List<TransactWriteItem> writes, boolean statsChanged) {
+        if (writes.size() == 1 && !statsChanged) {
+            // A transaction of one item costs twice the write capacity for nothing
+            Update update = writes.get(0).update();
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(update.tableName())
+                    .key(update.key())
+                    .updateExpression(update.updateExpression())
+                    .conditionExpression(update.conditionExpression())
+                    .expressionAttributeNames(update.expressionAttributeNames())
+                    .expressionAttributeValues(update.expressionAttributeValues())
+                    .build());
+            return;
+        }
+        if (statsChanged) {
+            writes.add(TransactWriteItem.builder().update(Update.builder()
+                    .tableName(tableName)
+                    .key(Libraries.itemKey(userId, Libraries.COUNTER_ID))
+                    .updateExpression("REMOVE lastFinishDate ADD statsVersion :one")
+                    .expressionAttributeValues(Map.of(":one", AttributeValue.fromN("1")))
+                    .build()).build());
+        }
+        dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(writes).build());
+    }
+
+    /**
+     * Adds the book as it will be after the update to the update as its {@code json} attribute, and returns
+     * that item.
+     */
+    private Map<String, AttributeValue> render(BookUpdate update, Map<String, AttributeValue> item)
+            throws JsonProcessingException {
+        Map<String, AttributeValue> updated = update.applyTo(item);
+        AttributeValue json = AttributeValue.fromS(objectMapper.writeValueAsString(convertToBookResponse(bookSchema.mapToItem(updated))));
+        update.set("json", json);
+        updated.put("json", json);
+        return updated;
+    }
+
+    private static LocalDate finishDate(Map<String, AttributeValue> book) {
+        return book != null && book.get("finishDate") != null ? LocalDate.parse(book.get("finishDate").s()) : null;
+    }
+
+    // The finish date of an archived book, or null when the archive does not have it either
+    private LocalDate archivedFinishDate(String userId, int id) throws IOException {
+        String json = archive.book(userId, id);
+        if (json == null) {
+            return null;
+        }
+        String finishDate = objectMapper.readTree(json).path("finishDate").asText(null);
+        return finishDate != null ? LocalDate.parse(finishDate) : null;
+    }
+
+    private APIGatewayProxyResponseEvent conflictOrNotFound(String userId, int bookId, Map<String, String> headers) {
+        Map<String, AttributeValue> current = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Libraries.itemKey(userId, bookId))
+                .projectionExpression("id")
+                .build()).item();
+        if (current == null || current.isEmpty()) {
+            log.info("Book not found with ID: {}", bookId);
+            return error(404, "Book not found", headers);
+        }
+        log.info("Version conflict updating book with ID: {}", bookId);
+        return error(409, "The book was changed by another request, reload it and retry", headers);
+    }
+
+    private static APIGatewayProxyResponseEvent error(int statusCode, String message, Map<String, String> headers) {
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(statusCode)
+                .withHeaders(headers)
+                .withBody("{\"error\": \"" + message.replace("\"", "'") + "\"}");
+    }
+
+    private BookResponse convertToBookResponse(Book book) {
+        BookResponse response = new BookResponse();
+        response.setId(book.getId());
+        response.setTitle(book.getTitle());
+        response.setAuthor(book.getAuthor());
+        response.setPublicationYear(book.getPublicationYear());
+        response.setLanguage(book.getLanguage());
+        response.setFormat(book.getFormat());
+        response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
+        response.setReadYear(book.getReadYear());
+        response.setReadingTimeInDays(book.getReadingTimeInDays());
+        response.setVersion(book.getVersion());
+        return response;
+    }
+
+    /**
+     * SET expression of one book, with the version check and increment of {@link Book#getVersion()}.
+     */
+    static final class BookUpdate {
+        private final String userId;
+        private final int bookId;
+        private final long expectedVersion;
+        private final Map<String, String> names = new HashMap<>();
+        private final Map<String, AttributeValue> values = new HashMap<>();
+        private final List<String> assignments = new ArrayList<>();
+        private LocalDate finishDate;
+
+        BookUpdate(String userId, int bookId, long expectedVersion) {
+            this.userId = userId;
+            this.bookId = bookId;
+            this.expectedVersion = expectedVersion;
+            names.put("#version", "version");
+            values.put(":expectedVersion", AttributeValue.fromN(String.valueOf(expectedVersion)));
+            values.put(":nextVersion", AttributeValue.fromN(String.valueOf(expectedVersion + 1)));
+        }
+
+        Map<String, AttributeValue> key() {
+            return Libraries.itemKey(userId, bookId);
+        }
+
+        void set(String attribute, AttributeValue value) {
+            names.put("#" + attribute, attribute);
+            values.put(":" + attribute, value);
+            assignments.add("#" + attribute + " = :" + attribute);
+        }
+
+        /**
+         * The item after this update, given the item it applies to.
+         */
+        Map<String, AttributeValue> applyTo(Map<String, AttributeValue> item) {
+            Map<String, AttributeValue> updated = new HashMap<>(item);
+            for (String attribute : names.values()) {
+                AttributeValue value = values.get(":" + attribute);
+                if (value != null) {
+                    updated.put(attribute, value);
+                }
+            }
+            updated.put("version", values.get(":nextVersion"));
+            return updated;
+        }
+
+        TransactWriteItem write(String tableName) {
+            return TransactWriteItem.builder().update(Update.builder()
+                    .tableName(tableName)
+                    .key(key())
+                    .updateExpression(expression())
+                    .conditionExpression(condition())
+                    .expressionAttributeNames(names)
+                    .expressionAttributeValues(values)
+                    .build()).build();
+        }
+
+        String expression() {
+            return "SET " + String.join(", ", assignments) + ", #version = :nextVersion";
+        }
+
+        // attribute_exists(id) keeps a PATCH of a missing book from creating it
+        String condition() {
+            String versionMatches = "#version = :expectedVersion";
+            if (expectedVersion == 0) {
+                versionMatches = "(attribute_not_exists(#version) OR " + versionMatches + ")";
+            }
+            return "attribute_exists(id) AND " + versionMatches;
+        }
+    }
+}
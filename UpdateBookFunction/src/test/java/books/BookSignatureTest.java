@@ -0,0 +1,66 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BookSignatureTest {
+
+    @Test
+    void putsNearDuplicatesInACommonBucket() {
+        assertNearDuplicates("The Fellowship of the Ring", "J. R. R. Tolkien",
+                "The Fellowship of the Rings", "J.R.R. Tolkien");
+        assertNearDuplicates("Cien a\u00f1os de soledad", "Gabriel Garc\u00eda M\u00e1rquez",
+                "Cien anos de soledad", "Gabriel Garcia Marquez");
+        assertNearDuplicates("Harry Potter and the Philosopher's Stone", "J. K. Rowling",
+                "Harry Potter and the Philosophers Stone", "J.K. Rowling");
+    }
+
+    @Test
+    void keepsUnrelatedBooksApart() {
+        assertUnrelated("Dune", "Frank Herbert", "Emma", "Jane Austen");
+        assertUnrelated("The Fellowship of the Ring", "J. R. R. Tolkien", "The Name of the Rose", "Umberto Eco");
+        assertUnrelated("War and Peace", "Leo Tolstoy", "Peace and War", "Raymond Aron");
+    }
+
+    @Test
+    void leavesABookWithoutTitleAndAuthorOutOfEveryBucket() {
+        BookSignature empty = BookSignature.of("", null);
+
+        assertTrue(empty.isEmpty());
+        assertEquals(List.of(), empty.buckets());
+        assertEquals(0.0, empty.similarity(empty));
+    }
+
+    private static void assertNearDuplicates(String title, String author, String otherTitle, String otherAuthor) {
+        BookSignature signature = signature(title, author);
+        BookSignature other = signature(otherTitle, otherAuthor);
+
+        assertTrue(signature.similarity(other) >= BookSignature.THRESHOLD, title);
+        assertFalse(common(signature, other).isEmpty(), title);
+        assertEquals(BookSignature.BANDS, signature.buckets().size());
+    }
+
+    private static void assertUnrelated(String title, String author, String otherTitle, String otherAuthor) {
+        BookSignature signature = signature(title, author);
+        BookSignature other = signature(otherTitle, otherAuthor);
+
+        assertTrue(signature.similarity(other) < BookSignature.THRESHOLD, title);
+        assertEquals(List.of(), common(signature, other), title);
+    }
+
+    private static BookSignature signature(String title, String author) {
+        return BookSignature.of(SearchKeys.normalize(title), SearchKeys.normalize(author));
+    }
+
+    private static List<String> common(BookSignature signature, BookSignature other) {
+        List<String> common = new ArrayList<>(signature.buckets());
+        common.retainAll(other.buckets());
+        return common;
+    }
+}
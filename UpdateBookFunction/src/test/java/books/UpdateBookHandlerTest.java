@@ -0,0 +1,306 @@
+package books;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+class UpdateBookHandlerTest {
+
+    private static final String USER = "reader";
+    private static final String TABLE = "Books";
+    private static final String SIGNATURES = "BookSignatures";
+
+    private final Map<Integer, Map<String, AttributeValue>> table = new TreeMap<>();
+    private final List<UpdateItemRequest> updates = new ArrayList<>();
+    private final List<TransactWriteItemsRequest> transactions = new ArrayList<>();
+    private final BookArchive archive = new BookArchive(new InMemoryS3(), "archive-bucket", 300_000);
+
+    @BeforeAll
+    static void withoutXRay() {
+        // There is no X-Ray segment outside Lambda; make the subsegments no-ops
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @Test
+    void measuresTheReadingTimeFromAnArchivedPreviousBook() throws IOException {
+        archive(2019, book(4, "2020-02-01", 12));
+        table.put(5, book(5, "2020-03-01", 29));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"finishDate\":\"2020-03-11\",\"version\":1}");
+
+        assertEquals(200, response.getStatusCode());
+        // 29 days of February 2020 and 10 of March
+        assertEquals("39", bookUpdate().expressionAttributeValues().get(":readingTimeInDays").n());
+    }
+
+    @Test
+    void rejectsAFinishDateBeforeTheArchivedPreviousBook() throws IOException {
+        archive(2019, book(4, "2020-02-01", 12));
+        table.put(5, book(5, "2020-03-01", 29));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"finishDate\":\"2020-01-31\",\"version\":1}");
+
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("2020-02-01"));
+        assertTrue(transactions.isEmpty() && updates.isEmpty());
+    }
+
+    @Test
+    void keepsTheReadingTimeWhenThePreviousBookIsNowhere() {
+        table.put(5, book(5, "2020-03-01", 29));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"finishDate\":\"2020-03-11\",\"version\":1}");
+
+        assertEquals(200, response.getStatusCode());
+        Update update = bookUpdate();
+        assertNull(update.expressionAttributeValues().get(":readingTimeInDays"));
+        assertFalse(update.updateExpression().contains("readingTimeInDays"));
+        assertTrue(update.expressionAttributeValues().get(":json").s().contains("\"readingTimeInDays\":29"));
+    }
+
+    @Test
+    void updatesTheSuccessorAndChecksThePredecessorInOneTransaction() {
+        table.put(4, book(4, "2020-02-01", 12));
+        table.put(5, book(5, "2020-03-01", 29));
+        table.put(6, book(6, "2020-04-01", 31));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"finishDate\":\"2020-03-11\",\"version\":1}");
+
+        assertEquals(200, response.getStatusCode());
+        List<TransactWriteItem> items = transactions.get(0).transactItems();
+        assertEquals("39", items.get(0).update().expressionAttributeValues().get(":readingTimeInDays").n());
+        assertEquals("21", items.get(1).update().expressionAttributeValues().get(":readingTimeInDays").n());
+        assertNotNull(items.get(2).conditionCheck());
+        // finishDate feeds the statistics, which are dropped in the same transaction
+        assertEquals(Libraries.itemKey(USER, Libraries.COUNTER_ID), items.get(3).update().key());
+    }
+
+    @Test
+    void writesAChangeOfTheBookAloneWithoutATransaction() {
+        table.put(5, book(5, "2020-03-01", 29));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"publicationYear\":1999,\"version\":1}");
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue(transactions.isEmpty());
+        assertEquals(1, updates.size());
+        UpdateItemRequest update = updates.get(0);
+        assertEquals(Libraries.itemKey(USER, 5), update.key());
+        assertTrue(update.conditionExpression().contains("#version = :expectedVersion"));
+        assertEquals("1999", update.expressionAttributeValues().get(":publicationYear").n());
+    }
+
+    @Test
+    void movesTheBookToTheBucketsOfItsNewTitle() {
+        table.put(5, book(5, "2020-03-01", 29));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"title\":\"The Left Hand of Darkness\",\"version\":1}",
+                SIGNATURES);
+
+        assertEquals(200, response.getStatusCode());
+        List<String> before = BookSignature.of("book 5", "author 5").buckets();
+        List<String> after = BookSignature.of("the left hand of darkness", "author 5").buckets();
+        List<String> removed = new ArrayList<>(before);
+        removed.removeAll(after);
+        List<String> added = new ArrayList<>(after);
+        added.removeAll(before);
+        assertFalse(removed.isEmpty());
+        assertEquals(removed, signatureBuckets("DELETE ids :ids ADD version :one"));
+        assertEquals(added, signatureBuckets("ADD ids :ids, version :one"));
+        for (TransactWriteItem item : transactions.get(0).transactItems()) {
+            if (SIGNATURES.equals(item.update().tableName())) {
+                assertEquals(List.of("5"), item.update().expressionAttributeValues().get(":ids").ns());
+            }
+        }
+    }
+
+    @Test
+    void leavesTheBucketsOfAnUnchangedSignatureAlone() {
+        table.put(5, book(5, "2020-03-01", 29));
+
+        APIGatewayProxyResponseEvent response = patch(5, "{\"author\":\"AUTHOR 5\",\"version\":1}", SIGNATURES);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(List.of(), signatureBuckets("DELETE ids :ids ADD version :one"));
+        assertEquals(List.of(), signatureBuckets("ADD ids :ids, version :one"));
+    }
+
+    private APIGatewayProxyResponseEvent patch(int id, String body) {
+        return patch(id, body, null);
+    }
+
+    private APIGatewayProxyResponseEvent patch(int id, String body, String signatureTableName) {
+        APIGatewayProxyRequestEvent.ProxyRequestContext context = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        context.setAuthorizer(Map.of("claims", Map.of("sub", USER)));
+        return new UpdateBookHandler(client(), archive, TABLE, signatureTableName).handleRequest(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("PATCH")
+                .withPathParameters(Map.of("id", String.valueOf(id)))
+                .withBody(body)
+                .withRequestContext(context), null);
+    }
+
+    // The update of the book itself, the first write of the transaction
+    private Update bookUpdate() {
+        assertEquals(1, transactions.size());
+        return transactions.get(0).transactItems().get(0).update();
+    }
+
+    // The buckets of the signature table that the transaction changes with the expression
+    private List<String> signatureBuckets(String updateExpression) {
+        assertEquals(1, transactions.size());
+        List<String> buckets = new ArrayList<>();
+        for (TransactWriteItem item : transactions.get(0).transactItems()) {
+            Update update = item.update();
+            if (update != null && SIGNATURES.equals(update.tableName()) && updateExpression.equals(update.updateExpression())) {
+                buckets.add(update.key().get("bucket").s());
+            }
+        }
+        return buckets;
+    }
+
+    private static Map<String, AttributeValue> book(int id, String finishDate, int readingTimeInDays) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", AttributeValue.fromS(USER));
+        item.put("id", AttributeValue.fromN(String.valueOf(id)));
+        item.put("title", AttributeValue.fromS("Book " + id));
+        item.put("author", AttributeValue.fromS("Author " + id));
+        item.put("publicationYear", AttributeValue.fromN("1990"));
+        item.put("language", AttributeValue.fromS("en"));
+        item.put("format", AttributeValue.fromS("paperback"));
+        item.put("finishDate", AttributeValue.fromS(finishDate));
+        item.put("readYear", AttributeValue.fromN(finishDate.substring(0, 4)));
+        item.put("readingTimeInDays", AttributeValue.fromN(String.valueOf(readingTimeInDays)));
+        item.put("version", AttributeValue.fromN("1"));
+        return item;
+    }
+
+    // Moves the book to the archive as ArchiveBooksHandler does, rendered by BookJsonWriter's rules
+    private void archive(int readYear, Map<String, AttributeValue> item) throws IOException {
+        String json = "{\"id\":" + item.get("id").n() + ",\"title\":\"" + item.get("title").s()
+                + "\",\"finishDate\":\"" + item.get("finishDate").s() + "\",\"readingTimeInDays\":"
+                + item.get("readingTimeInDays").n() + ",\"version\":1}";
+        BookArchive.Index index = archive.readIndex(USER);
+        archive.addSegment(USER, index, readYear, new int[] {Integer.parseInt(item.get("id").n())}, List.of(json), 0);
+        archive.writeIndex(USER, index);
+    }
+
+    private DynamoDbClient client() {
+        return new DynamoDbClient() {
+            @Override
+            public GetItemResponse getItem(GetItemRequest request) {
+                Map<String, AttributeValue> item = table.get(Integer.parseInt(request.key().get("id").n()));
+                return GetItemResponse.builder().item(item).build();
+            }
+
+            @Override
+            public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+                List<Map<String, AttributeValue>> items = new ArrayList<>();
+                for (Map<String, AttributeValue> key : request.requestItems().get(TABLE).keys()) {
+                    Map<String, AttributeValue> item = table.get(Integer.parseInt(key.get("id").n()));
+                    if (item != null) {
+                        items.add(item);
+                    }
+                }
+                return BatchGetItemResponse.builder().responses(Map.of(TABLE, items)).build();
+            }
+
+            @Override
+            public UpdateItemResponse updateItem(UpdateItemRequest request) {
+                updates.add(request);
+                return UpdateItemResponse.builder().build();
+            }
+
+            @Override
+            public TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+                transactions.add(request);
+                return TransactWriteItemsResponse.builder().build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // A bucket in memory, enough for BookArchive's puts and gets
+    private static final class InMemoryS3 implements S3Client {
+        private final Map<String, byte[]> objects = new HashMap<>();
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+            try {
+                objects.put(request.key(), body.contentStreamProvider().newStream().readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public <T> T getObject(GetObjectRequest request, ResponseTransformer<GetObjectResponse, T> transformer) {
+            byte[] bytes = objects.get(request.key());
+            if (bytes == null) {
+                throw NoSuchKeyException.builder().message(request.key()).build();
+            }
+            try {
+                return transformer.transform(GetObjectResponse.builder().build(),
+                        AbortableInputStream.create(new ByteArrayInputStream(bytes)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
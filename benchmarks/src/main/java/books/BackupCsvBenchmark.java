@@ -0,0 +1,48 @@
+package books;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CSV rendering of the backup handlers, followed by the UTF-8 encoding done before the S3 upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackupCsvBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<Book> books;
+
+    @Setup
+    public void setUp() {
+        books = BookFixtures.books(size);
+    }
+
+    @Benchmark
+    public String toCsv() {
+        return BackupBooksHandler.toCsv(books);
+    }
+
+    @Benchmark
+    public byte[] toCsvBytes() throws Exception {
+        return BackupBooksHandler.toCsv(books).getBytes("UTF-8");
+    }
+}
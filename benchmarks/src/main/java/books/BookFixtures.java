@@ -0,0 +1,91 @@
+package books;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import search.SearchKeys;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Deterministic synthetic catalogs for the benchmarks: a few authors account for most books,
+ * with several languages and formats and decades of read years.
+ */
+public final class BookFixtures {
+
+    private static final String[] FIRST_NAMES = {
+        "Gabriel", "Isabel", "Jorge", "Virginia", "Italo", "Haruki", "Toni", "Umberto", "Jane", "Fyodor",
+        "Chimamanda", "Ursula", "Jose", "Elena", "Orhan", "Clarice", "Kazuo", "Mario", "Olga", "Albert"
+    };
+    private static final String[] LAST_NAMES = {
+        "Garcia Marquez", "Allende", "Borges", "Woolf", "Calvino", "Murakami", "Morrison", "Eco", "Austen",
+        "Dostoevsky", "Adichie", "Le Guin", "Saramago", "Ferrante", "Pamuk", "Lispector", "Ishiguro",
+        "Vargas Llosa", "Tokarczuk", "Camus", "Cortazar", "Bolano", "Sebald", "Mann", "Kafka"
+    };
+    private static final String[] ADJECTIVES = {
+        "Silent", "Hidden", "Last", "Broken", "Golden", "Invisible", "Distant", "Forgotten", "Burning", "Endless"
+    };
+    private static final String[] NOUNS = {
+        "City", "River", "Garden", "Mirror", "Library", "Winter", "Island", "Labyrinth", "Cathedral", "Harbour"
+    };
+    private static final String[] LANGUAGES = {
+        "English", "English", "English", "Spanish", "Spanish", "Italian", "French", "German", "Portuguese"
+    };
+    private static final String[] FORMATS = { "Paper", "Paper", "Ebook", "Audiobook" };
+
+    private BookFixtures() {
+    }
+
+    public static List<Book> books(int size) {
+        Random random = new Random(42);
+        int authorCount = FIRST_NAMES.length * LAST_NAMES.length;
+        List<Book> books = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            // Cubing a uniform value skews the picks towards the first authors
+            int authorIndex = (int) (authorCount * Math.pow(random.nextDouble(), 3));
+            int readYear = 1990 + random.nextInt(36);
+            LocalDate finishDate = LocalDate.ofYearDay(readYear, 1 + random.nextInt(365));
+
+            Book book = new Book();
+            book.setId(id);
+            book.setTitle("The " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + NOUNS[random.nextInt(NOUNS.length)] + " " + (1 + random.nextInt(500)));
+            book.setAuthor(FIRST_NAMES[authorIndex % FIRST_NAMES.length] + " "
+                    + LAST_NAMES[authorIndex / FIRST_NAMES.length]);
+            book.setPublicationYear(1850 + random.nextInt(176));
+            book.setLanguage(LANGUAGES[random.nextInt(LANGUAGES.length)]);
+            book.setFormat(FORMATS[random.nextInt(FORMATS.length)]);
+            book.setReadYear(readYear);
+            book.setFinishDate(finishDate.toString());
+            book.setReadingTimeInDays(1 + random.nextInt(60));
+            books.add(book);
+        }
+        return books;
+    }
+
+    /**
+     * The same catalog as raw DynamoDB items, shaped as CreateBookHandler writes them.
+     */
+    public static List<Map<String, AttributeValue>> items(int size) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(size);
+        for (Book book : books(size)) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("id", AttributeValue.builder().n(String.valueOf(book.getId())).build());
+            item.put("title", AttributeValue.builder().s(book.getTitle()).build());
+            item.put("author", AttributeValue.builder().s(book.getAuthor()).build());
+            item.put("publicationYear", AttributeValue.builder().n(String.valueOf(book.getPublicationYear())).build());
+            item.put("language", AttributeValue.builder().s(book.getLanguage()).build());
+            item.put("format", AttributeValue.builder().s(book.getFormat()).build());
+            item.put("readYear", AttributeValue.builder().n(String.valueOf(book.getReadYear())).build());
+            item.put("finishDate", AttributeValue.builder().s(book.getFinishDate()).build());
+            item.put("readingTimeInDays", AttributeValue.builder().n(String.valueOf(book.getReadingTimeInDays())).build());
+            item.put("normalizedTitle", AttributeValue.builder().s(SearchKeys.normalize(book.getTitle())).build());
+            item.put("normalizedAuthor", AttributeValue.builder().s(SearchKeys.normalize(book.getAuthor())).build());
+            items.add(item);
+        }
+        return items;
+    }
+}
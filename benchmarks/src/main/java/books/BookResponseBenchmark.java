@@ -0,0 +1,109 @@
+package books;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * The read path shared by the list endpoints. The Jackson benchmarks measure how the handlers used to respond:
+ * mapping every scanned Book to a BookResponse (including the LocalDate.parse of finishDate) and serializing
+ * the list reflectively. {@link #write()} measures BookJsonWriter, which the handlers use now and which writes
+ * the same JSON straight from the books, and {@link #splice()} joining the JSON pre-rendered at write time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookResponseBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private BookJsonWriter bookJsonWriter;
+    private List<Book> books;
+    private List<BookResponse> responses;
+    private List<String> rendered;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Configured exactly as in the handlers
+        objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        bookJsonWriter = new BookJsonWriter(objectMapper.getFactory());
+
+        books = BookFixtures.books(size);
+        responses = convert();
+        if (!write().equals(serialize())) {
+            throw new IllegalStateException("BookJsonWriter output differs from Jackson's");
+        }
+        rendered = new ArrayList<>(books.size());
+        for (Book book : books) {
+            rendered.add(bookJsonWriter.write(book));
+        }
+    }
+
+    @Benchmark
+    public List<BookResponse> convert() {
+        List<BookResponse> result = new ArrayList<>(books.size());
+        for (Book book : books) {
+            result.add(convertToBookResponse(book));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return objectMapper.writeValueAsString(responses);
+    }
+
+    @Benchmark
+    public String convertAndSerialize() throws Exception {
+        return objectMapper.writeValueAsString(convert());
+    }
+
+    @Benchmark
+    public String write() throws Exception {
+        return bookJsonWriter.write(books);
+    }
+
+    // GetAllBooksHandler joining the JSON stored with each book
+    @Benchmark
+    public String splice() {
+        return "[" + String.join(",", rendered) + "]";
+    }
+
+    private static BookResponse convertToBookResponse(Book book) {
+        BookResponse response = new BookResponse();
+        response.setId(book.getId());
+        response.setTitle(book.getTitle());
+        response.setAuthor(book.getAuthor());
+        response.setPublicationYear(book.getPublicationYear());
+        response.setLanguage(book.getLanguage());
+        response.setFormat(book.getFormat());
+        response.setFinishDate(book.getFinishDate() != null ? LocalDate.parse(book.getFinishDate()) : null);
+        response.setReadYear(book.getReadYear());
+        response.setReadingTimeInDays(book.getReadingTimeInDays());
+        response.setVersion(book.getVersion());
+        return response;
+    }
+}
@@ -0,0 +1,201 @@
+package books;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+
+/**
+ * POST /books through CreateBookHandler, against a stand-in DynamoDbClient for a library of {@code size} books
+ * that answers every call after {@code roundTripMillis}, about what a DynamoDB call takes from Lambda; at 0 only
+ * the handler's own work is measured. {@link #create()} is a plain create and {@link #createStrict()} one with
+ * {@code ?strict=true}, which looks for duplicates before writing. The calls, and the items and bytes written, per
+ * create are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateBookBenchmark {
+
+    private static final String USER = "reader";
+    private static final String TABLE = "Books";
+    private static final String OUTBOX = "BooksOutbox";
+    private static final String SIGNATURES = "BookSignatures";
+    // Books listed in each signature bucket
+    private static final int BUCKET_SIZE = 2;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"0", "5"})
+    public int roundTripMillis;
+
+    private CreateBookHandler handler;
+    private Map<Integer, Map<String, AttributeValue>> items;
+    private final AtomicLong creates = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong writtenItems = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        TableSchema<Book> schema = TableSchema.fromBean(Book.class);
+        items = new HashMap<>();
+        for (Book book : BookFixtures.books(size)) {
+            book.setUserId(USER);
+            items.put(book.getId(), schema.itemToMap(book, true));
+        }
+        Map<String, AttributeValue> counter = new HashMap<>();
+        counter.put("userId", AttributeValue.fromS(USER));
+        counter.put("id", AttributeValue.fromN(String.valueOf(Libraries.COUNTER_ID)));
+        counter.put("lastId", AttributeValue.fromN(String.valueOf(size)));
+        counter.put("lastFinishDate", items.get(size).get("finishDate"));
+        items.put(Libraries.COUNTER_ID, counter);
+        handler = new CreateBookHandler(client(), TABLE, OUTBOX, SIGNATURES);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%n%.1f DynamoDB calls, %.1f items and %.0f bytes written per create%n",
+                calls.get() / (double) creates.get(), writtenItems.get() / (double) creates.get(),
+                writtenBytes.get() / (double) creates.get());
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent create() {
+        return post(null);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent createStrict() {
+        return post(Map.of("strict", "true"));
+    }
+
+    // The stand-in keeps no writes, so every create takes the same id
+    private APIGatewayProxyResponseEvent post(Map<String, String> query) {
+        creates.incrementAndGet();
+        APIGatewayProxyRequestEvent.ProxyRequestContext context = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        context.setAuthorizer(Map.of("claims", Map.of("sub", USER)));
+        return handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withQueryStringParameters(query)
+                .withBody("{\"title\":\"The Silent Harbour\",\"author\":\"Italo Calvino\",\"publicationYear\":1972,"
+                        + "\"language\":\"Italian\",\"format\":\"Paper\"}")
+                .withRequestContext(context), null);
+    }
+
+    private DynamoDbClient client() {
+        return new DynamoDbClient() {
+            @Override
+            public GetItemResponse getItem(GetItemRequest request) {
+                roundTrip();
+                return GetItemResponse.builder().item(items.get(Integer.parseInt(request.key().get("id").n()))).build();
+            }
+
+            @Override
+            public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+                roundTrip();
+                Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+                for (Map.Entry<String, KeysAndAttributes> table : request.requestItems().entrySet()) {
+                    responses.put(table.getKey(), table.getValue().keys().stream()
+                            .map(key -> SIGNATURES.equals(table.getKey()) ? bucket(key) : items.get(Integer.parseInt(key.get("id").n())))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList()));
+                }
+                return BatchGetItemResponse.builder().responses(responses).build();
+            }
+
+            @Override
+            public TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+                roundTrip();
+                writtenItems.addAndGet(request.transactItems().size());
+                for (TransactWriteItem item : request.transactItems()) {
+                    writtenBytes.addAndGet(item.put() != null
+                            ? size(item.put().item())
+                            : item.update() != null ? size(item.update().key()) + size(item.update().expressionAttributeValues()) : 0);
+                }
+                return TransactWriteItemsResponse.builder().build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Every bucket lists a few books of the library, picked by its key
+    private Map<String, AttributeValue> bucket(Map<String, AttributeValue> key) {
+        int first = Math.floorMod(key.get("bucket").s().hashCode(), size - BUCKET_SIZE) + 1;
+        Map<String, AttributeValue> bucket = new HashMap<>(key);
+        bucket.put("ids", AttributeValue.fromNs(IntStream.range(first, first + BUCKET_SIZE)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList())));
+        bucket.put("version", AttributeValue.fromN("1"));
+        return bucket;
+    }
+
+    // Roughly as DynamoDB sizes items: the names and values of the attributes
+    private static long size(Map<String, AttributeValue> item) {
+        long size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            AttributeValue value = attribute.getValue();
+            size += attribute.getKey().length() + (value.s() != null ? value.s().length()
+                    : value.n() != null ? value.n().length()
+                    : value.hasNs() ? String.join("", value.ns()).length()
+                    : 1);
+        }
+        return size;
+    }
+
+    private void roundTrip() {
+        calls.incrementAndGet();
+        if (roundTripMillis > 0) {
+            try {
+                Thread.sleep(roundTripMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roaringbitmap.RoaringBitmap;
+
+import books.BookFixtures;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * SearchBooksHandler hot paths: item conversion, index build, the bitmap and text filters and the
+ * fuzzy top-K ranking, next to the previous approach of a contains() filter over every row plus a full sort.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBooksBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SearchBooksHandler handler;
+    private List<Map<String, AttributeValue>> items;
+    private List<Map<String, Object>> rows;
+    private BookIndex index;
+
+    private final Map<String, String> facetQuery = Map.of("readYear", "2015", "language", "span");
+    private final Map<String, String> noFacets = Map.of();
+
+    @Setup
+    public void setUp() {
+        // The handler builds its DynamoDB client eagerly; no call is made during the benchmark
+        System.setProperty("aws.region", "eu-central-1");
+        handler = new SearchBooksHandler();
+        items = BookFixtures.items(size);
+        rows = convertToBook();
+        index = buildIndex();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> convertToBook() {
+        List<Map<String, Object>> result = new ArrayList<>(items.size());
+        for (Map<String, AttributeValue> item : items) {
+            result.add(handler.convertToBook(item));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public BookIndex buildIndex() {
+        List<String> titleKeys = new ArrayList<>(items.size());
+        List<String> authorKeys = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            titleKeys.add(handler.searchKey(items.get(i), "normalizedTitle", (String) rows.get(i).get("title")));
+            authorKeys.add(handler.searchKey(items.get(i), "normalizedAuthor", (String) rows.get(i).get("author")));
+        }
+        return BookIndex.build(rows, titleKeys, authorKeys);
+    }
+
+    @Benchmark
+    public RoaringBitmap facetFilter() {
+        return handler.facetFilter(index, facetQuery);
+    }
+
+    @Benchmark
+    public RoaringBitmap titleFilter() {
+        return handler.textFilter(index, handler.facetFilter(index, noFacets), "garden 12", null);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Integer>> facetCounts() {
+        return index.facetCounts(handler.facetFilter(index, facetQuery));
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> fuzzyAuthorTop10() {
+        return FuzzyMatcher.rank(index, index.all(), null, "murakmi", 10);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> containsAndSortAll() {
+        return rows.stream()
+                .filter(book -> ((String) book.get("author")).toLowerCase().contains("murakami"))
+                .sorted(Comparator.comparing(book -> ((String) book.get("title")).toLowerCase()))
+                .collect(Collectors.toList());
+    }
+}
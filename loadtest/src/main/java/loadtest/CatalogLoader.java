@@ -0,0 +1,150 @@
+package loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Recreates the books and outbox tables in DynamoDB Local and fills the books table with a
+ * {@link SyntheticCatalog} using parallel BatchWriteItem calls, followed by the id counter of each library.
+ */
+public class CatalogLoader {
+
+    private static final int BATCH_SIZE = 25;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+
+    public CatalogLoader(DynamoDbClient dynamoDbClient, String tableName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+    }
+
+    public void recreateTable() {
+        recreate(tableName, "userId", ScalarAttributeType.S, "id", ScalarAttributeType.N);
+    }
+
+    /**
+     * Recreates the outbox table CreateBookHandler writes its notifications to.
+     */
+    public void recreateOutboxTable(String outboxTableName) {
+        recreate(outboxTableName, "eventId", ScalarAttributeType.S, null, null);
+    }
+
+    /**
+     * Recreates the table of the signature buckets CreateBookHandler checks for duplicates.
+     */
+    public void recreateSignatureTable(String signatureTableName) {
+        recreate(signatureTableName, "userId", ScalarAttributeType.S, "bucket", ScalarAttributeType.S);
+    }
+
+    private void recreate(String name, String key, ScalarAttributeType keyType,
+                          String sortKey, ScalarAttributeType sortKeyType) {
+        try {
+            dynamoDbClient.deleteTable(DeleteTableRequest.builder().tableName(name).build());
+            dynamoDbClient.waiter().waitUntilTableNotExists(b -> b.tableName(name));
+        } catch (ResourceNotFoundException e) {
+            // Nothing to delete
+        }
+
+        List<KeySchemaElement> keySchema = new ArrayList<>();
+        List<AttributeDefinition> attributes = new ArrayList<>();
+        keySchema.add(KeySchemaElement.builder().attributeName(key).keyType(KeyType.HASH).build());
+        attributes.add(AttributeDefinition.builder().attributeName(key).attributeType(keyType).build());
+        if (sortKey != null) {
+            keySchema.add(KeySchemaElement.builder().attributeName(sortKey).keyType(KeyType.RANGE).build());
+            attributes.add(AttributeDefinition.builder().attributeName(sortKey).attributeType(sortKeyType).build());
+        }
+        dynamoDbClient.createTable(CreateTableRequest.builder()
+                .tableName(name)
+                .keySchema(keySchema)
+                .attributeDefinitions(attributes)
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+        dynamoDbClient.waiter().waitUntilTableExists(b -> b.tableName(name));
+    }
+
+    public void load(SyntheticCatalog catalog, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger written = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            int chunkSize = Math.max(BATCH_SIZE, catalog.size() / (threads * 4) / BATCH_SIZE * BATCH_SIZE);
+            for (int first = 1; first <= catalog.size(); first += chunkSize) {
+                int from = first;
+                int to = Math.min(catalog.size(), first + chunkSize - 1);
+                chunks.add(pool.submit(() -> {
+                    writeRange(catalog, from, to, written);
+                    return null;
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+            writeCounters(catalog);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("Loaded %d books into %s in %.1f s%n",
+                written.get(), tableName, (System.nanoTime() - start) / 1e9);
+    }
+
+    // What CreateBookHandler reads to pick the next id of each library
+    private void writeCounters(SyntheticCatalog catalog) {
+        List<WriteRequest> batch = new ArrayList<>(BATCH_SIZE);
+        for (int user = 0; user < catalog.users(); user++) {
+            batch.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(catalog.counterItem(user)).build())
+                    .build());
+            if (batch.size() == BATCH_SIZE || user == catalog.users() - 1) {
+                writeBatch(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+
+    private void writeRange(SyntheticCatalog catalog, int from, int to, AtomicInteger written) {
+        List<WriteRequest> batch = new ArrayList<>(BATCH_SIZE);
+        for (int book = from; book <= to; book++) {
+            batch.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(catalog.item(book)).build())
+                    .build());
+            if (batch.size() == BATCH_SIZE || book == to) {
+                writeBatch(batch);
+                int total = written.addAndGet(batch.size());
+                if (total / 100_000 != (total - batch.size()) / 100_000) {
+                    System.out.printf("  %d books written%n", total / 100_000 * 100_000);
+                }
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+
+    private void writeBatch(List<WriteRequest> batch) {
+        Map<String, List<WriteRequest>> pending = Map.of(tableName, batch);
+        while (!pending.isEmpty()) {
+            BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(
+                    BatchWriteItemRequest.builder().requestItems(pending).build());
+            pending = response.hasUnprocessedItems() ? response.unprocessedItems() : Map.of();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package loadtest;
+
+import java.util.List;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+/**
+ * Asks DynamoDB for the consumed capacity of every call the handlers make and adds it, together with
+ * scanned item counts, to the stats of the endpoint being invoked on the current thread.
+ */
+public class ConsumedCapacityInterceptor implements ExecutionInterceptor {
+
+    private static final ThreadLocal<EndpointStats> CURRENT = new ThreadLocal<>();
+
+    static void bind(EndpointStats stats) {
+        CURRENT.set(stats);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        SdkRequest request = context.request();
+        ReturnConsumedCapacity total = ReturnConsumedCapacity.TOTAL;
+        if (request instanceof ScanRequest) {
+            return ((ScanRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof QueryRequest) {
+            return ((QueryRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof GetItemRequest) {
+            return ((GetItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof BatchGetItemRequest) {
+            return ((BatchGetItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof PutItemRequest) {
+            return ((PutItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof UpdateItemRequest) {
+            return ((UpdateItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof DeleteItemRequest) {
+            return ((DeleteItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof BatchWriteItemRequest) {
+            return ((BatchWriteItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        } else if (request instanceof TransactWriteItemsRequest) {
+            return ((TransactWriteItemsRequest) request).toBuilder().returnConsumedCapacity(total).build();
+        }
+        return request;
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        EndpointStats stats = CURRENT.get();
+        if (stats == null) {
+            return;
+        }
+        SdkResponse response = context.response();
+        if (response instanceof ScanResponse) {
+            ScanResponse scan = (ScanResponse) response;
+            stats.readCapacityUnits.add(units(scan.consumedCapacity()));
+            if (scan.scannedCount() != null) {
+                stats.scannedItems.add(scan.scannedCount());
+            }
+        } else if (response instanceof QueryResponse) {
+            QueryResponse query = (QueryResponse) response;
+            stats.readCapacityUnits.add(units(query.consumedCapacity()));
+            if (query.scannedCount() != null) {
+                stats.scannedItems.add(query.scannedCount());
+            }
+        } else if (response instanceof GetItemResponse) {
+            stats.readCapacityUnits.add(units(((GetItemResponse) response).consumedCapacity()));
+        } else if (response instanceof BatchGetItemResponse) {
+            stats.readCapacityUnits.add(units(((BatchGetItemResponse) response).consumedCapacity()));
+        } else if (response instanceof PutItemResponse) {
+            stats.writeCapacityUnits.add(units(((PutItemResponse) response).consumedCapacity()));
+        } else if (response instanceof UpdateItemResponse) {
+            stats.writeCapacityUnits.add(units(((UpdateItemResponse) response).consumedCapacity()));
+        } else if (response instanceof DeleteItemResponse) {
+            stats.writeCapacityUnits.add(units(((DeleteItemResponse) response).consumedCapacity()));
+        } else if (response instanceof BatchWriteItemResponse) {
+            stats.writeCapacityUnits.add(units(((BatchWriteItemResponse) response).consumedCapacity()));
+        } else if (response instanceof TransactWriteItemsResponse) {
+            stats.writeCapacityUnits.add(units(((TransactWriteItemsResponse) response).consumedCapacity()));
+        }
+    }
+
+    private static double units(ConsumedCapacity capacity) {
+        return capacity != null && capacity.capacityUnits() != null ? capacity.capacityUnits() : 0;
+    }
+
+    private static double units(List<ConsumedCapacity> capacities) {
+        return capacities.stream().mapToDouble(ConsumedCapacityInterceptor::units).sum();
+    }
+}
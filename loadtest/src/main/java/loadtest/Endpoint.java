@@ -0,0 +1,41 @@
+package loadtest;
+
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * One API route: the handler serving it, a generator of synthetic requests and its share of the load.
+ */
+public class Endpoint {
+
+    final String name;
+    final String method;
+    final Pattern path;
+    final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler;
+    final Function<SplittableRandom, APIGatewayProxyRequestEvent> events;
+    int weight;
+
+    public Endpoint(String name, String method, String pathRegex, int weight,
+                    RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler,
+                    Function<SplittableRandom, APIGatewayProxyRequestEvent> events) {
+        this.name = name;
+        this.method = method;
+        this.path = Pattern.compile(pathRegex);
+        this.weight = weight;
+        this.handler = handler;
+        this.events = events;
+    }
+
+    /**
+     * Whether a recorded event targets this route.
+     */
+    boolean matches(APIGatewayProxyRequestEvent event) {
+        String eventPath = event.getPath() != null ? event.getPath() : event.getResource();
+        return method.equalsIgnoreCase(event.getHttpMethod()) && eventPath != null && path.matcher(eventPath).matches();
+    }
+}
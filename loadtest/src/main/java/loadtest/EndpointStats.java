@@ -0,0 +1,30 @@
+package loadtest;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Measurements of one endpoint during one phase of the run; updated concurrently by the workers.
+ */
+public class EndpointStats {
+
+    final Histogram latencyMicros = new ConcurrentHistogram(3);
+    final LongAdder requests = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder allocatedBytes = new LongAdder();
+    final LongAdder scannedItems = new LongAdder();
+    final DoubleAdder readCapacityUnits = new DoubleAdder();
+    final DoubleAdder writeCapacityUnits = new DoubleAdder();
+
+    void record(long latencyNanos, long allocated, boolean failed) {
+        latencyMicros.recordValue(Math.max(1, latencyNanos / 1_000));
+        requests.increment();
+        allocatedBytes.add(allocated);
+        if (failed) {
+            errors.increment();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples heap occupancy while a phase runs and reports the GC activity it caused.
+ */
+public class HeapSampler {
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "heap-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long maxUsed;
+    private volatile long totalUsed;
+    private volatile long samples;
+    private long gcCountAtStart;
+    private long gcTimeAtStart;
+
+    public void start() {
+        gcCountAtStart = gcCount();
+        gcTimeAtStart = gcTime();
+        scheduler.scheduleAtFixedRate(this::sample, 0, 250, TimeUnit.MILLISECONDS);
+    }
+
+    public String stop() {
+        scheduler.shutdownNow();
+        long mb = 1024 * 1024;
+        return String.format("heap used: max %d MB, avg %d MB (committed %d MB); GC: %d collections, %d ms",
+                maxUsed / mb, samples > 0 ? totalUsed / samples / mb : 0,
+                memory.getHeapMemoryUsage().getCommitted() / mb,
+                gcCount() - gcCountAtStart, gcTime() - gcTimeAtStart);
+    }
+
+    private void sample() {
+        long used = memory.getHeapMemoryUsage().getUsed();
+        maxUsed = Math.max(maxUsed, used);
+        totalUsed += used;
+        samples++;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -0,0 +1,109 @@
+package loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Open-loop driver: requests are issued on a fixed schedule regardless of how long earlier ones take,
+ * and latency is measured from the scheduled start, so queueing behind slow requests is not hidden.
+ */
+public class LoadDriver {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final List<Endpoint> endpoints;
+    private final List<APIGatewayProxyRequestEvent> recorded;
+    private final int workerThreads;
+    private final SplittableRandom random;
+
+    public LoadDriver(List<Endpoint> endpoints, List<APIGatewayProxyRequestEvent> recorded, int workerThreads, long seed) {
+        this.endpoints = endpoints;
+        this.recorded = recorded;
+        this.workerThreads = workerThreads;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public Map<Endpoint, EndpointStats> run(double requestsPerSecond, int seconds) throws InterruptedException {
+        Map<Endpoint, EndpointStats> stats = new LinkedHashMap<>();
+        endpoints.forEach(endpoint -> stats.put(endpoint, new EndpointStats()));
+
+        int totalWeight = endpoints.stream().mapToInt(endpoint -> endpoint.weight).sum();
+        long intervalNanos = (long) (1e9 / requestsPerSecond);
+        long total = (long) (requestsPerSecond * seconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(workerThreads);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Endpoint endpoint;
+            APIGatewayProxyRequestEvent event;
+            if (recorded.isEmpty()) {
+                endpoint = pick(totalWeight);
+                event = endpoint.events.apply(random.split());
+            } else {
+                event = recorded.get((int) (i % recorded.size()));
+                endpoint = route(event);
+                if (endpoint == null) {
+                    continue;
+                }
+            }
+
+            EndpointStats endpointStats = stats.get(endpoint);
+            pool.execute(() -> invoke(endpoint, event, endpointStats, intendedStart));
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        return stats;
+    }
+
+    private void invoke(Endpoint endpoint, APIGatewayProxyRequestEvent event, EndpointStats stats, long intendedStart) {
+        ConsumedCapacityInterceptor.bind(stats);
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        boolean failed;
+        try {
+            APIGatewayProxyResponseEvent response = endpoint.handler.handleRequest(event, new LocalContext(endpoint.name));
+            failed = response == null || response.getStatusCode() == null || response.getStatusCode() >= 400;
+        } catch (RuntimeException e) {
+            failed = true;
+        } finally {
+            ConsumedCapacityInterceptor.unbind();
+        }
+        stats.record(System.nanoTime() - intendedStart, threads.getCurrentThreadAllocatedBytes() - allocatedBefore, failed);
+    }
+
+    private Endpoint pick(int totalWeight) {
+        int ticket = random.nextInt(totalWeight);
+        for (Endpoint endpoint : endpoints) {
+            ticket -= endpoint.weight;
+            if (ticket < 0) {
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException("No endpoint has a positive weight");
+    }
+
+    private Endpoint route(APIGatewayProxyRequestEvent event) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.matches(event)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,383 @@
+package loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import books.ApiGateway;
+import books.CreateBookHandler;
+import books.ExportBooksHandler;
+import books.GetAllBooksHandler;
+import books.GetBookByIdHandler;
+import books.GetBookCalendarHandler;
+import books.GetBookStatsHandler;
+import books.GetBooksCountByYearHandler;
+import books.GetBooksCountHandler;
+import books.GetDashboardHandler;
+import books.GetSimilarBooksHandler;
+import books.GetTopBooksHandler;
+import books.SearchBooksByAuthorHandler;
+import books.SearchBooksByReadYearHandler;
+import books.SearchBooksByTitleHandler;
+import books.SuggestBooksHandler;
+import books.UpdateBookHandler;
+import search.SearchBooksHandler;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+/**
+ * Drives the real handler classes in-process against DynamoDB Local with a synthetic library,
+ * reporting latency percentiles, allocation and consumed capacity per endpoint.
+ *
+ * Usage: {@code TABLE_NAME=BooksLoadTest java -jar target/loadtest.jar [--option=value ...]}; the create endpoint
+ * is only driven when {@code OUTBOX_TABLE_NAME} names the table for its notifications as well, and with
+ * {@code ?strict=true}, which checks for duplicates before writing, as {@code createBookStrict} when
+ * {@code SIGNATURE_TABLE_NAME} names the table of their signature buckets. The updates expect the
+ * book versions of a freshly loaded catalog, so after {@code --skip-load} most of them fail with a conflict.
+ * <ul>
+ *   <li>{@code --endpoint} DynamoDB Local URL (default http://localhost:8000)</li>
+ *   <li>{@code --books} catalog size (default 1000000); {@code --skip-load} reuses the existing table</li>
+ *   <li>{@code --users} libraries the catalog is split into (default 1), each request acting for a random one</li>
+ *   <li>{@code --rate} requests per second (default 200), {@code --duration} and {@code --warmup} in seconds</li>
+ *   <li>{@code --threads} worker threads (default 32), {@code --seed} dataset and request seed</li>
+ *   <li>{@code --mix} endpoint weights, e.g. {@code getBookById:50,searchBooks:50}</li>
+ *   <li>{@code --events} directory of recorded API Gateway events, REST API or HTTP API (version 2.0) payloads, to
+ *   replay instead of the synthetic mix</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String tableName = System.getenv("TABLE_NAME");
+        if (tableName == null || tableName.isEmpty()) {
+            throw new IllegalArgumentException("TABLE_NAME must name the table the handlers read");
+        }
+        String outboxTableName = System.getenv("OUTBOX_TABLE_NAME");
+        boolean createBooks = outboxTableName != null && !outboxTableName.isEmpty();
+        String signatureTableName = System.getenv("SIGNATURE_TABLE_NAME");
+
+        // Handlers print one EMF metrics line per request, which would bury the report
+        books.RequestMetrics.setSink(line -> { });
+        search.RequestMetrics.setSink(line -> { });
+        // There is no X-Ray segment outside Lambda; make the handlers' subsegments no-ops
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+
+        String region = options.getOrDefault("region", "us-east-1");
+        // The handlers' default constructors are never used, but keep the SDK from looking for a region anyway
+        System.setProperty("aws.region", region);
+
+        int books = Integer.parseInt(options.getOrDefault("books", "1000000"));
+        int users = Integer.parseInt(options.getOrDefault("users", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "32"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "15"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        DynamoDbClient dynamoDbClient = DynamoDbClient.builder()
+                .endpointOverride(URI.create(options.getOrDefault("endpoint", "http://localhost:8000")))
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(threads * 2)
+                        .socketTimeout(Duration.ofMinutes(5)))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .addExecutionInterceptor(new ConsumedCapacityInterceptor())
+                        .build())
+                .build();
+
+        SyntheticCatalog catalog = new SyntheticCatalog(seed, books, users);
+        if (!options.containsKey("skip-load")) {
+            CatalogLoader loader = new CatalogLoader(dynamoDbClient, tableName);
+            long start = System.nanoTime();
+            loader.recreateTable();
+            if (createBooks) {
+                loader.recreateOutboxTable(outboxTableName);
+                if (signatureTableName != null && !signatureTableName.isEmpty()) {
+                    loader.recreateSignatureTable(signatureTableName);
+                }
+            }
+            loader.load(catalog, threads);
+            System.out.printf("Loaded %,d books in %.1f s%n", books, (System.nanoTime() - start) / 1e9);
+        }
+
+        List<Endpoint> endpoints = endpoints(dynamoDbClient, catalog, createBooks,
+                createBooks && signatureTableName != null && !signatureTableName.isEmpty());
+        applyMix(endpoints, options.get("mix"));
+        List<APIGatewayProxyRequestEvent> recorded = options.containsKey("events")
+                ? readEvents(Path.of(options.get("events")))
+                : List.of();
+
+        if (warmup > 0) {
+            System.out.printf("Warming up for %d s%n", warmup);
+            new LoadDriver(endpoints, recorded, threads, seed).run(rate, warmup);
+        }
+
+        System.out.printf("Measuring for %d s at %.0f req/s%n", duration, rate);
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+        Map<Endpoint, EndpointStats> stats = new LoadDriver(endpoints, recorded, threads, seed + 1).run(rate, duration);
+        String heapSummary = heap.stop();
+
+        report(stats);
+        System.out.println(heapSummary);
+        dynamoDbClient.close();
+    }
+
+    /**
+     * Every API route with its default weight and a generator of representative requests.
+     */
+    static List<Endpoint> endpoints(DynamoDbClient dynamoDbClient, SyntheticCatalog catalog, boolean createBooks,
+            boolean createBooksStrict) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        endpoints.add(new Endpoint("getAllBooks", "GET", "/books", 1,
+                new GetAllBooksHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books", null, null, null)));
+        endpoints.add(new Endpoint("getBookById", "GET", "/books/\\d+", 30,
+                new GetBookByIdHandler(dynamoDbClient),
+                random -> {
+                    int user = random.nextInt(catalog.users());
+                    String id = String.valueOf(1 + random.nextInt(catalog.librarySize(user)));
+                    return event(catalog.userId(user), "GET", "/books/" + id, Map.of("id", id), null, null);
+                }));
+        Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+        endpoints.add(new Endpoint("updateBook", "PATCH", "/books/\\d+", 2,
+                new UpdateBookHandler(dynamoDbClient),
+                random -> {
+                    int user = random.nextInt(catalog.users());
+                    String id = String.valueOf(1 + random.nextInt(catalog.librarySize(user)));
+                    // Each update of a book expects the version the one before it left
+                    long version = versions.computeIfAbsent(catalog.userId(user) + "/" + id, book -> new AtomicLong(1))
+                            .getAndIncrement();
+                    String body = random.nextBoolean()
+                            ? String.format("{\"format\":\"%s\",\"version\":%d}", catalog.randomFormat(random), version)
+                            : String.format("{\"language\":\"%s\",\"version\":%d}", catalog.randomLanguage(random), version);
+                    return event(catalog.userId(user), "PATCH", "/books/" + id, Map.of("id", id), null, body);
+                }));
+        endpoints.add(new Endpoint("getSimilarBooks", "GET", "/books/\\d+/similar", 2,
+                new GetSimilarBooksHandler(dynamoDbClient),
+                random -> {
+                    int user = random.nextInt(catalog.users());
+                    String id = String.valueOf(1 + random.nextInt(catalog.librarySize(user)));
+                    return event(catalog.userId(user), "GET", "/books/" + id + "/similar", Map.of("id", id), null, null);
+                }));
+        endpoints.add(new Endpoint("exportBooks", "GET", "/books/export", 1,
+                new ExportBooksHandler(dynamoDbClient),
+                random -> {
+                    int user = random.nextInt(catalog.users());
+                    // One chunk of a client pulling the library from somewhere in the middle
+                    String fromId = String.valueOf(1 + random.nextInt(catalog.librarySize(user)));
+                    return event(catalog.userId(user), "GET", "/books/export", null,
+                            Map.of("fromId", fromId, "limit", "100"), null);
+                }));
+        endpoints.add(new Endpoint("getDashboard", "GET", "/dashboard", 3,
+                new GetDashboardHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/dashboard", null, random.nextInt(4) == 0
+                        ? Map.of("year", String.valueOf(catalog.randomReadYear(random)))
+                        : null, null)));
+        endpoints.add(new Endpoint("getBookStats", "GET", "/books/stats", 2,
+                new GetBookStatsHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/stats", null, null, null)));
+        endpoints.add(new Endpoint("getTopBooks", "GET", "/books/top", 2,
+                new GetTopBooksHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/top", null, random.nextBoolean()
+                        ? Map.of("n", "10", "year", String.valueOf(catalog.randomReadYear(random)))
+                        : Map.of("n", "10"), null)));
+        endpoints.add(new Endpoint("getBookCalendar", "GET", "/books/calendar", 2,
+                new GetBookCalendarHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/calendar", null,
+                        Map.of("year", String.valueOf(catalog.randomReadYear(random))), null)));
+        endpoints.add(new Endpoint("suggestBooks", "GET", "/books/suggest", 10,
+                new SuggestBooksHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/suggest", null, suggestParams(catalog, random), null)));
+        endpoints.add(new Endpoint("getBooksCount", "GET", "/books/count", 5,
+                new GetBooksCountHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/count", null, null, null)));
+        endpoints.add(new Endpoint("getBooksCountByYear", "GET", "/books/count/year", 5,
+                new GetBooksCountByYearHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/count/year", null,
+                        Map.of("year", String.valueOf(catalog.randomReadYear(random))), null)));
+        endpoints.add(new Endpoint("searchBooksByTitle", "GET", "/books/search/title", 10,
+                new SearchBooksByTitleHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/search/title", null,
+                        Map.of("title", catalog.randomTitleWord(random)), null)));
+        endpoints.add(new Endpoint("searchBooksByAuthor", "GET", "/books/search/author", 10,
+                new SearchBooksByAuthorHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/search/author", null,
+                        Map.of("author", catalog.randomSurname(random)), null)));
+        endpoints.add(new Endpoint("searchBooksByReadYear", "GET", "/books/search/year", 5,
+                new SearchBooksByReadYearHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/books/search/year", null,
+                        Map.of("year", String.valueOf(catalog.randomReadYear(random))), null)));
+        endpoints.add(new Endpoint("searchBooks", "GET", "/search", 30,
+                new SearchBooksHandler(dynamoDbClient),
+                random -> event(user(catalog, random), "GET", "/search", null, searchParams(catalog, random), null)));
+        if (createBooks) {
+            endpoints.add(new Endpoint("createBook", "POST", "/books", 1,
+                    new CreateBookHandler(dynamoDbClient),
+                    random -> event(user(catalog, random), "POST", "/books", null, null, newBook(catalog, random))));
+        }
+        if (createBooksStrict) {
+            endpoints.add(new Endpoint("createBookStrict", "POST", "/books", 1,
+                    new CreateBookHandler(dynamoDbClient),
+                    random -> event(user(catalog, random), "POST", "/books", null, Map.of("strict", "true"),
+                            newBook(catalog, random))));
+        }
+        return endpoints;
+    }
+
+    private static String newBook(SyntheticCatalog catalog, SplittableRandom random) {
+        return String.format(
+                "{\"title\":\"%s\",\"author\":\"%s\",\"publicationYear\":%d,\"language\":\"%s\",\"format\":\"%s\"}",
+                catalog.randomTitle(random), catalog.randomAuthor(random), 1900 + random.nextInt(125),
+                catalog.randomLanguage(random), catalog.randomFormat(random));
+    }
+
+    // A mix of the filters the frontend combines, with the occasional fuzzy or faceted query
+    private static Map<String, String> searchParams(SyntheticCatalog catalog, SplittableRandom random) {
+        Map<String, String> params = new HashMap<>();
+        if (random.nextInt(3) == 0) {
+            params.put("title", catalog.randomTitleWord(random));
+        }
+        if (random.nextInt(3) == 0) {
+            params.put("author", catalog.randomSurname(random));
+        }
+        if (random.nextInt(4) == 0) {
+            params.put("language", catalog.randomLanguage(random));
+        }
+        if (random.nextInt(4) == 0) {
+            params.put("format", catalog.randomFormat(random));
+        }
+        if (random.nextInt(4) == 0) {
+            params.put("readYear", String.valueOf(catalog.randomReadYear(random)));
+        }
+        if (params.isEmpty() || random.nextInt(10) == 0) {
+            params.put("facets", "true");
+        }
+        if ((params.containsKey("title") || params.containsKey("author")) && random.nextInt(5) == 0) {
+            params.put("fuzzy", "true");
+        }
+        return params;
+    }
+
+    // The first letters typed into the search box, of a title word or a surname
+    private static Map<String, String> suggestParams(SyntheticCatalog catalog, SplittableRandom random) {
+        boolean title = random.nextBoolean();
+        String word = title ? catalog.randomTitleWord(random) : catalog.randomSurname(random);
+        String prefix = word.substring(0, Math.min(word.length(), 1 + random.nextInt(4)));
+        return random.nextInt(3) == 0
+                ? Map.of("prefix", prefix)
+                : Map.of("prefix", prefix, "type", title ? "title" : "author");
+    }
+
+    private static String user(SyntheticCatalog catalog, SplittableRandom random) {
+        return catalog.userId(random.nextInt(catalog.users()));
+    }
+
+    // Carries the claims the Cognito authorizer adds, which the handlers take the library from
+    private static APIGatewayProxyRequestEvent event(String userId, String method, String path,
+                                                     Map<String, String> pathParameters,
+                                                     Map<String, String> queryParameters, String body) {
+        APIGatewayProxyRequestEvent.ProxyRequestContext requestContext = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        requestContext.setAuthorizer(Map.of("claims", Map.of("sub", userId)));
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withPath(path)
+                .withPathParameters(pathParameters)
+                .withQueryStringParameters(queryParameters)
+                .withRequestContext(requestContext)
+                .withBody(body);
+    }
+
+    private static void applyMix(List<Endpoint> endpoints, String mix) {
+        if (mix == null) {
+            return;
+        }
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            weights.put(parts[0].trim(), parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+        }
+        for (Endpoint endpoint : endpoints) {
+            endpoint.weight = weights.getOrDefault(endpoint.name, 0);
+        }
+    }
+
+    private static List<APIGatewayProxyRequestEvent> readEvents(Path directory) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        List<APIGatewayProxyRequestEvent> events = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".json")).sorted().toList()) {
+                JsonNode event = objectMapper.readTree(file.toFile());
+                // HTTP API events are converted as the handlers' handleHttpRequest does
+                events.add("2.0".equals(event.path("version").asText())
+                        ? ApiGateway.fromHttpApi(objectMapper.treeToValue(event, APIGatewayV2HTTPEvent.class))
+                        : objectMapper.treeToValue(event, APIGatewayProxyRequestEvent.class));
+            }
+        }
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("No recorded events (*.json) in " + directory);
+        }
+        return events;
+    }
+
+    private static void report(Map<Endpoint, EndpointStats> stats) {
+        System.out.printf("%-22s %8s %6s %9s %9s %9s %9s %11s %8s %8s %10s%n",
+                "endpoint", "requests", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+                "alloc/req", "RCU/req", "WCU/req", "scan/req");
+        stats.forEach((endpoint, s) -> {
+            long requests = s.requests.sum();
+            if (requests == 0) {
+                return;
+            }
+            System.out.printf("%-22s %8d %6d %9.2f %9.2f %9.2f %9.2f %10dK %8.2f %8.2f %10d%n",
+                    endpoint.name, requests, s.errors.sum(),
+                    s.latencyMicros.getValueAtPercentile(50) / 1000.0,
+                    s.latencyMicros.getValueAtPercentile(99) / 1000.0,
+                    s.latencyMicros.getValueAtPercentile(99.9) / 1000.0,
+                    s.latencyMicros.getMaxValue() / 1000.0,
+                    s.allocatedBytes.sum() / requests / 1024,
+                    s.readCapacityUnits.sum() / requests,
+                    s.writeCapacityUnits.sum() / requests,
+                    s.scannedItems.sum() / requests);
+        });
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,195 @@
+package loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import books.Book;
+import books.BookJsonWriter;
+import books.Libraries;
+import books.SearchKeys;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Deterministic synthetic library shaped like the items CreateBookHandler writes, pre-rendered JSON included.
+ *
+ * Books follow reading order across five decades; a small share of authors accounts for most books,
+ * languages and formats follow a skewed mix, and some names carry accents so normalized search keys
+ * matter. The books are dealt round-robin to {@code users} libraries, so every library spans the whole period
+ * with ids from 1. Book {@code n} is a pure function of the seed and {@code n}, so chunks can be generated in
+ * parallel.
+ */
+public class SyntheticCatalog {
+
+    private static final LocalDate FIRST_FINISH_DATE = LocalDate.of(1975, 1, 1);
+    private static final LocalDate LAST_FINISH_DATE = LocalDate.of(2025, 12, 31);
+    private static final BookJsonWriter BOOK_JSON_WRITER = new BookJsonWriter(new JsonFactory());
+
+    private static final String[] FIRST_NAMES = {
+        "Gabriel", "Isabel", "Jorge Luis", "Virginia", "Italo", "Haruki", "Toni", "Umberto", "Jane", "Fyodor",
+        "Chimamanda", "Ursula", "José", "Elena", "Orhan", "Clarice", "Kazuo", "Mario", "Olga", "Albert",
+        "Julio", "Roberto", "Leo", "Thomas", "Franz", "Margaret", "Octavia", "Agatha", "Mikhail", "Hilary"
+    };
+    private static final String[] LAST_NAMES = {
+        "García Márquez", "Allende", "Borges", "Woolf", "Calvino", "Murakami", "Morrison", "Eco",
+        "Austen", "Dostoevsky", "Adichie", "Le Guin", "Saramago", "Ferrante", "Pamuk", "Lispector", "Ishiguro",
+        "Vargas Llosa", "Tokarczuk", "Camus", "Cortázar", "Bolaño", "Tolstoy", "Mann", "Kafka",
+        "Atwood", "Butler", "Christie", "Bulgakov", "Mantel", "Pérez-Reverte", "Sebald", "Zola", "Hesse",
+        "Nabokov", "Orwell", "Pessoa", "Rulfo", "Sciascia", "Yourcenar"
+    };
+    private static final String[] ADJECTIVES = {
+        "Silent", "Hidden", "Last", "Broken", "Golden", "Invisible", "Distant", "Forgotten", "Burning", "Endless",
+        "Secret", "Lost", "Red", "Winter", "Little", "Dark", "Bright", "Ancient", "Quiet", "Wandering"
+    };
+    private static final String[] NOUNS = {
+        "City", "River", "Garden", "Mirror", "Library", "Island", "Labyrinth", "Cathedral", "Harbour", "Corazón",
+        "Mountain", "Memory", "Road", "House", "Empire", "Night", "Forest", "Station", "Letters", "Shadow"
+    };
+    // Weighted by repetition
+    private static final String[] LANGUAGES = {
+        "English", "English", "English", "English", "English", "English", "English", "English", "English",
+        "Spanish", "Spanish", "Spanish", "Spanish", "Spanish", "Italian", "Italian", "French", "French",
+        "German", "Portuguese"
+    };
+    private static final String[] FORMATS = {
+        "Paper", "Paper", "Paper", "Paper", "Paper", "Paper", "Ebook", "Ebook", "Ebook", "Audiobook"
+    };
+
+    private final long seed;
+    private final int size;
+    private final int users;
+    private final long totalDays = ChronoUnit.DAYS.between(FIRST_FINISH_DATE, LAST_FINISH_DATE);
+
+    public SyntheticCatalog(long seed, int size, int users) {
+        this.seed = seed;
+        this.size = size;
+        this.users = users;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int users() {
+        return users;
+    }
+
+    // Stands in for the Cognito sub the authorizer passes to the handlers
+    public String userId(int user) {
+        return "synthetic-user-" + user;
+    }
+
+    public int librarySize(int user) {
+        return (size - user + users - 1) / users;
+    }
+
+    /**
+     * Book {@code n} of the catalog, 1 to {@link #size()}, as stored in the library it is dealt to.
+     */
+    public Map<String, AttributeValue> item(int n) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + n);
+        int id = (n - 1) / users + 1;
+
+        LocalDate finishDate = FIRST_FINISH_DATE.plusDays(totalDays * (n - 1) / Math.max(1, size - 1));
+        int readYear = finishDate.getYear();
+        int publicationYear = Math.max(1800, readYear - random.nextInt(1 + random.nextInt(150)));
+        String title = randomTitle(random);
+        String author = randomAuthor(random);
+
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setPublicationYear(publicationYear);
+        book.setLanguage(randomLanguage(random));
+        book.setFormat(randomFormat(random));
+        book.setReadYear(readYear);
+        book.setFinishDate(finishDate.toString());
+        book.setReadingTimeInDays(1 + random.nextInt(45));
+        book.setVersion(1L);
+
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", string(userId((n - 1) % users)));
+        item.put("id", number(id));
+        item.put("title", string(title));
+        item.put("author", string(author));
+        item.put("publicationYear", number(publicationYear));
+        item.put("language", string(book.getLanguage()));
+        item.put("format", string(book.getFormat()));
+        item.put("readYear", number(readYear));
+        item.put("finishDate", string(book.getFinishDate()));
+        item.put("readingTimeInDays", number(book.getReadingTimeInDays()));
+        item.put("normalizedTitle", string(SearchKeys.normalize(title)));
+        item.put("normalizedAuthor", string(SearchKeys.normalize(author)));
+        item.put("version", number(1));
+        item.put(BookJsonWriter.ATTRIBUTE, string(render(book)));
+        return item;
+    }
+
+    private static String render(Book book) {
+        try {
+            return BOOK_JSON_WRITER.write(book);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Map<String, AttributeValue> counterItem(int user) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("userId", string(userId(user)));
+        item.put("id", number(Libraries.COUNTER_ID));
+        item.put("lastId", number(librarySize(user)));
+        return item;
+    }
+
+    public String randomTitle(SplittableRandom random) {
+        String title = "The " + pick(ADJECTIVES, random) + " " + pick(NOUNS, random);
+        return random.nextInt(3) == 0 ? title + " of the " + pick(NOUNS, random) : title;
+    }
+
+    public String randomAuthor(SplittableRandom random) {
+        // Cubing a uniform value skews the picks towards the first authors
+        int authorCount = FIRST_NAMES.length * LAST_NAMES.length;
+        int index = (int) (authorCount * Math.pow(random.nextDouble(), 3));
+        return FIRST_NAMES[index % FIRST_NAMES.length] + " " + LAST_NAMES[index / FIRST_NAMES.length];
+    }
+
+    public String randomTitleWord(SplittableRandom random) {
+        return random.nextBoolean() ? pick(ADJECTIVES, random) : pick(NOUNS, random);
+    }
+
+    public String randomSurname(SplittableRandom random) {
+        String author = randomAuthor(random);
+        return author.substring(author.lastIndexOf(' ') + 1);
+    }
+
+    public String randomLanguage(SplittableRandom random) {
+        return pick(LANGUAGES, random);
+    }
+
+    public String randomFormat(SplittableRandom random) {
+        return pick(FORMATS, random);
+    }
+
+    public int randomReadYear(SplittableRandom random) {
+        return FIRST_FINISH_DATE.getYear() + random.nextInt(LAST_FINISH_DATE.getYear() - FIRST_FINISH_DATE.getYear() + 1);
+    }
+
+    private static String pick(String[] values, SplittableRandom random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static AttributeValue string(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue number(int value) {
+        return AttributeValue.builder().n(String.valueOf(value)).build();
+    }
+}